@@ -1,75 +1,183 @@
 package com.jerome.arithmetic;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
- * 模拟一致性Hash算法
+ * 一致性Hash算法
  * http://blog.csdn.net/jerome_s/article/details/52492862
  * 这段代码网上找的，输出各个节点的负载是差不多的，但是我在想可以自己写一个达到完全的负载均衡
  * 比如：VIRTUAL_NODE_COUNT = 150
  * 维护0~(2^32)/150的数字,新加入节点就取(2^32)/150内一个没有使用过的数,
  * 然后在这个数的基础上面加150次的(2^32)/150可以生成150个分布均衡的虚拟节点。
  * 如果有新增或者减少节点需要维护。
+ * <p>
+ * 节点的虚拟节点位置由 node.toString() 的MD5决定，同一个节点在不同的进程中位置相同。
+ * 环保存为排好序的 long[] 和对应的节点下标 int[]，查询时二分查找，不装箱也不分配对象。
+ * 可以在运行时增删节点：每次修改都重新构建一个新的环再替换，查询不需要加锁。
  *
+ * @param <T> 节点类型，需要正确实现 equals/hashCode/toString
  * @author jerome
  * @date 2016/9/1 9:26
  */
-public class ConsistencyHash {
+public class ConsistencyHash<T> {
+
+    /**
+     * 默认虚拟节点数目
+     * 太多会影响性能，太少又会导致负载不均衡，一般说来，经验值是150，
+     * 当然根据集群规模和负载均衡的精度需求，这个值应该根据具体情况具体对待。
+     */
+    public static final int DEFAULT_VIRTUAL_NODE_COUNT = 150;
+
+    /**
+     * 计算key在环上位置的hash算法，同一个环的所有客户端必须使用相同的算法
+     */
+    public enum KeyHash {
+        /**
+         * 取key的UTF-8字节MD5的前4个字节，和虚拟节点的算法相同
+         */
+        MD5,
+        /**
+         * MurmurHash3 32位，直接对key的char计算，不需要编码成字节，比MD5快得多
+         */
+        MURMUR3
+    }
+
+    private static final ThreadLocal<MessageDigest> MD5_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("MD5 not supported", e);
+            }
+        }
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     // 环的所有节点
-    private TreeMap<Long, Object> allNodes = null;
+    private volatile Ring<T> ring = new Ring<T>(new long[0], new int[0], new ArrayList<T>());
     // 真实服务器节点
-    private List<Object> realNodes = new ArrayList();
-    // 设置虚拟节点数目
-    // 太多会影响性能，太少又会导致负载不均衡，一般说来，经验值是150，
-    // 当然根据集群规模和负载均衡的精度需求，这个值应该根据具体情况具体对待。
-    private int VIRTUAL_NODE_COUNT = 150;
+    private final List<T> realNodes = new ArrayList<T>();
+    // 每个真实节点的虚拟节点数目
+    private final int virtualNodeCount;
+
+    private final KeyHash keyHash;
+
+    public ConsistencyHash() {
+        this(DEFAULT_VIRTUAL_NODE_COUNT);
+    }
+
+    public ConsistencyHash(int virtualNodeCount) {
+        this(virtualNodeCount, KeyHash.MD5);
+    }
+
+    public ConsistencyHash(int virtualNodeCount, KeyHash keyHash) {
+        if (virtualNodeCount <= 0) {
+            throw new IllegalArgumentException("virtualNodeCount must be positive: " + virtualNodeCount);
+        }
+        this.virtualNodeCount = virtualNodeCount;
+        this.keyHash = keyHash;
+    }
+
+    public ConsistencyHash(Collection<T> nodes, int virtualNodeCount) {
+        this(nodes, virtualNodeCount, KeyHash.MD5);
+    }
+
+    public ConsistencyHash(Collection<T> nodes, int virtualNodeCount, KeyHash keyHash) {
+        this(virtualNodeCount, keyHash);
+        realNodes.addAll(new LinkedHashSet<T>(nodes));
+        rebuild();
+    }
 
     /**
-     * 初始化一致环
+     * 加入一个真实节点
+     *
+     * @param node
+     * @return 节点已经存在返回false
      */
-    public void init() {
+    public synchronized boolean addNode(T node) {
+        if (realNodes.contains(node)) {
+            return false;
+        }
+        realNodes.add(node);
+        rebuild();
+        return true;
+    }
 
-        // 加入五台真实服务器
-        realNodes.add("192.168.0.0-服务器0");
-        realNodes.add("192.168.0.1-服务器1");
-        realNodes.add("192.168.0.2-服务器2");
-        realNodes.add("192.168.0.3-服务器3");
-        realNodes.add("192.168.0.4-服务器4");
-
-        // 构造每台真实服务器的虚拟节点
-        allNodes = new TreeMap<>();
-        for (int i = 0; i < realNodes.size(); i++) {
-            Object nodeInfo = realNodes.get(i);
-            for (int j = 0; j < VIRTUAL_NODE_COUNT; j++) {
-                allNodes.put(hash(computeMd5("NODE-" + i + "-VIRTUAL-" + j), 0), nodeInfo);
-                // allNodes.put(hash(nodeInfo.toString() + j), nodeInfo);
-            }
+    /**
+     * 移除一个真实节点，原来落在它上面的key会分给环上的下一个节点
+     *
+     * @param node
+     * @return 节点不存在返回false
+     */
+    public synchronized boolean removeNode(T node) {
+        if (!realNodes.remove(node)) {
+            return false;
         }
+        rebuild();
+        return true;
     }
 
     /**
-     * 计算MD5值
+     * 当前所有真实节点
+     *
+     * @return
      */
-    public byte[] computeMd5(String k) {
-        MessageDigest md5;
-        try {
-            md5 = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("MD5 not supported", e);
+    public synchronized List<T> getNodes() {
+        return new ArrayList<T>(realNodes);
+    }
+
+    public int getVirtualNodeCount() {
+        return virtualNodeCount;
+    }
+
+    public KeyHash getKeyHash() {
+        return keyHash;
+    }
+
+    /**
+     * 构造每台真实服务器的虚拟节点
+     * 位置(高32位)和节点下标(低32位)拼成一个long排序，位置相同时保留下标大的节点
+     * 位置最高位为1时long是负数，排序前后翻转符号位保证按无符号顺序排列
+     */
+    private void rebuild() {
+        List<T> nodes = new ArrayList<T>(realNodes);
+        long[] packed = new long[nodes.size() * virtualNodeCount];
+        int n = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            T nodeInfo = nodes.get(i);
+            for (int j = 0; j < virtualNodeCount; j++) {
+                packed[n++] = ((hash(computeMd5(nodeInfo + "-VIRTUAL-" + j), 0) << 32) | i) ^ Long.MIN_VALUE;
+            }
         }
-        md5.reset();
-        byte[] keyBytes = null;
-        try {
-            keyBytes = k.getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("Unknown string :" + k, e);
+        Arrays.sort(packed);
+        long[] points = new long[packed.length];
+        int[] owners = new int[packed.length];
+        int size = 0;
+        for (int i = 0; i < packed.length; i++) {
+            long entry = packed[i] ^ Long.MIN_VALUE;
+            long point = entry >>> 32;
+            if (size > 0 && points[size - 1] == point) {
+                size--;
+            }
+            points[size] = point;
+            owners[size] = (int) entry;
+            size++;
         }
+        ring = new Ring<T>(Arrays.copyOf(points, size), Arrays.copyOf(owners, size), nodes);
+    }
 
-        md5.update(keyBytes);
+    /**
+     * 计算MD5值，每个线程复用自己的MessageDigest
+     */
+    public byte[] computeMd5(String k) {
+        MessageDigest md5 = MD5_DIGEST.get();
+        md5.reset();
+        md5.update(k.getBytes(UTF_8));
         return md5.digest();
     }
 
@@ -89,28 +197,131 @@ public class ConsistencyHash {
         return rv & 0xffffffffL; /* Truncate to 32-bits */
     }
 
+    /**
+     * 按构造时指定的算法计算key在环上的位置
+     *
+     * @param key
+     * @return 0 ~ 2^32-1
+     */
+    public long hashKey(String key) {
+        if (keyHash == KeyHash.MURMUR3) {
+            return murmur3(key) & 0xffffffffL;
+        }
+        return hash(computeMd5(key), 0);
+    }
+
+    /**
+     * MurmurHash3 x86 32位，每个char作为两个字节参与计算
+     */
+    static int murmur3(CharSequence key) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h1 = 0;
+        int length = key.length();
+        int i = 1;
+        for (; i < length; i += 2) {
+            int k1 = key.charAt(i - 1) | (key.charAt(i) << 16);
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+        if ((length & 1) == 1) {
+            int k1 = key.charAt(length - 1);
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+        h1 ^= 2 * length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    /**
+     * 根据key取得所属的节点
+     *
+     * @param key
+     * @return 环上没有节点返回null
+     */
+    public T getNode(String key) {
+        return getNodeInfo(hashKey(key));
+    }
 
     /**
      * 根据key的hash值取得服务器节点信息
      *
      * @param hash
-     * @return
+     * @return 环上没有节点返回null
+     */
+    public T getNodeInfo(long hash) {
+        return ring.lookup(hash);
+    }
+
+    /**
+     * 当前环的快照
      */
-    public Object getNodeInfo(long hash) {
-        Long key = hash;
-        SortedMap<Long, Object> tailMap = allNodes.tailMap(key);
-        if (tailMap.isEmpty()) {
-            key = allNodes.firstKey();
-        } else {
-            key = tailMap.firstKey();
+    Ring<T> ring() {
+        return ring;
+    }
+
+    /**
+     * 不可变的环：points升序排列，owners[i]是points[i]所属节点在nodes中的下标
+     */
+    static final class Ring<T> {
+
+        final long[] points;
+
+        final int[] owners;
+
+        final List<T> nodes;
+
+        Ring(long[] points, int[] owners, List<T> nodes) {
+            this.points = points;
+            this.owners = owners;
+            this.nodes = nodes;
+        }
+
+        /**
+         * 顺时针找到第一个位置大于等于hash的虚拟节点
+         *
+         * @return 虚拟节点下标，环为空返回-1
+         */
+        int indexOf(long hash) {
+            if (points.length == 0) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+                if (index == points.length) {
+                    index = 0;
+                }
+            }
+            return index;
+        }
+
+        T lookup(long hash) {
+            int index = indexOf(hash);
+            return index < 0 ? null : nodes.get(owners[index]);
         }
-        return allNodes.get(key);
     }
 
     public static void main(String[] args) {
 
-        ConsistencyHash consistencyHash = new ConsistencyHash();
-        consistencyHash.init();
+        ConsistencyHash<String> consistencyHash = new ConsistencyHash<String>();
+        // 加入五台真实服务器
+        consistencyHash.addNode("192.168.0.0-服务器0");
+        consistencyHash.addNode("192.168.0.1-服务器1");
+        consistencyHash.addNode("192.168.0.2-服务器2");
+        consistencyHash.addNode("192.168.0.3-服务器3");
+        consistencyHash.addNode("192.168.0.4-服务器4");
 
         // 循环50次，是为了取500个数来测试效果，当然也可以用其他任何的数据来测试
         int _0 = 0;
@@ -0,0 +1,259 @@
+package com.jerome.arithmetic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 比较两个一致性hash环，计算增删节点后哪些hash区间会换节点，以及每个节点负责的比例
+ * <p>
+ * 用法：
+ * <pre>
+ * ConsistencyHash&lt;String&gt; after = new ConsistencyHash&lt;String&gt;(newNodes, 150);
+ * RebalancePlan&lt;String&gt; plan = RebalancePlan.plan(before, after);
+ * System.out.println(plan);
+ * </pre>
+ *
+ * @param <T> 节点类型
+ * @author jerome
+ */
+public class RebalancePlan<T> {
+
+    /**
+     * 环的大小 2^32
+     */
+    public static final long RING_SIZE = 1L << 32;
+
+    private final List<Move<T>> moves;
+
+    private final Map<T, Double> loadBefore;
+
+    private final Map<T, Double> loadAfter;
+
+    private final long movedHashes;
+
+    private RebalancePlan(List<Move<T>> moves, Map<T, Double> loadBefore, Map<T, Double> loadAfter, long movedHashes) {
+        this.moves = Collections.unmodifiableList(moves);
+        this.loadBefore = Collections.unmodifiableMap(loadBefore);
+        this.loadAfter = Collections.unmodifiableMap(loadAfter);
+        this.movedHashes = movedHashes;
+    }
+
+    /**
+     * 计算从 from 变成 to 时的迁移计划，两个环必须使用相同的 KeyHash
+     *
+     * @param from 当前的环
+     * @param to   增删节点后的环
+     * @return
+     */
+    public static <T> RebalancePlan<T> plan(ConsistencyHash<T> from, ConsistencyHash<T> to) {
+        if (from.getKeyHash() != to.getKeyHash()) {
+            throw new IllegalArgumentException("rings use different key hash: " + from.getKeyHash() + " vs " + to.getKeyHash());
+        }
+        ConsistencyHash.Ring<T> before = from.ring();
+        ConsistencyHash.Ring<T> after = to.ring();
+        if (after.points.length == 0 && before.points.length > 0) {
+            throw new IllegalArgumentException("target ring has no node");
+        }
+
+        // 两个环所有虚拟节点位置的并集，相邻两个位置之间的区间在两个环里都只属于一个节点
+        long[] union = new long[before.points.length + after.points.length];
+        System.arraycopy(before.points, 0, union, 0, before.points.length);
+        System.arraycopy(after.points, 0, union, before.points.length, after.points.length);
+        Arrays.sort(union);
+        int size = 0;
+        for (long point : union) {
+            if (size == 0 || union[size - 1] != point) {
+                union[size++] = point;
+            }
+        }
+
+        Map<T, Double> loadBefore = new LinkedHashMap<T, Double>();
+        Map<T, Double> loadAfter = new LinkedHashMap<T, Double>();
+        for (T node : before.nodes) {
+            loadBefore.put(node, 0d);
+        }
+        for (T node : after.nodes) {
+            loadAfter.put(node, 0d);
+        }
+        List<Move<T>> moves = new ArrayList<Move<T>>();
+        long movedHashes = 0;
+        for (int k = 0; k < size; k++) {
+            long end = union[k];
+            // 第0个区间从最后一个位置绕过0点到第一个位置
+            long start = k == 0 ? union[size - 1] : union[k - 1];
+            long length = k == 0 ? union[0] + RING_SIZE - union[size - 1] : end - start;
+            T oldOwner = before.lookup(end);
+            T newOwner = after.lookup(end);
+            if (oldOwner != null) {
+                loadBefore.put(oldOwner, loadBefore.get(oldOwner) + (double) length / RING_SIZE);
+            }
+            if (newOwner != null) {
+                loadAfter.put(newOwner, loadAfter.get(newOwner) + (double) length / RING_SIZE);
+            }
+            if (oldOwner == null || oldOwner.equals(newOwner)) {
+                continue;
+            }
+            movedHashes += length;
+            Move<T> last = moves.isEmpty() ? null : moves.get(moves.size() - 1);
+            if (last != null && last.endInclusive == start && last.from.equals(oldOwner) && last.to.equals(newOwner)) {
+                moves.set(moves.size() - 1, new Move<T>(last.startExclusive, end, oldOwner, newOwner, last.length + length));
+            } else {
+                moves.add(new Move<T>(start, end, oldOwner, newOwner, length));
+            }
+        }
+        return new RebalancePlan<T>(moves, loadBefore, loadAfter, movedHashes);
+    }
+
+    /**
+     * 需要迁移的hash区间，相邻且来源、目标相同的区间已经合并
+     */
+    public List<Move<T>> getMoves() {
+        return moves;
+    }
+
+    /**
+     * 需要迁移的key占全部key的比例(假设key均匀分布)
+     */
+    public double getMovedFraction() {
+        return (double) movedHashes / RING_SIZE;
+    }
+
+    /**
+     * 迁移前每个节点负责的比例
+     */
+    public Map<T, Double> getLoadBefore() {
+        return loadBefore;
+    }
+
+    /**
+     * 迁移后每个节点负责的比例
+     */
+    public Map<T, Double> getLoadAfter() {
+        return loadAfter;
+    }
+
+    /**
+     * 有key要迁出的节点
+     */
+    public Set<T> getSources() {
+        Set<T> sources = new LinkedHashSet<T>();
+        for (Move<T> move : moves) {
+            sources.add(move.from);
+        }
+        return sources;
+    }
+
+    /**
+     * 每个来源节点迁到各目标节点的比例
+     */
+    public Map<T, Map<T, Double>> getMovedFractionBySource() {
+        Map<T, Map<T, Double>> result = new LinkedHashMap<T, Map<T, Double>>();
+        for (Move<T> move : moves) {
+            Map<T, Double> targets = result.get(move.from);
+            if (targets == null) {
+                targets = new LinkedHashMap<T, Double>();
+                result.put(move.from, targets);
+            }
+            Double fraction = targets.get(move.to);
+            targets.put(move.to, (fraction == null ? 0d : fraction) + (double) move.length / RING_SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * 负载最大的节点是平均负载的多少倍，1表示完全均衡
+     *
+     * @param load getLoadBefore() 或 getLoadAfter()
+     * @return
+     */
+    public static <T> double maxToMean(Map<T, Double> load) {
+        if (load.isEmpty()) {
+            return 0;
+        }
+        double max = 0;
+        for (Double share : load.values()) {
+            max = Math.max(max, share);
+        }
+        return max * load.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("moved=%.2f%% ranges=%d maxToMean before=%.3f after=%.3f%n",
+                getMovedFraction() * 100, moves.size(), maxToMean(loadBefore), maxToMean(loadAfter)));
+        for (Map.Entry<T, Map<T, Double>> source : getMovedFractionBySource().entrySet()) {
+            for (Map.Entry<T, Double> target : source.getValue().entrySet()) {
+                sb.append(String.format("  %s -> %s : %.2f%%%n", source.getKey(), target.getKey(), target.getValue() * 100));
+            }
+        }
+        for (Map.Entry<T, Double> entry : loadAfter.entrySet()) {
+            Double before = loadBefore.get(entry.getKey());
+            sb.append(String.format("  %s : %.2f%% -> %.2f%%%n", entry.getKey(),
+                    before == null ? 0d : before * 100, entry.getValue() * 100));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 一段要换节点的hash区间 (startExclusive, endInclusive]
+     * startExclusive 大于等于 endInclusive 时区间跨过了0点
+     */
+    public static final class Move<T> {
+
+        private final long startExclusive;
+        private final long endInclusive;
+        private final T from;
+        private final T to;
+        private final long length;
+
+        Move(long startExclusive, long endInclusive, T from, T to, long length) {
+            this.startExclusive = startExclusive;
+            this.endInclusive = endInclusive;
+            this.from = from;
+            this.to = to;
+            this.length = length;
+        }
+
+        public long getStartExclusive() {
+            return startExclusive;
+        }
+
+        public long getEndInclusive() {
+            return endInclusive;
+        }
+
+        public T getFrom() {
+            return from;
+        }
+
+        public T getTo() {
+            return to;
+        }
+
+        /**
+         * 区间包含的hash值个数
+         */
+        public long getLength() {
+            return length;
+        }
+
+        public boolean contains(long hash) {
+            if (startExclusive < endInclusive) {
+                return hash > startExclusive && hash <= endInclusive;
+            }
+            return hash > startExclusive || hash <= endInclusive;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + startExclusive + ", " + endInclusive + "] " + from + " -> " + to;
+        }
+    }
+}
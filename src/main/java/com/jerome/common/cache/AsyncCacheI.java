@@ -0,0 +1,74 @@
+package com.jerome.common.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步的缓存接口，方法含义和 CacheI 相同，结果通过 CompletableFuture 返回
+ * 调用线程只负责提交命令，不等待redis返回，可以同时发出多个读请求再一起等待
+ * <p>
+ * future 在I/O线程上完成，thenApply/thenAccept 等回调默认也在I/O线程执行，耗时的回调要用 *Async 方法切到别的线程池
+ *
+ * @author jerome
+ */
+public interface AsyncCacheI {
+
+    CompletableFuture<Boolean> put(String key, Object value);
+
+    /**
+     * @param secondsToLive 生存时间，单位秒，0表示不过期
+     */
+    CompletableFuture<Boolean> put(String key, Object value, int secondsToLive);
+
+    CompletableFuture<String> get(String key);
+
+    /**
+     * @return 与keys顺序一致的value列表，不存在的key对应null
+     */
+    CompletableFuture<List<String>> mget(List<String> keys);
+
+    CompletableFuture<Boolean> delete(String key);
+
+    CompletableFuture<Long> expire(String key, int seconds);
+
+    CompletableFuture<Long> incr(String key);
+
+    CompletableFuture<Long> incrBy(String key, long integer);
+
+    CompletableFuture<Long> llen(String key);
+
+    CompletableFuture<Long> lpush(String key, String str);
+
+    CompletableFuture<Long> rpush(String key, String str);
+
+    CompletableFuture<String> rpop(String key);
+
+    CompletableFuture<String> ltrim(String key, long start, long end);
+
+    CompletableFuture<Long> zadd(String key, double score, String member);
+
+    CompletableFuture<Long> zrem(String key, String... members);
+
+    CompletableFuture<Set<String>> zrange(String key, long start, long end);
+
+    CompletableFuture<Set<String>> zrevrange(String key, long start, long end);
+
+    CompletableFuture<Long> zcount(String key, double min, double max);
+
+    CompletableFuture<Long> sadd(String key, String... members);
+
+    CompletableFuture<Boolean> sismember(String key, String member);
+
+    CompletableFuture<Long> srem(String key, String... members);
+
+    CompletableFuture<Long> hset(String key, String field, String value);
+
+    CompletableFuture<String> hget(String key, String field);
+
+    CompletableFuture<Map<String, String>> hgetall(String key);
+
+    CompletableFuture<Long> hdel(String key, String... fields);
+
+}
@@ -6,10 +6,77 @@ package com.jerome.common.cache;
  */
 public class CacheFactory {
 
+    /**
+     * 本地缓存默认最多缓存的key个数
+     */
+    private static final int NEAR_CACHE_MAX_SIZE = 10000;
+
+    /**
+     * 本地缓存默认存活时间，单位毫秒
+     */
+    private static final long NEAR_CACHE_TTL_MILLIS = 60 * 1000;
+
+    private static volatile NearCachedImpl nearCache = null;
+
+    private static volatile ShardedRedisCachedImpl shardedCache = null;
+
+    private static volatile PipelinedAsyncCache asyncCache = null;
+
     public static CacheI getRedisCache() {
         return RedisCachedImpl.getInstance();
     }
 
+    /**
+     * 带进程内本地缓存的redis缓存，适合读多写少的热点key
+     * redis熔断时本地缓存中的key继续返回本地的值
+     *
+     * @return
+     */
+    public static NearCachedImpl getNearCache() {
+        if (nearCache == null) {
+            synchronized (CacheFactory.class) {
+                if (nearCache == null) {
+                    CacheI remote = new CircuitBreakerCachedImpl(getRedisCache(), JedisUtil.getCircuitBreaker());
+                    nearCache = new NearCachedImpl(remote, NEAR_CACHE_MAX_SIZE, NEAR_CACHE_TTL_MILLIS,
+                            NearCachedImpl.DEFAULT_INVALIDATE_CHANNEL);
+                }
+            }
+        }
+        return nearCache;
+    }
+
+    /**
+     * 按一致性hash分片到 redis.shards 配置的多个redis实例
+     *
+     * @return
+     */
+    public static ShardedRedisCachedImpl getShardedRedisCache() {
+        if (shardedCache == null) {
+            synchronized (CacheFactory.class) {
+                if (shardedCache == null) {
+                    shardedCache = new ShardedRedisCachedImpl();
+                }
+            }
+        }
+        return shardedCache;
+    }
+
+    /**
+     * 异步的redis缓存，并发请求在I/O线程中合并成pipeline发送
+     *
+     * @return
+     */
+    public static PipelinedAsyncCache getAsyncCache() {
+        if (asyncCache == null) {
+            synchronized (CacheFactory.class) {
+                if (asyncCache == null) {
+                    asyncCache = new PipelinedAsyncCache();
+                }
+            }
+        }
+        return asyncCache;
+    }
+
     /*
     public static CacheI getMemcachedCache() {
         return MemcachedCachedImpl.getInstance();
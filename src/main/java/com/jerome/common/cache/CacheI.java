@@ -1,5 +1,6 @@
 package com.jerome.common.cache;
 
+import com.jerome.common.cache.codec.CacheCodec;
 import redis.clients.jedis.JedisPubSub;
 
 import java.util.List;
@@ -14,6 +15,26 @@ public interface CacheI {
 
     Object get(String key);
 
+    /**
+     * 使用codec把value编码为byte[]后存入，不经过toString
+     *
+     * @param key
+     * @param value
+     * @param secondsToLive 生存时间，单位秒，0表示不过期
+     * @param codec
+     * @return
+     */
+    <T> boolean put(String key, T value, int secondsToLive, CacheCodec<T> codec);
+
+    /**
+     * 读取byte[]并使用codec解码，需要和写入时使用同一种codec
+     *
+     * @param key
+     * @param codec
+     * @return 不存在返回null
+     */
+    <T> T get(String key, CacheCodec<T> codec);
+
     boolean delete(String key);
 
     /**
@@ -277,8 +298,8 @@ public interface CacheI {
     Long hdel(String key, String... fields);
 
     /**
-     * 以事务的方式，对某个key执行incr，并且设置ttl，返回incr和expire的执行结果
-     * 如果有其他客户端对key进行修改，本次事务会被取消，返回null
+     * 原子的对某个key执行incr，并且设置ttl，返回incr和expire的执行结果
+     * 执行失败返回null
      *
      * @param key
      * @param ttl 单位秒
@@ -286,4 +307,81 @@ public interface CacheI {
      */
     List<Object> incrAndExpire(String key, int ttl);
 
+    /**
+     * 原子的增加并设置过期时间，一次往返
+     *
+     * @param key
+     * @param delta
+     * @param ttl   单位秒，小于等于0不设置
+     * @return 增加后的值，执行失败返回null
+     */
+    Long incrWithTtl(String key, long delta, int ttl);
+
+    /**
+     * 令牌桶限流，多个客户端共享同一个key的桶
+     *
+     * @param key
+     * @param capacity         桶容量，也是允许的突发量
+     * @param permitsPerSecond 每秒补充的令牌数
+     * @param permits          本次需要的令牌数
+     * @return 拿到令牌返回true
+     */
+    boolean tryAcquire(String key, long capacity, double permitsPerSecond, long permits);
+
+    /**
+     * 当前值等于expect时才更新为update
+     *
+     * @param key
+     * @param expect        为null时要求key不存在
+     * @param update
+     * @param secondsToLive 生存时间，单位秒，0表示不过期
+     * @return 更新成功返回true
+     */
+    boolean compareAndSet(String key, String expect, String update, int secondsToLive);
+
+    /**
+     * 从头部放入list，只保留最新的maxLength个元素
+     *
+     * @param key
+     * @param maxLength
+     * @param secondsToLive 生存时间，单位秒，0表示不过期
+     * @param values
+     * @return 裁剪后list的长度，执行失败返回null
+     */
+    Long pushCapped(String key, int maxLength, int secondsToLive, String... values);
+
+    /**
+     * 批量获取，内部按批次使用pipeline执行
+     *
+     * @param keys
+     * @return 与keys顺序一致的value列表，不存在的key对应null
+     */
+    List<Object> mget(List<String> keys);
+
+    /**
+     * 批量存入，内部按批次使用pipeline执行
+     *
+     * @param keyValues     值不能为null，有null值时抛出 IllegalArgumentException，整批都不写入
+     * @param secondsToLive 生存时间，单位秒，0表示不过期
+     * @return 全部写入成功返回true
+     */
+    boolean mput(Map<String, ?> keyValues, int secondsToLive);
+
+    /**
+     * 批量删除，内部按批次使用pipeline执行
+     *
+     * @param keys
+     * @return 删除成功的个数
+     */
+    long mdelete(List<String> keys);
+
+    /**
+     * 批量获取多个hash中同一个field的值，内部按批次使用pipeline执行
+     *
+     * @param keys
+     * @param field
+     * @return 与keys顺序一致的value列表，没有对应field返回null
+     */
+    List<String> mhget(List<String> keys, String field);
+
 }
@@ -0,0 +1,121 @@
+package com.jerome.common.cache;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 缓存层用到的原子复合操作，每个操作是一个Lua脚本，一次往返完成，不需要 WATCH/MULTI
+ *
+ * @author jerome
+ */
+public final class CacheScripts {
+
+    /**
+     * INCRBY 之后设置过期时间，ttl小于等于0不设置
+     * 返回整数而不是字符串，Lua的 tostring 对超过14位的数会用科学计数法
+     * KEYS[1]=key ARGV[1]=delta ARGV[2]=ttl(秒)
+     */
+    public static final RedisScript INCR_WITH_TTL = ScriptRegistry.getInstance().register("incrWithTtl",
+            "local n = redis.call('INCRBY', KEYS[1], ARGV[1])\n"
+                    + "if tonumber(ARGV[2]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[2]) end\n"
+                    + "return n");
+
+    /**
+     * 令牌桶限流，桶保存在hash的 tokens、ts 两个field中，空闲到桶满后自动过期
+     * KEYS[1]=key ARGV[1]=容量 ARGV[2]=每秒补充的令牌数 ARGV[3]=本次需要的令牌数 ARGV[4]=当前时间(毫秒)
+     * 当前时间由客户端传入，脚本中不调用 TIME，低版本redis不允许在写操作前执行非确定性命令
+     */
+    public static final RedisScript TOKEN_BUCKET = ScriptRegistry.getInstance().register("tokenBucket",
+            "local capacity = tonumber(ARGV[1])\n"
+                    + "local rate = tonumber(ARGV[2])\n"
+                    + "local requested = tonumber(ARGV[3])\n"
+                    + "local now = tonumber(ARGV[4])\n"
+                    + "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n"
+                    + "local tokens = tonumber(bucket[1])\n"
+                    + "local ts = tonumber(bucket[2])\n"
+                    + "if tokens == nil then tokens = capacity; ts = now end\n"
+                    + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)\n"
+                    + "local allowed = 0\n"
+                    + "if tokens >= requested then tokens = tokens - requested; allowed = 1 end\n"
+                    + "redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))\n"
+                    + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 1000)\n"
+                    + "return tostring(allowed)");
+
+    /**
+     * 值等于期望值时才更新
+     * KEYS[1]=key ARGV[1]=是否期望key存在(1/0) ARGV[2]=期望值 ARGV[3]=新值 ARGV[4]=ttl(秒)
+     */
+    public static final RedisScript COMPARE_AND_SET = ScriptRegistry.getInstance().register("compareAndSet",
+            "local current = redis.call('GET', KEYS[1])\n"
+                    + "if ARGV[1] == '1' then\n"
+                    + "  if current ~= ARGV[2] then return '0' end\n"
+                    + "elseif current then return '0' end\n"
+                    + "if tonumber(ARGV[4]) > 0 then redis.call('SET', KEYS[1], ARGV[3], 'EX', ARGV[4])\n"
+                    + "else redis.call('SET', KEYS[1], ARGV[3]) end\n"
+                    + "return '1'");
+
+    /**
+     * LPUSH 之后 LTRIM 只保留最新的 maxLength 个元素
+     * KEYS[1]=key ARGV[1]=maxLength ARGV[2]=ttl(秒) ARGV[3...]=values
+     */
+    public static final RedisScript CAPPED_PUSH = ScriptRegistry.getInstance().register("cappedPush",
+            "local n = redis.call('LPUSH', KEYS[1], unpack(ARGV, 3))\n"
+                    + "local max = tonumber(ARGV[1])\n"
+                    + "redis.call('LTRIM', KEYS[1], 0, max - 1)\n"
+                    + "if tonumber(ARGV[2]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[2]) end\n"
+                    + "return tostring(math.min(n, max))");
+
+    private CacheScripts() {
+    }
+
+    /**
+     * @return 增加后的值
+     */
+    public static Long incrWithTtl(Jedis jedis, String key, long delta, int ttl) {
+        Object result = ScriptRegistry.getInstance().eval(jedis, INCR_WITH_TTL, Collections.singletonList(key),
+                Arrays.asList(String.valueOf(delta), String.valueOf(ttl)));
+        return Long.valueOf(result.toString());
+    }
+
+    /**
+     * @return 拿到令牌返回true
+     */
+    public static boolean tryAcquire(Jedis jedis, String key, long capacity, double permitsPerSecond, long permits) {
+        if (capacity <= 0 || permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and permitsPerSecond must be positive");
+        }
+        Object result = ScriptRegistry.getInstance().eval(jedis, TOKEN_BUCKET, Collections.singletonList(key),
+                Arrays.asList(String.valueOf(capacity), String.valueOf(permitsPerSecond), String.valueOf(permits),
+                        String.valueOf(System.currentTimeMillis())));
+        return "1".equals(result);
+    }
+
+    /**
+     * @param expect 为null时要求key不存在
+     * @return 更新成功返回true
+     */
+    public static boolean compareAndSet(Jedis jedis, String key, String expect, String update, int ttl) {
+        Object result = ScriptRegistry.getInstance().eval(jedis, COMPARE_AND_SET, Collections.singletonList(key),
+                Arrays.asList(expect == null ? "0" : "1", expect == null ? "" : expect, update, String.valueOf(ttl)));
+        return "1".equals(result);
+    }
+
+    /**
+     * @return 裁剪后list的长度
+     */
+    public static Long pushCapped(Jedis jedis, String key, int maxLength, int ttl, String... values) {
+        if (maxLength <= 0 || values.length == 0) {
+            throw new IllegalArgumentException("maxLength must be positive and values must not be empty");
+        }
+        List<String> args = new ArrayList<String>(values.length + 2);
+        args.add(String.valueOf(maxLength));
+        args.add(String.valueOf(ttl));
+        Collections.addAll(args, values);
+        Object result = ScriptRegistry.getInstance().eval(jedis, CAPPED_PUSH, Collections.singletonList(key), args);
+        return Long.valueOf(result.toString());
+    }
+}
@@ -0,0 +1,319 @@
+package com.jerome.common.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 熔断器
+ * <p>
+ * CLOSED：正常放行，按秒分桶统计最近 windowSeconds 秒的调用数、失败数和慢调用数，
+ * 调用数达到 minimumCalls 且失败率或慢调用率超过阈值时切换到 OPEN。
+ * OPEN：直接拒绝，不再等待超时；openMillis 之后切换到 HALF_OPEN。
+ * HALF_OPEN：只放行 halfOpenProbes 个试探调用，全部成功切回 CLOSED，任意一个失败或变慢切回 OPEN。
+ * <p>
+ * 状态变化通知 Listener，默认打印WARN日志，可以再加监听器接告警。
+ *
+ * @author jerome
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class.getName());
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 状态变化监听器，在触发状态变化的调用线程中执行，不要做耗时操作
+     */
+    public interface Listener {
+        void onStateChange(CircuitBreaker breaker, State from, State to, String reason);
+    }
+
+    private final String name;
+
+    private final int windowSeconds;
+
+    private final Bucket[] buckets;
+
+    private volatile int minimumCalls = 20;
+
+    private volatile double failureRateThreshold = 0.5;
+
+    /**
+     * 慢调用阈值，纳秒，小于等于0表示不统计慢调用
+     */
+    private volatile long slowCallNanos = 0;
+
+    private volatile double slowCallRateThreshold = 0.8;
+
+    private volatile long openMillis = 5000;
+
+    private volatile int halfOpenProbes = 3;
+
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+
+    private volatile long openedAt;
+
+    private volatile long probingSince;
+
+    private final AtomicInteger probesRemaining = new AtomicInteger();
+
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+    private final LongAdder shortCircuited = new LongAdder();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * @param name          出现在日志和事件中
+     * @param windowSeconds 统计窗口，单位秒
+     */
+    public CircuitBreaker(String name, int windowSeconds) {
+        if (windowSeconds <= 0) {
+            throw new IllegalArgumentException("windowSeconds must be positive: " + windowSeconds);
+        }
+        this.name = name;
+        this.windowSeconds = windowSeconds;
+        this.buckets = new Bucket[windowSeconds];
+        for (int i = 0; i < windowSeconds; i++) {
+            buckets[i] = new Bucket();
+        }
+        listeners.add((breaker, from, to, reason) ->
+                LOG.warn("circuit breaker {} {} -> {}: {}", breaker.getName(), from, to, reason));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * @param failureRateThreshold 0~1
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * @param slowCallMillis 超过这个耗时算慢调用，小于等于0不统计
+     */
+    public void setSlowCallMillis(long slowCallMillis) {
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    }
+
+    /**
+     * @param slowCallRateThreshold 0~1
+     */
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public void setOpenMillis(long openMillis) {
+        this.openMillis = openMillis;
+    }
+
+    public void setHalfOpenProbes(int halfOpenProbes) {
+        if (halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("halfOpenProbes must be positive: " + halfOpenProbes);
+        }
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 调用前检查是否放行，放行后必须调用 onSuccess 或 onFailure
+     *
+     * @return false表示熔断中，应该直接走降级逻辑
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                shortCircuited.increment();
+                return false;
+            }
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                probeSuccesses.set(0);
+                probesRemaining.set(halfOpenProbes);
+                probingSince = System.currentTimeMillis();
+                notifyListeners(State.OPEN, State.HALF_OPEN, "open for " + openMillis + "ms, start probing");
+            }
+        }
+        if (probesRemaining.getAndDecrement() > 0) {
+            return true;
+        }
+        // 试探名额被长期占用连接的调用(订阅、阻塞命令)拿走时不会有结果，超过 openMillis 重新发放
+        long now = System.currentTimeMillis();
+        if (now - probingSince >= openMillis) {
+            probingSince = now;
+            probesRemaining.set(halfOpenProbes - 1);
+            return true;
+        }
+        shortCircuited.increment();
+        return false;
+    }
+
+    /**
+     * 熔断中且还没到试探时间，不消耗试探名额，用于调用前快速判断
+     */
+    public boolean isOpen() {
+        return state.get() == State.OPEN && System.currentTimeMillis() - openedAt < openMillis;
+    }
+
+    /**
+     * @param nanos 调用耗时
+     */
+    public void onSuccess(long nanos) {
+        boolean slow = slowCallNanos > 0 && nanos >= slowCallNanos;
+        bucket().record(false, slow);
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (slow) {
+                open(State.HALF_OPEN, "slow probe " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms");
+            } else if (probeSuccesses.incrementAndGet() >= halfOpenProbes) {
+                resetWindow();
+                transition(State.HALF_OPEN, State.CLOSED, halfOpenProbes + " probes succeeded");
+            }
+        } else if (current == State.CLOSED && slow) {
+            evaluate();
+        }
+    }
+
+    /**
+     * @param nanos 调用耗时
+     */
+    public void onFailure(long nanos) {
+        bucket().record(true, slowCallNanos > 0 && nanos >= slowCallNanos);
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            open(State.HALF_OPEN, "probe failed");
+        } else if (current == State.CLOSED) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        long calls = 0;
+        long failures = 0;
+        long slow = 0;
+        long now = currentSecond();
+        for (Bucket bucket : buckets) {
+            if (now - bucket.second < windowSeconds) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum();
+                slow += bucket.slow.sum();
+            }
+        }
+        if (calls < minimumCalls) {
+            return;
+        }
+        double failureRate = (double) failures / calls;
+        double slowRate = (double) slow / calls;
+        if (failureRate >= failureRateThreshold) {
+            open(State.CLOSED, String.format("failure rate %.1f%% of %d calls", failureRate * 100, calls));
+        } else if (slowCallNanos > 0 && slowRate >= slowCallRateThreshold) {
+            open(State.CLOSED, String.format("slow call rate %.1f%% of %d calls", slowRate * 100, calls));
+        }
+    }
+
+    private void open(State from, String reason) {
+        openedAt = System.currentTimeMillis();
+        transition(from, State.OPEN, reason);
+    }
+
+    private void transition(State from, State to, String reason) {
+        if (state.compareAndSet(from, to)) {
+            notifyListeners(from, to, reason);
+        }
+    }
+
+    private void notifyListeners(State from, State to, String reason) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onStateChange(this, from, to, reason);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void resetWindow() {
+        for (Bucket bucket : buckets) {
+            bucket.second = -1;
+        }
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private Bucket bucket() {
+        long second = currentSecond();
+        Bucket bucket = buckets[(int) (second % windowSeconds)];
+        if (bucket.second != second) {
+            synchronized (bucket) {
+                if (bucket.second != second) {
+                    bucket.calls.reset();
+                    bucket.failures.reset();
+                    bucket.slow.reset();
+                    bucket.second = second;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * 熔断拒绝的调用次数
+     */
+    public long getShortCircuited() {
+        return shortCircuited.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + state.get() + "] shortCircuited=" + getShortCircuited();
+    }
+
+    /**
+     * 一秒的统计，second 不是当前秒时先清零再使用
+     */
+    private static final class Bucket {
+
+        volatile long second = -1;
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder slow = new LongAdder();
+
+        void record(boolean failure, boolean slowCall) {
+            calls.increment();
+            if (failure) {
+                failures.increment();
+            }
+            if (slowCall) {
+                slow.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.jerome.common.cache;
+
+import com.jerome.common.cache.codec.CacheCodec;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 带熔断的 CacheI
+ * <p>
+ * 熔断器由连接池根据连接错误维护(见 MonitoredJedisPool)，这里只在调用前检查：
+ * 熔断中直接返回降级值(null、false、0)，不借连接也不打印异常，调用线程不会堆积在连接超时上。
+ * 放在 NearCachedImpl 和redis之间时，熔断期间本地缓存里有的key照常返回本地的值：
+ * <pre>
+ * new NearCachedImpl(new CircuitBreakerCachedImpl(redisCache, JedisUtil.getCircuitBreaker()), ...)
+ * </pre>
+ *
+ * @author jerome
+ */
+public class CircuitBreakerCachedImpl implements CacheI {
+
+    private final CacheI target;
+
+    private final CircuitBreaker breaker;
+
+    private final LongAdder shortCircuited = new LongAdder();
+
+    /**
+     * @param target
+     * @param breaker 为null时不做任何检查
+     */
+    public CircuitBreakerCachedImpl(CacheI target, CircuitBreaker breaker) {
+        this.target = target;
+        this.breaker = breaker == null ? new CircuitBreaker("disabled", 1) : breaker;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    /**
+     * 熔断期间直接返回降级值的调用次数
+     */
+    public long getShortCircuited() {
+        return shortCircuited.sum();
+    }
+
+    private <R> R guard(Supplier<R> call, R fallback) {
+        if (breaker.isOpen()) {
+            shortCircuited.increment();
+            return fallback;
+        }
+        return call.get();
+    }
+
+    @Override
+    public boolean put(String key, Object value) {
+        return guard(() -> target.put(key, value), false);
+    }
+
+    @Override
+    public boolean put(String key, Object value, int secondsToLive) {
+        return guard(() -> target.put(key, value, secondsToLive), false);
+    }
+
+    @Override
+    public Object get(String key) {
+        return guard(() -> target.get(key), null);
+    }
+
+    @Override
+    public <T> boolean put(String key, T value, int secondsToLive, CacheCodec<T> codec) {
+        return guard(() -> target.put(key, value, secondsToLive, codec), false);
+    }
+
+    @Override
+    public <T> T get(String key, CacheCodec<T> codec) {
+        return guard(() -> target.get(key, codec), null);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return guard(() -> target.delete(key), false);
+    }
+
+    @Override
+    public long llen(String key) {
+        return guard(() -> target.llen(key), 0L);
+    }
+
+    @Override
+    public long lpush(String key, String str) {
+        return guard(() -> target.lpush(key, str), 0L);
+    }
+
+    @Override
+    public long rpush(String key, String str) {
+        return guard(() -> target.rpush(key, str), 0L);
+    }
+
+    @Override
+    public String rpop(String key) {
+        return guard(() -> target.rpop(key), null);
+    }
+
+    @Override
+    public String blpop(int timeout, String key) {
+        return guard(() -> target.blpop(timeout, key), null);
+    }
+
+    @Override
+    public long publish(String channel, String message) {
+        return guard(() -> target.publish(channel, message), 0L);
+    }
+
+    @Override
+    public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+        if (breaker.isOpen()) {
+            shortCircuited.increment();
+            return;
+        }
+        target.psubscribe(jedisPubSub, patterns);
+    }
+
+    @Override
+    public Long incr(String key) {
+        return guard(() -> target.incr(key), null);
+    }
+
+    @Override
+    public Long decr(String key) {
+        return guard(() -> target.decr(key), null);
+    }
+
+    @Override
+    public String ltrim(String key, long start, long end) {
+        return guard(() -> target.ltrim(key, start, end), null);
+    }
+
+    @Override
+    public Long zadd(String key, double score, String member) {
+        return guard(() -> target.zadd(key, score, member), null);
+    }
+
+    @Override
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        return guard(() -> target.zadd(key, scoreMembers), null);
+    }
+
+    @Override
+    public Long zrem(String key, String... members) {
+        return guard(() -> target.zrem(key, members), null);
+    }
+
+    @Override
+    public Set<String> zrevrange(String key, long start, long end) {
+        return guard(() -> target.zrevrange(key, start, end), null);
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(String key, double max, double min, int offset, int count) {
+        return guard(() -> target.zrevrangeByScore(key, max, min, offset, count), null);
+    }
+
+    @Override
+    public Set<String> zrange(String key, long start, long end) {
+        return guard(() -> target.zrange(key, start, end), null);
+    }
+
+    @Override
+    public Long zcount(String key, double min, double max) {
+        return guard(() -> target.zcount(key, min, max), null);
+    }
+
+    @Override
+    public Long sadd(String key, String... members) {
+        return guard(() -> target.sadd(key, members), null);
+    }
+
+    @Override
+    public Boolean sismember(String key, String member) {
+        return guard(() -> target.sismember(key, member), null);
+    }
+
+    @Override
+    public Long srem(String key, String... members) {
+        return guard(() -> target.srem(key, members), null);
+    }
+
+    @Override
+    public Long expire(final String key, final int seconds) {
+        return guard(() -> target.expire(key, seconds), null);
+    }
+
+    @Override
+    public Long incrBy(String key, Long integer) {
+        return guard(() -> target.incrBy(key, integer), null);
+    }
+
+    @Override
+    public List<String> srandmember(String key, int count) {
+        return guard(() -> target.srandmember(key, count), null);
+    }
+
+    @Override
+    public Long hset(String key, String field, String value) {
+        return guard(() -> target.hset(key, field, value), null);
+    }
+
+    @Override
+    public String hmset(String key, Map<String, String> hash) {
+        return guard(() -> target.hmset(key, hash), null);
+    }
+
+    @Override
+    public String hget(String key, String field) {
+        return guard(() -> target.hget(key, field), null);
+    }
+
+    @Override
+    public Map<String, String> hgetall(String key) {
+        return guard(() -> target.hgetall(key), null);
+    }
+
+    @Override
+    public Long hdel(String key, String... fields) {
+        return guard(() -> target.hdel(key, fields), null);
+    }
+
+    @Override
+    public List<Object> incrAndExpire(String key, int ttl) {
+        return guard(() -> target.incrAndExpire(key, ttl), null);
+    }
+
+    @Override
+    public Long incrWithTtl(String key, long delta, int ttl) {
+        return guard(() -> target.incrWithTtl(key, delta, ttl), null);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long capacity, double permitsPerSecond, long permits) {
+        return guard(() -> target.tryAcquire(key, capacity, permitsPerSecond, permits), false);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expect, String update, int secondsToLive) {
+        return guard(() -> target.compareAndSet(key, expect, update, secondsToLive), false);
+    }
+
+    @Override
+    public Long pushCapped(String key, int maxLength, int secondsToLive, String... values) {
+        return guard(() -> target.pushCapped(key, maxLength, secondsToLive, values), null);
+    }
+
+    @Override
+    public List<Object> mget(List<String> keys) {
+        return guard(() -> target.mget(keys), null);
+    }
+
+    @Override
+    public boolean mput(Map<String, ?> keyValues, int secondsToLive) {
+        return guard(() -> target.mput(keyValues, secondsToLive), false);
+    }
+
+    @Override
+    public long mdelete(List<String> keys) {
+        return guard(() -> target.mdelete(keys), 0L);
+    }
+
+    @Override
+    public List<String> mhget(List<String> keys, String field) {
+        return guard(() -> target.mhget(keys, field), null);
+    }
+}
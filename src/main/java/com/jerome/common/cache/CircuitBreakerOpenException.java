@@ -0,0 +1,17 @@
+package com.jerome.common.cache;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * 熔断器打开时借连接抛出的异常，不等待连接超时
+ *
+ * @author jerome
+ */
+public class CircuitBreakerOpenException extends JedisConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String breakerName) {
+        super("circuit breaker " + breakerName + " is open");
+    }
+}
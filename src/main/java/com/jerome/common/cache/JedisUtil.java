@@ -6,7 +6,9 @@ import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 /**
@@ -54,25 +56,68 @@ public class JedisUtil {
      * 超时时间
      **/
     public final static String REDIS_TIMEOUT_KEY = "redis.pool.timeout";
+    /**
+     * 分片列表，格式 ip:port,ip:port
+     **/
+    private final static String REDIS_SHARDS_KEY = "redis.shards";
+    /**
+     * 是否根据借连接的等待时间自动调整最大连接数，默认false
+     **/
+    private final static String REDIS_ADAPTIVE_KEY = "redis.pool.adaptive";
+    /**
+     * 自适应模式下最大连接数的下限，默认为 redis.pool.maxActive
+     **/
+    private final static String REDIS_ADAPTIVE_MIN_KEY = "redis.pool.adaptive.minTotal";
+    /**
+     * 自适应模式下最大连接数的上限，默认为 redis.pool.maxActive 的4倍
+     **/
+    private final static String REDIS_ADAPTIVE_MAX_KEY = "redis.pool.adaptive.maxTotal";
+    /**
+     * 借连接的目标平均等待时间，单位微秒，默认1000
+     **/
+    private final static String REDIS_ADAPTIVE_TARGET_KEY = "redis.pool.adaptive.targetWaitMicros";
+    /**
+     * 调整周期，单位毫秒，默认5000
+     **/
+    private final static String REDIS_ADAPTIVE_INTERVAL_KEY = "redis.pool.adaptive.intervalMillis";
+    /**
+     * 是否开启熔断，默认false
+     **/
+    private final static String REDIS_BREAKER_KEY = "redis.breaker.enabled";
+    /**
+     * 熔断的失败率阈值，0~1，默认0.5
+     **/
+    private final static String REDIS_BREAKER_FAILURE_RATE_KEY = "redis.breaker.failureRate";
+    /**
+     * 统计窗口(10秒)内至少有多少次调用才计算失败率，默认20
+     **/
+    private final static String REDIS_BREAKER_MINIMUM_CALLS_KEY = "redis.breaker.minimumCalls";
+    /**
+     * 慢调用阈值，单位毫秒，默认0不统计慢调用
+     **/
+    private final static String REDIS_BREAKER_SLOW_CALL_KEY = "redis.breaker.slowCallMillis";
+    /**
+     * 熔断后多久开始试探，单位毫秒，默认5000
+     **/
+    private final static String REDIS_BREAKER_OPEN_KEY = "redis.breaker.openMillis";
 
     private static int DEFAULT_DB_INDEX = 0;
 
-    private static JedisPool jedisPool = null;
+    /**
+     * 连接池只初始化一次，通过volatile安全发布，获取连接时不再需要全局锁
+     */
+    private static volatile MonitoredJedisPool jedisPool = null;
+
+    private static final Object INIT_LOCK = new Object();
 
     private static final Logger LOG = LoggerFactory.getLogger(JedisUtil.class.getName());
 
     private JedisUtil() {
     }
 
-    private static void initialPool() {
+    private static MonitoredJedisPool initialPool() {
         try {
-            Locale local = Locale.getDefault();
-            ResourceBundle bundle = ResourceBundle.getBundle("redis", local, JedisUtil.class.getClassLoader());
-            if (bundle == null) {
-                throw new IllegalArgumentException("[redis.properties] is not found!");
-            }
-            // 创建jedis池配置实例  
-            JedisPoolConfig config = new JedisPoolConfig();
+            ResourceBundle bundle = loadBundle();
             // 设置池配置项值
             String address = bundle.getString(REDIS_IP_KEY);
             int port = Integer.valueOf(bundle.getString(REDIS_PORT_KEY));
@@ -83,70 +128,207 @@ public class JedisUtil {
             if (strDbIndex != null) {
                 DEFAULT_DB_INDEX = Integer.valueOf(strDbIndex);
             }
+            // 根据配置实例化jedis池，数据库索引交给连接池在建立连接时select，借出连接时不用再发一次select
+            JedisPoolConfig config = buildPoolConfig(bundle);
+            MonitoredJedisPool pool = new MonitoredJedisPool(config, address, port, readTimeout(bundle), null, DEFAULT_DB_INDEX);
+            configureAdaptive(bundle, pool, config.getMaxTotal());
+            configureBreaker(bundle, pool, address + ":" + port);
+            return pool;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            String strMaxActive = bundle.getString(REDIS_MAXACTIVE_KEY);
-            LOG.info("strMaxActive =" + strMaxActive);
-            if (strMaxActive != null) {
-                config.setMaxTotal(Integer.valueOf(strMaxActive));
+    /**
+     * 按 redis.shards 配置为每个分片创建一个独立的连接池，连接池参数和默认连接池相同
+     * 配置格式：redis.shards=192.168.10.5:6379,192.168.10.6:6379
+     *
+     * @return key为 ip:port，按配置顺序排列
+     */
+    public static Map<String, JedisPool> createShardPools() {
+        ResourceBundle bundle = loadBundle();
+        String shards = bundle.getString(REDIS_SHARDS_KEY);
+        LOG.info("shards =" + shards);
+        int dbIndex = Integer.valueOf(bundle.getString(REDIS_DB_INDEX_KEY));
+        int timeout = readTimeout(bundle);
+        Map<String, JedisPool> pools = new LinkedHashMap<String, JedisPool>();
+        for (String shard : shards.split(",")) {
+            String node = shard.trim();
+            if (node.isEmpty()) {
+                continue;
             }
-
-            String strMaxIdle = bundle.getString(REDIS_MAXIDLE_KEY);
-            LOG.info("strMaxIdle =" + strMaxIdle);
-            if (strMaxIdle != null) {
-                config.setMaxIdle(Integer.valueOf(strMaxIdle));
+            int index = node.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("invalid shard, expect ip:port: " + node);
             }
+            String address = node.substring(0, index);
+            int port = Integer.valueOf(node.substring(index + 1));
+            JedisPoolConfig config = buildPoolConfig(bundle);
+            MonitoredJedisPool pool = new MonitoredJedisPool(config, address, port, timeout, null, dbIndex);
+            configureAdaptive(bundle, pool, config.getMaxTotal());
+            configureBreaker(bundle, pool, address + ":" + port);
+            pools.put(node, pool);
+        }
+        return pools;
+    }
 
-            String strMaxWait = bundle.getString(REDIS_MAXWAIT_KEY);
-            LOG.info("strMaxWait =" + strMaxWait);
-            if (strMaxWait != null) {
-                config.setMaxWaitMillis(Long.valueOf(strMaxWait));
-            }
+    private static ResourceBundle loadBundle() {
+        Locale local = Locale.getDefault();
+        ResourceBundle bundle = ResourceBundle.getBundle("redis", local, JedisUtil.class.getClassLoader());
+        if (bundle == null) {
+            throw new IllegalArgumentException("[redis.properties] is not found!");
+        }
+        return bundle;
+    }
 
-            String strTestOnBorrow = bundle.getString(REDIS_TESTONBORROW_KEY);
-            LOG.info("strTestOnBorrow =" + strTestOnBorrow);
-            if (strTestOnBorrow != null) {
-                config.setTestOnBorrow(Boolean.valueOf(strTestOnBorrow));
-            }
+    private static JedisPoolConfig buildPoolConfig(ResourceBundle bundle) {
+        // 创建jedis池配置实例
+        JedisPoolConfig config = new JedisPoolConfig();
 
-            String strTestOnReturn = bundle.getString(REDIS_TESTONRETURN_KEY);
-            LOG.info("strTestOnReturn =" + strTestOnReturn);
-            if (strTestOnReturn != null) {
-                config.setTestOnReturn(Boolean.valueOf(strTestOnReturn));
-            }
+        String strMaxActive = bundle.getString(REDIS_MAXACTIVE_KEY);
+        LOG.info("strMaxActive =" + strMaxActive);
+        if (strMaxActive != null) {
+            config.setMaxTotal(Integer.valueOf(strMaxActive));
+        }
 
-            String strTimeout = bundle.getString(REDIS_TIMEOUT_KEY);
-            LOG.info("strTimeout =" + strTimeout);
-            int timeout = 2000;
-            if (strTimeout != null) {
-                timeout = Integer.valueOf(strTimeout);
-            }
-            // 根据配置实例化jedis池  
-            jedisPool = new JedisPool(config, address, port, timeout);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
+        String strMaxIdle = bundle.getString(REDIS_MAXIDLE_KEY);
+        LOG.info("strMaxIdle =" + strMaxIdle);
+        if (strMaxIdle != null) {
+            config.setMaxIdle(Integer.valueOf(strMaxIdle));
+        }
+
+        String strMaxWait = bundle.getString(REDIS_MAXWAIT_KEY);
+        LOG.info("strMaxWait =" + strMaxWait);
+        if (strMaxWait != null) {
+            config.setMaxWaitMillis(Long.valueOf(strMaxWait));
+        }
 
+        String strTestOnBorrow = bundle.getString(REDIS_TESTONBORROW_KEY);
+        LOG.info("strTestOnBorrow =" + strTestOnBorrow);
+        if (strTestOnBorrow != null) {
+            config.setTestOnBorrow(Boolean.valueOf(strTestOnBorrow));
         }
+
+        String strTestOnReturn = bundle.getString(REDIS_TESTONRETURN_KEY);
+        LOG.info("strTestOnReturn =" + strTestOnReturn);
+        if (strTestOnReturn != null) {
+            config.setTestOnReturn(Boolean.valueOf(strTestOnReturn));
+        }
+        return config;
     }
 
-    public synchronized static Jedis getJedisInstance() {
-        if (jedisPool == null) {
-            initialPool();
+    /**
+     * redis.pool.adaptive=true 时开启自适应最大连接数，相关配置都是可选的
+     */
+    private static void configureAdaptive(ResourceBundle bundle, MonitoredJedisPool pool, int maxActive) {
+        if (!Boolean.valueOf(getOptional(bundle, REDIS_ADAPTIVE_KEY, "false"))) {
+            return;
         }
-        try {
-            if (jedisPool != null) {
-                Jedis resource = jedisPool.getResource();
-                resource.select(DEFAULT_DB_INDEX);
-                return resource;
-            } else {
-                return null;
+        int base = maxActive > 0 ? maxActive : 8;
+        int minTotal = Integer.valueOf(getOptional(bundle, REDIS_ADAPTIVE_MIN_KEY, String.valueOf(base)));
+        int maxTotal = Integer.valueOf(getOptional(bundle, REDIS_ADAPTIVE_MAX_KEY, String.valueOf(base * 4)));
+        long targetWaitMicros = Long.valueOf(getOptional(bundle, REDIS_ADAPTIVE_TARGET_KEY, "1000"));
+        long intervalMillis = Long.valueOf(getOptional(bundle, REDIS_ADAPTIVE_INTERVAL_KEY, "5000"));
+        LOG.info("adaptive pool minTotal=" + minTotal + " maxTotal=" + maxTotal + " targetWaitMicros=" + targetWaitMicros);
+        pool.enableAdaptive(minTotal, maxTotal, targetWaitMicros, intervalMillis);
+    }
+
+    /**
+     * 每个连接池一个熔断器，redis.breaker.enabled=true 时开启
+     * 熔断中 getJedisInstance 返回null，RedisUtil 和 RedisCachedImpl 直接返回失败时的默认值
+     */
+    private static void configureBreaker(ResourceBundle bundle, MonitoredJedisPool pool, String name) {
+        if (!Boolean.valueOf(getOptional(bundle, REDIS_BREAKER_KEY, "false"))) {
+            return;
+        }
+        CircuitBreaker breaker = new CircuitBreaker("redis-" + name, 10);
+        breaker.setFailureRateThreshold(Double.valueOf(getOptional(bundle, REDIS_BREAKER_FAILURE_RATE_KEY, "0.5")));
+        breaker.setMinimumCalls(Integer.valueOf(getOptional(bundle, REDIS_BREAKER_MINIMUM_CALLS_KEY, "20")));
+        breaker.setSlowCallMillis(Long.valueOf(getOptional(bundle, REDIS_BREAKER_SLOW_CALL_KEY, "0")));
+        breaker.setOpenMillis(Long.valueOf(getOptional(bundle, REDIS_BREAKER_OPEN_KEY, "5000")));
+        pool.setCircuitBreaker(breaker);
+    }
+
+    private static String getOptional(ResourceBundle bundle, String key, String defaultValue) {
+        return bundle.containsKey(key) ? bundle.getString(key) : defaultValue;
+    }
+
+    private static int readTimeout(ResourceBundle bundle) {
+        String strTimeout = bundle.getString(REDIS_TIMEOUT_KEY);
+        LOG.info("strTimeout =" + strTimeout);
+        int timeout = 2000;
+        if (strTimeout != null) {
+            timeout = Integer.valueOf(strTimeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * 双重检查初始化连接池，初始化成功后只做一次volatile读
+     * 初始化失败时返回null，下次调用会重试
+     *
+     * @return
+     */
+    private static MonitoredJedisPool getPool() {
+        MonitoredJedisPool pool = jedisPool;
+        if (pool == null) {
+            synchronized (INIT_LOCK) {
+                pool = jedisPool;
+                if (pool == null) {
+                    pool = initialPool();
+                    jedisPool = pool;
+                }
             }
+        }
+        return pool;
+    }
+
+    public static Jedis getJedisInstance() {
+        MonitoredJedisPool pool = getPool();
+        if (pool == null) {
+            return null;
+        }
+        try {
+            return pool.getResource();
+        } catch (CircuitBreakerOpenException e) {
+            // 熔断中，快速失败，不打印异常
+            return null;
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * 默认连接池的当前状态：活跃、空闲、等待线程数，借连接等待时间分布和失败次数
+     *
+     * @return 连接池初始化失败返回null
+     */
+    public static MonitoredJedisPool.Stats getPoolStats() {
+        MonitoredJedisPool pool = getPool();
+        return pool == null ? null : pool.getStats();
+    }
+
+    /**
+     * 默认连接池的熔断器
+     *
+     * @return 没有开启熔断或连接池初始化失败返回null
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        MonitoredJedisPool pool = getPool();
+        return pool == null ? null : pool.getCircuitBreaker();
+    }
+
+    /**
+     * 默认连接池，可以用来运行时调整最大连接数或开关自适应模式
+     *
+     * @return 连接池初始化失败返回null
+     */
+    public static MonitoredJedisPool getMonitoredPool() {
+        return getPool();
+    }
+
     /**
      * 返回连接池
      *
@@ -0,0 +1,109 @@
+package com.jerome.common.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * 基于 SCAN 的key迭代器，用来代替会阻塞redis的 KEYS
+ * <p>
+ * 调用方取完当前一页才会发下一次 SCAN，取得慢就扫得慢，不会一次把所有key读到内存里。
+ * 每一页借一次连接，取完立即归还，迭代过程中不占用连接。
+ * <p>
+ * SCAN 的特点：遍历期间一直存在的key一定会返回；遍历期间新增或删除的key可能返回也可能不返回；
+ * rehash 时同一个key可能返回多次，调用方需要能容忍重复。
+ *
+ * @author jerome
+ */
+public class KeyScanner implements Iterator<String> {
+
+    /**
+     * 默认每次 SCAN 的 COUNT，只是提示，redis每次返回的个数可能多也可能少
+     */
+    public static final int DEFAULT_COUNT = 1000;
+
+    private final Supplier<Jedis> connections;
+
+    private final ScanParams params;
+
+    private String cursor = ScanParams.SCAN_POINTER_START;
+
+    private boolean finished;
+
+    private List<String> page = Collections.emptyList();
+
+    private int position;
+
+    /**
+     * @param connections 每一页调用一次，用完后 close 归还
+     * @param pattern     MATCH 参数，null表示所有key
+     * @param count       COUNT 参数
+     */
+    public KeyScanner(Supplier<Jedis> connections, String pattern, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        this.connections = connections;
+        this.params = new ScanParams().count(count);
+        if (pattern != null) {
+            params.match(pattern);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position >= page.size()) {
+            if (finished) {
+                return false;
+            }
+            page = scanPage();
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(position++);
+    }
+
+    /**
+     * 取出当前页剩下的key，当前页取完时扫描下一页，用于按批处理
+     * SCAN 可能返回空页，这里会一直扫到有key或者遍历结束
+     *
+     * @return 遍历结束返回空列表
+     */
+    public List<String> nextPage() {
+        if (!hasNext()) {
+            return Collections.emptyList();
+        }
+        List<String> rest = new ArrayList<String>(page.subList(position, page.size()));
+        position = page.size();
+        return rest;
+    }
+
+    private List<String> scanPage() {
+        Jedis jedis = connections.get();
+        if (jedis == null) {
+            throw new IllegalStateException("no redis connection available");
+        }
+        try {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            cursor = result.getStringCursor();
+            finished = ScanParams.SCAN_POINTER_START.equals(cursor);
+            return result.getResult();
+        } finally {
+            jedis.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.jerome.common.cache;
+
+import com.jerome.common.cache.codec.CacheCodec;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在 CacheI 上加一层自动加载：get(key, loader, ttl) 缓存没有时调用loader加载并写回缓存
+ * <p>
+ * 同一个JVM里同一个key同时未命中时只有一个线程调用loader，其他线程等待同一个 future(single-flight)；
+ * 提前刷新时已经有线程在加载就直接返回旧值，不等待。
+ * <p>
+ * 跨节点的击穿用提前刷新(XFetch)避免：写入时记录过期时间和loader耗时，读到时按
+ * now - delta * beta * ln(random) >= expireAt 判断是否提前刷新，越接近过期、加载越慢，提前刷新的概率越大，
+ * 各节点大概率只有一个请求在过期前重新加载，其他请求继续使用旧值。beta 为0时不提前刷新。
+ * <p>
+ * 缓存中的值带有8字节过期时间和4字节加载耗时的头，只能通过 LoadingCache 读取；没有这个头的旧数据当作未命中重新加载。
+ *
+ * @param <T> value类型
+ * @author jerome
+ */
+public class LoadingCache<T> {
+
+    /**
+     * 默认的提前刷新系数，大于1更积极，小于1更保守
+     */
+    public static final double DEFAULT_BETA = 1.0;
+
+    private static final short MAGIC = (short) 0xCAFE;
+
+    private static final int HEADER_LENGTH = 2 + 8 + 4;
+
+    private final CacheI cache;
+
+    private final CacheCodec<Entry<T>> entryCodec;
+
+    private final ConcurrentMap<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<String, CompletableFuture<T>>();
+
+    private volatile double beta = DEFAULT_BETA;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+
+    public LoadingCache(CacheI cache, CacheCodec<T> codec) {
+        this.cache = cache;
+        this.entryCodec = new EntryCodec<T>(codec);
+    }
+
+    public void setBeta(double beta) {
+        if (beta < 0) {
+            throw new IllegalArgumentException("beta must not be negative: " + beta);
+        }
+        this.beta = beta;
+    }
+
+    /**
+     * 取缓存，没有时调用loader加载并写入缓存
+     *
+     * @param key
+     * @param loader        返回null时不写缓存
+     * @param secondsToLive 生存时间，单位秒，0表示不过期(也不会提前刷新)
+     * @return loader失败时：有旧值返回旧值，没有返回null
+     */
+    public T get(String key, Callable<T> loader, int secondsToLive) {
+        Entry<T> entry = cache.get(key, entryCodec);
+        if (entry != null) {
+            if (!shouldRefreshEarly(entry)) {
+                hits.increment();
+                return entry.value;
+            }
+            earlyRefreshes.increment();
+            T value = load(key, loader, secondsToLive, entry.value);
+            return value == null ? entry.value : value;
+        }
+        misses.increment();
+        return load(key, loader, secondsToLive, null);
+    }
+
+    /**
+     * 删除缓存，下次 get 会重新加载
+     *
+     * @param key
+     * @return
+     */
+    public boolean invalidate(String key) {
+        return cache.delete(key);
+    }
+
+    boolean shouldRefreshEarly(Entry<T> entry) {
+        double b = beta;
+        if (entry.expireAt == 0 || b == 0) {
+            return false;
+        }
+        // 1 - nextDouble() 在 (0, 1] 之间，避免 ln(0)
+        double gap = entry.deltaMillis * b * -Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= entry.expireAt;
+    }
+
+    /**
+     * @param stale 提前刷新时手里的旧值，其他线程已经在加载时直接返回它，不等待；真正未命中时为null
+     */
+    private T load(String key, Callable<T> loader, int secondsToLive, T stale) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            return stale != null ? stale : await(existing);
+        }
+        try {
+            loads.increment();
+            long start = System.currentTimeMillis();
+            T value = loader.call();
+            long now = System.currentTimeMillis();
+            if (value != null) {
+                long expireAt = secondsToLive == 0 ? 0 : now + secondsToLive * 1000L;
+                cache.put(key, new Entry<T>(value, expireAt, (int) Math.min(Integer.MAX_VALUE, now - start)),
+                        secondsToLive, entryCodec);
+            }
+            future.complete(value);
+        } catch (Exception e) {
+            e.printStackTrace();
+            loadFailures.increment();
+            future.complete(null);
+        } finally {
+            inFlight.remove(key, future);
+        }
+        return await(future);
+    }
+
+    private T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 实际调用loader的次数
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * 其他线程已经在加载、没有自己调用loader的次数(未命中时等待结果，提前刷新时返回旧值)
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getEarlyRefreshes() {
+        return earlyRefreshes.sum();
+    }
+
+    /**
+     * 缓存中的值和它的元数据
+     */
+    static final class Entry<T> {
+
+        final T value;
+
+        /**
+         * 过期的时间点，毫秒，0表示不过期
+         */
+        final long expireAt;
+
+        /**
+         * loader的耗时，毫秒
+         */
+        final int deltaMillis;
+
+        Entry(T value, long expireAt, int deltaMillis) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.deltaMillis = deltaMillis;
+        }
+    }
+
+    /**
+     * magic(2) + expireAt(8) + deltaMillis(4) + value
+     */
+    private static final class EntryCodec<T> implements CacheCodec<Entry<T>> {
+
+        private final CacheCodec<T> codec;
+
+        EntryCodec(CacheCodec<T> codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public byte[] encode(Entry<T> entry) {
+            byte[] value = codec.encode(entry.value);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + value.length);
+            buffer.putShort(MAGIC).putLong(entry.expireAt).putInt(entry.deltaMillis).put(value);
+            return buffer.array();
+        }
+
+        @Override
+        public Entry<T> decode(byte[] bytes) {
+            if (bytes.length < HEADER_LENGTH) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.getShort() != MAGIC) {
+                return null;
+            }
+            long expireAt = buffer.getLong();
+            int deltaMillis = buffer.getInt();
+            byte[] value = new byte[buffer.remaining()];
+            buffer.get(value);
+            return new Entry<T>(codec.decode(value), expireAt, deltaMillis);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.jerome.common.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的有界缓存，按容量(LRU)和存活时间淘汰
+ * 内部分成多个段，每个段是一个访问顺序的LinkedHashMap，各自加锁，减少多线程竞争
+ * 每个段另有一组失效版本号(按key的hash分组)，remove/clear 时增加，
+ * 调用方从远端读取前先取 generation(key)，读完用 putIfGeneration 回填，期间key被删除过就不回填，避免把旧值放回本地
+ *
+ * @author jerome
+ */
+public class LocalCache {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * 每个段的失效版本号个数，不同key落在同一个版本号上时只会多放弃一次回填
+     */
+    private static final int GENERATIONS_PER_SEGMENT = 64;
+
+    private final Segment[] segments;
+
+    private final int segmentShift;
+
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize   最多缓存的key个数
+     * @param ttlMillis 每个key在本地的最长存活时间，单位毫秒
+     */
+    public LocalCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param maxSize     最多缓存的key个数
+     * @param ttlMillis   每个key在本地的最长存活时间，单位毫秒
+     * @param segmentHint 分段数，会向上取整为2的幂
+     */
+    public LocalCache(int maxSize, long ttlMillis, int segmentHint) {
+        if (maxSize <= 0 || ttlMillis <= 0 || segmentHint <= 0) {
+            throw new IllegalArgumentException("maxSize, ttlMillis and segmentHint must be positive");
+        }
+        int count = 1;
+        while (count < segmentHint && count < maxSize) {
+            count <<= 1;
+        }
+        this.segments = new Segment[count];
+        int perSegment = (maxSize + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.segmentShift = Integer.numberOfTrailingZeros(count);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 获取本地缓存的值，过期的值会被移除
+     *
+     * @param key
+     * @return 不存在或已过期返回null
+     */
+    public Object get(String key) {
+        Segment segment = segmentFor(key);
+        Object value = null;
+        synchronized (segment) {
+            Node entry = segment.get(key);
+            if (entry != null) {
+                if (entry.expireAt > System.currentTimeMillis()) {
+                    value = entry.value;
+                } else {
+                    segment.remove(key);
+                }
+            }
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public void put(String key, Object value) {
+        put(key, value, ttlMillis);
+    }
+
+    /**
+     * @param key
+     * @param value     null不缓存
+     * @param ttlMillis 本次存活时间，不会超过构造时指定的ttl
+     */
+    public void put(String key, Object value, long ttlMillis) {
+        if (value == null) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + Math.min(ttlMillis, this.ttlMillis);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Node(value, expireAt));
+        }
+    }
+
+    /**
+     * key当前的失效版本号，从远端读取前调用
+     *
+     * @param key
+     * @return
+     */
+    public long generation(String key) {
+        int h = hash(key);
+        Segment segment = segments[h & (segments.length - 1)];
+        synchronized (segment) {
+            return segment.generations[generationIndex(h)];
+        }
+    }
+
+    /**
+     * 失效版本号没有变化时才放入，变化说明读取期间key被删除过，读到的可能是旧值
+     *
+     * @param key
+     * @param value      null不缓存
+     * @param generation 读取前 generation(key) 的返回值
+     * @return 是否放入
+     */
+    public boolean putIfGeneration(String key, Object value, long generation) {
+        if (value == null) {
+            return false;
+        }
+        long expireAt = System.currentTimeMillis() + ttlMillis;
+        int h = hash(key);
+        Segment segment = segments[h & (segments.length - 1)];
+        synchronized (segment) {
+            if (segment.generations[generationIndex(h)] != generation) {
+                return false;
+            }
+            segment.put(key, new Node(value, expireAt));
+            return true;
+        }
+    }
+
+    public void remove(String key) {
+        int h = hash(key);
+        Segment segment = segments[h & (segments.length - 1)];
+        synchronized (segment) {
+            segment.remove(key);
+            segment.generations[generationIndex(h)]++;
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                for (int i = 0; i < segment.generations.length; i++) {
+                    segment.generations[i]++;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[hash(key) & (segments.length - 1)];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 用选段之外的hash位，同一个版本号上的key都在同一个段里，由段的锁保护
+     */
+    private int generationIndex(int h) {
+        return (h >>> segmentShift) & (GENERATIONS_PER_SEGMENT - 1);
+    }
+
+    private static final class Node {
+        final Object value;
+        final long expireAt;
+
+        Node(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<String, Node> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        final long[] generations = new long[GENERATIONS_PER_SEGMENT];
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.jerome.common.cache;
+
+import com.jerome.common.util.LatencyMetrics;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带统计的Jedis连接池
+ * <p>
+ * 记录每次借连接的等待时间(直方图)和借连接失败次数，getStats() 返回当前活跃、空闲、等待线程数。
+ * 可以设置熔断器，连接出错率过高时借连接直接失败，不再等待超时。
+ * 开启自适应模式后，定时根据上一个周期的平均等待时间调整 maxTotal：
+ * 等待时间超过目标、有线程在等待或者借连接失败时扩大，等待时间很低且活跃连接不到一半时缩小，始终在 [minTotal, maxTotal] 之间。
+ *
+ * @author jerome
+ */
+public class MonitoredJedisPool extends JedisPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MonitoredJedisPool.class.getName());
+
+    private static final String BORROW_OP = "borrow";
+
+    private final LatencyMetrics metrics = new LatencyMetrics("redis-pool");
+
+    /**
+     * 当前调整周期内的借连接次数、等待时间和失败次数
+     */
+    private final LongAdder windowBorrows = new LongAdder();
+    private final LongAdder windowWaitNanos = new LongAdder();
+    private final LongAdder windowFailures = new LongAdder();
+
+    private volatile ScheduledExecutorService adaptiveExecutor;
+
+    private volatile CircuitBreaker circuitBreaker;
+
+    /**
+     * 开启熔断时记录每个借出连接的借出时间，用来计算调用耗时
+     */
+    private final Map<Jedis, Long> borrowedAt = new ConcurrentHashMap<Jedis, Long>();
+
+    public MonitoredJedisPool(GenericObjectPoolConfig poolConfig, String host, int port, int timeout,
+                              String password, int database) {
+        super(poolConfig, host, port, timeout, password, database);
+    }
+
+    @Override
+    public Jedis getResource() {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw new CircuitBreakerOpenException(breaker.getName());
+        }
+        long start = metrics.start();
+        boolean ok = false;
+        try {
+            Jedis jedis = super.getResource();
+            ok = true;
+            if (breaker != null) {
+                borrowedAt.put(jedis, start);
+            }
+            return jedis;
+        } finally {
+            metrics.record(BORROW_OP, null, start, ok);
+            windowBorrows.increment();
+            windowWaitNanos.add(System.nanoTime() - start);
+            if (!ok) {
+                windowFailures.increment();
+                if (breaker != null) {
+                    breaker.onFailure(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    /**
+     * 正常归还，连接从借出到归还期间没有出现连接错误，计为一次成功
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public void returnResource(Jedis resource) {
+        Long start = resource == null ? null : borrowedAt.remove(resource);
+        super.returnResource(resource);
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && start != null) {
+            breaker.onSuccess(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 连接出错(超时、断开)后归还，计为一次失败
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public void returnBrokenResource(Jedis resource) {
+        Long start = resource == null ? null : borrowedAt.remove(resource);
+        super.returnBrokenResource(resource);
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && start != null) {
+            breaker.onFailure(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 设置熔断器：借连接失败和连接出错计为失败，熔断时借连接立即抛出 CircuitBreakerOpenException
+     * 一次借出到归还算一次调用，阻塞命令(blpop)和订阅会占用连接很久，开启慢调用统计时要注意
+     *
+     * @param circuitBreaker null表示关闭熔断
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        borrowedAt.clear();
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int getMaxTotal() {
+        return internalPool.getMaxTotal();
+    }
+
+    /**
+     * 运行时修改最大连接数，缩小时多出来的连接在归还时销毁
+     *
+     * @param maxTotal
+     */
+    public void setMaxTotal(int maxTotal) {
+        internalPool.setMaxTotal(maxTotal);
+        if (internalPool.getMaxIdle() > maxTotal) {
+            internalPool.setMaxIdle(maxTotal);
+        }
+    }
+
+    /**
+     * 开启自适应最大连接数
+     *
+     * @param minTotal         最小的 maxTotal
+     * @param maxTotal         最大的 maxTotal
+     * @param targetWaitMicros 借连接的目标平均等待时间
+     * @param intervalMillis   调整周期
+     */
+    public synchronized void enableAdaptive(final int minTotal, final int maxTotal, final long targetWaitMicros,
+                                            long intervalMillis) {
+        if (minTotal <= 0 || maxTotal < minTotal) {
+            throw new IllegalArgumentException("invalid bounds: [" + minTotal + ", " + maxTotal + "]");
+        }
+        disableAdaptive();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jedis-pool-adaptive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> adjust(minTotal, maxTotal, targetWaitMicros),
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        adaptiveExecutor = executor;
+    }
+
+    public synchronized void disableAdaptive() {
+        if (adaptiveExecutor != null) {
+            adaptiveExecutor.shutdownNow();
+            adaptiveExecutor = null;
+        }
+    }
+
+    private void adjust(int minTotal, int maxTotal, long targetWaitMicros) {
+        try {
+            long borrows = windowBorrows.sumThenReset();
+            long waitNanos = windowWaitNanos.sumThenReset();
+            long failures = windowFailures.sumThenReset();
+            long avgWaitMicros = borrows == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos / borrows);
+            int current = getMaxTotal();
+            int next = nextMaxTotal(current, minTotal, maxTotal, avgWaitMicros, failures, getNumWaiters(),
+                    getNumActive(), targetWaitMicros);
+            if (next != current) {
+                LOG.info("adjust jedis pool maxTotal {} -> {}, avgWait={}us failures={} active={}",
+                        current, next, avgWaitMicros, failures, getNumActive());
+                setMaxTotal(next);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 计算下一个周期的最大连接数，扩大时每次加25%，缩小时每次减1，避免抖动
+     */
+    static int nextMaxTotal(int current, int minTotal, int maxTotal, long avgWaitMicros, long failures,
+                            int waiters, int active, long targetWaitMicros) {
+        int next = current;
+        if (failures > 0 || waiters > 0 || avgWaitMicros > targetWaitMicros) {
+            next = current + Math.max(1, current / 4);
+        } else if (avgWaitMicros < targetWaitMicros / 4 && active < current / 2) {
+            next = current - 1;
+        }
+        return Math.max(minTotal, Math.min(maxTotal, next));
+    }
+
+    /**
+     * 借连接的耗时统计，操作名为 borrow
+     */
+    public LatencyMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Stats getStats() {
+        LatencyMetrics.Snapshot borrow = metrics.snapshot().get(BORROW_OP);
+        return new Stats(getNumActive(), getNumIdle(), getNumWaiters(), getMaxTotal(),
+                borrow == null ? 0 : borrow.getErrors(), borrow);
+    }
+
+    @Override
+    public void close() {
+        disableAdaptive();
+        super.close();
+    }
+
+    /**
+     * 连接池状态快照
+     */
+    public static final class Stats {
+
+        private final int active;
+        private final int idle;
+        private final int waiters;
+        private final int maxTotal;
+        private final long borrowFailures;
+        private final LatencyMetrics.Snapshot borrowWait;
+
+        Stats(int active, int idle, int waiters, int maxTotal, long borrowFailures, LatencyMetrics.Snapshot borrowWait) {
+            this.active = active;
+            this.idle = idle;
+            this.waiters = waiters;
+            this.maxTotal = maxTotal;
+            this.borrowFailures = borrowFailures;
+            this.borrowWait = borrowWait;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * 正在等待连接的线程数
+         */
+        public int getWaiters() {
+            return waiters;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        /**
+         * 借连接失败(超时或建立连接失败)的次数
+         */
+        public long getBorrowFailures() {
+            return borrowFailures;
+        }
+
+        /**
+         * 借连接等待时间分布，还没借过连接时为null
+         */
+        public LatencyMetrics.Snapshot getBorrowWait() {
+            return borrowWait;
+        }
+
+        @Override
+        public String toString() {
+            return "active=" + active + " idle=" + idle + " waiters=" + waiters + " maxTotal=" + maxTotal
+                    + " borrowFailures=" + borrowFailures + " borrowWait=[" + borrowWait + "]";
+        }
+    }
+}
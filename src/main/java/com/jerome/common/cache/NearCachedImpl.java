@@ -0,0 +1,580 @@
+package com.jerome.common.cache;
+
+import com.jerome.common.cache.codec.CacheCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 两级缓存实现：进程内的 LocalCache(L1) + redis(L2)
+ * 只有 get/put 的字符串值会进入L1，list/set/zset/hash 的操作直接走L2
+ * 本实例修改key后通过redis pub/sub 广播失效消息，其他节点收到后删除自己L1里的key
+ * 订阅线程会一直占用连接池中的一个连接
+ * 失效消息格式为 实例id|长度:key长度:key...，key里可以有任意字符
+ * 从L2读到的值只有在读取期间key没有被失效过时才放回L1(见 LocalCache.putIfGeneration)
+ * put 只失效L1不写入，并发写同一个key时L1不会留下比L2旧的值，下一次 get 再从L2加载
+ *
+ * @author jerome
+ */
+public class NearCachedImpl implements CacheI {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NearCachedImpl.class.getName());
+
+    /**
+     * 默认的失效消息频道
+     */
+    public static final String DEFAULT_INVALIDATE_CHANNEL = "near_cache_invalidate";
+
+    /**
+     * 订阅断开后重连的间隔，单位毫秒
+     */
+    private static final long RESUBSCRIBE_INTERVAL = 1000;
+
+    private static final char INSTANCE_SEPARATOR = '|';
+
+    private static final char LENGTH_SEPARATOR = ':';
+
+    private final CacheI remote;
+
+    private final LocalCache local;
+
+    private final String channel;
+
+    /**
+     * 用来忽略自己发出的失效消息
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final LongAdder remoteHits = new LongAdder();
+
+    private final LongAdder remoteMisses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private final InvalidationListener listener = new InvalidationListener();
+
+    private volatile boolean running = true;
+
+    private final Thread subscriber;
+
+    /**
+     * @param remote    L2缓存，一般是 RedisCachedImpl
+     * @param maxSize   L1最多缓存的key个数
+     * @param ttlMillis L1中key的最长存活时间，单位毫秒
+     * @param channel   失效消息频道，同一个频道的实例之间互相失效
+     */
+    public NearCachedImpl(CacheI remote, int maxSize, long ttlMillis, String channel) {
+        this.remote = remote;
+        this.local = new LocalCache(maxSize, ttlMillis);
+        this.channel = channel;
+        this.subscriber = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                subscribe();
+            }
+        }, "near-cache-invalidation");
+        this.subscriber.setDaemon(true);
+        this.subscriber.start();
+    }
+
+    /**
+     * 阻塞订阅失效频道，连接断开期间可能错过失效消息，所以每次重新订阅前清空L1
+     * L2是熔断中的 CircuitBreakerCachedImpl 时其他实例也写不进redis，保留L1作为降级数据，等重新订阅成功时再清空
+     */
+    private void subscribe() {
+        while (running) {
+            remote.psubscribe(listener, channel);
+            if (!running) {
+                break;
+            }
+            if (remote instanceof CircuitBreakerCachedImpl && ((CircuitBreakerCachedImpl) remote).getBreaker().isOpen()) {
+                listener.clearOnSubscribe = true;
+            } else {
+                LOG.warn("near cache subscription on " + channel + " lost, clear local cache and resubscribe");
+                local.clear();
+            }
+            try {
+                Thread.sleep(RESUBSCRIBE_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 停止订阅失效消息并清空L1
+     */
+    public void shutdown() {
+        running = false;
+        if (listener.isSubscribed()) {
+            listener.punsubscribe();
+        }
+        subscriber.interrupt();
+        local.clear();
+    }
+
+    /**
+     * 各级缓存的命中统计
+     *
+     * @return
+     */
+    public Stats getStats() {
+        return new Stats(local.getHitCount(), local.getMissCount(), local.getEvictionCount(), local.size(),
+                remoteHits.sum(), remoteMisses.sum(), invalidations.sum());
+    }
+
+    private void invalidate(String key) {
+        local.remove(key);
+        StringBuilder message = new StringBuilder(instanceId).append(INSTANCE_SEPARATOR);
+        appendKey(message, key);
+        remote.publish(channel, message.toString());
+    }
+
+    private void invalidate(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(instanceId).append(INSTANCE_SEPARATOR);
+        for (String key : keys) {
+            local.remove(key);
+            appendKey(message, key);
+        }
+        remote.publish(channel, message.toString());
+    }
+
+    private static void appendKey(StringBuilder message, String key) {
+        message.append(key.length()).append(LENGTH_SEPARATOR).append(key);
+    }
+
+    /**
+     * 解析失效消息中 from 之后的 长度:key 序列，格式不对时丢弃剩余部分
+     *
+     * @param message
+     * @param from
+     * @return
+     */
+    static List<String> parseKeys(String message, int from) {
+        List<String> keys = new ArrayList<String>();
+        int pos = from;
+        while (pos < message.length()) {
+            int colon = message.indexOf(LENGTH_SEPARATOR, pos);
+            if (colon <= pos) {
+                break;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(message.substring(pos, colon));
+            } catch (NumberFormatException e) {
+                break;
+            }
+            int end = colon + 1 + length;
+            if (length < 0 || end > message.length()) {
+                break;
+            }
+            keys.add(message.substring(colon + 1, end));
+            pos = end;
+        }
+        return keys;
+    }
+
+    @Override
+    public boolean put(String key, Object value) {
+        boolean result = remote.put(key, value);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public boolean put(String key, Object value, int secondsToLive) {
+        boolean result = remote.put(key, value, secondsToLive);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public Object get(String key) {
+        Object value = local.get(key);
+        if (value != null) {
+            return value;
+        }
+        // 读取期间其他线程或实例失效了这个key时，读到的值可能已经是旧值，不放回L1
+        long generation = local.generation(key);
+        value = remote.get(key);
+        if (value == null) {
+            remoteMisses.increment();
+        } else {
+            remoteHits.increment();
+            local.putIfGeneration(key, value, generation);
+        }
+        return value;
+    }
+
+    /**
+     * 编码后的值不进入L1，只做失效
+     */
+    @Override
+    public <T> boolean put(String key, T value, int secondsToLive, CacheCodec<T> codec) {
+        boolean result = remote.put(key, value, secondsToLive, codec);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public <T> T get(String key, CacheCodec<T> codec) {
+        return remote.get(key, codec);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        boolean result = remote.delete(key);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public long llen(String key) {
+        return remote.llen(key);
+    }
+
+    @Override
+    public long lpush(String key, String str) {
+        return remote.lpush(key, str);
+    }
+
+    @Override
+    public long rpush(String key, String str) {
+        return remote.rpush(key, str);
+    }
+
+    @Override
+    public String rpop(String key) {
+        return remote.rpop(key);
+    }
+
+    @Override
+    public String blpop(int timeout, String key) {
+        return remote.blpop(timeout, key);
+    }
+
+    @Override
+    public long publish(String channel, String message) {
+        return remote.publish(channel, message);
+    }
+
+    @Override
+    public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+        remote.psubscribe(jedisPubSub, patterns);
+    }
+
+    @Override
+    public Long incr(String key) {
+        Long result = remote.incr(key);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public Long decr(String key) {
+        Long result = remote.decr(key);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public String ltrim(String key, long start, long end) {
+        return remote.ltrim(key, start, end);
+    }
+
+    @Override
+    public Long zadd(String key, double score, String member) {
+        return remote.zadd(key, score, member);
+    }
+
+    @Override
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        return remote.zadd(key, scoreMembers);
+    }
+
+    @Override
+    public Long zrem(String key, String... members) {
+        return remote.zrem(key, members);
+    }
+
+    @Override
+    public Set<String> zrevrange(String key, long start, long end) {
+        return remote.zrevrange(key, start, end);
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(String key, double max, double min, int offset, int count) {
+        return remote.zrevrangeByScore(key, max, min, offset, count);
+    }
+
+    @Override
+    public Set<String> zrange(String key, long start, long end) {
+        return remote.zrange(key, start, end);
+    }
+
+    @Override
+    public Long zcount(String key, double min, double max) {
+        return remote.zcount(key, min, max);
+    }
+
+    @Override
+    public Long sadd(String key, String... members) {
+        return remote.sadd(key, members);
+    }
+
+    @Override
+    public Boolean sismember(String key, String member) {
+        return remote.sismember(key, member);
+    }
+
+    @Override
+    public Long srem(String key, String... members) {
+        return remote.srem(key, members);
+    }
+
+    @Override
+    public Long expire(String key, int seconds) {
+        Long result = remote.expire(key, seconds);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public Long incrBy(String key, Long integer) {
+        Long result = remote.incrBy(key, integer);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public List<String> srandmember(String key, int count) {
+        return remote.srandmember(key, count);
+    }
+
+    @Override
+    public Long hset(String key, String field, String value) {
+        return remote.hset(key, field, value);
+    }
+
+    @Override
+    public String hmset(String key, Map<String, String> hash) {
+        return remote.hmset(key, hash);
+    }
+
+    @Override
+    public String hget(String key, String field) {
+        return remote.hget(key, field);
+    }
+
+    @Override
+    public Map<String, String> hgetall(String key) {
+        return remote.hgetall(key);
+    }
+
+    @Override
+    public Long hdel(String key, String... fields) {
+        return remote.hdel(key, fields);
+    }
+
+    @Override
+    public List<Object> incrAndExpire(String key, int ttl) {
+        List<Object> result = remote.incrAndExpire(key, ttl);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public Long incrWithTtl(String key, long delta, int ttl) {
+        Long result = remote.incrWithTtl(key, delta, ttl);
+        invalidate(key);
+        return result;
+    }
+
+    /**
+     * 桶保存在hash中，L1不缓存，直接交给L2
+     */
+    @Override
+    public boolean tryAcquire(String key, long capacity, double permitsPerSecond, long permits) {
+        return remote.tryAcquire(key, capacity, permitsPerSecond, permits);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expect, String update, int secondsToLive) {
+        boolean result = remote.compareAndSet(key, expect, update, secondsToLive);
+        if (result) {
+            invalidate(key);
+        }
+        return result;
+    }
+
+    @Override
+    public Long pushCapped(String key, int maxLength, int secondsToLive, String... values) {
+        return remote.pushCapped(key, maxLength, secondsToLive, values);
+    }
+
+    /**
+     * 先从L1取，L1没有的key再批量从L2取
+     */
+    @Override
+    public List<Object> mget(List<String> keys) {
+        List<Object> values = new ArrayList<Object>(keys.size());
+        List<String> missKeys = new ArrayList<String>();
+        List<Integer> missIndexes = new ArrayList<Integer>();
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = local.get(keys.get(i));
+            values.add(value);
+            if (value == null) {
+                missKeys.add(keys.get(i));
+                missIndexes.add(i);
+            }
+        }
+        if (missKeys.isEmpty()) {
+            return values;
+        }
+        long[] generations = new long[missKeys.size()];
+        for (int i = 0; i < missKeys.size(); i++) {
+            generations[i] = local.generation(missKeys.get(i));
+        }
+        List<Object> remoteValues = remote.mget(missKeys);
+        if (remoteValues == null) {
+            return null;
+        }
+        for (int i = 0; i < missKeys.size(); i++) {
+            Object value = remoteValues.get(i);
+            if (value == null) {
+                remoteMisses.increment();
+            } else {
+                remoteHits.increment();
+                local.putIfGeneration(missKeys.get(i), value, generations[i]);
+                values.set(missIndexes.get(i), value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean mput(Map<String, ?> keyValues, int secondsToLive) {
+        boolean result = remote.mput(keyValues, secondsToLive);
+        invalidate(keyValues.keySet());
+        return result;
+    }
+
+    @Override
+    public long mdelete(List<String> keys) {
+        long result = remote.mdelete(keys);
+        invalidate(keys);
+        return result;
+    }
+
+    @Override
+    public List<String> mhget(List<String> keys, String field) {
+        return remote.mhget(keys, field);
+    }
+
+    /**
+     * 收到其他实例的失效消息后删除L1里对应的key
+     */
+    private class InvalidationListener extends JedisPubSub {
+
+        /**
+         * 断开时没有清空L1，重新订阅成功后清空
+         */
+        volatile boolean clearOnSubscribe;
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+            if (clearOnSubscribe) {
+                clearOnSubscribe = false;
+                LOG.warn("near cache resubscribed on " + channel + ", clear local cache");
+                local.clear();
+            }
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            int index = message.indexOf(INSTANCE_SEPARATOR);
+            if (index < 0 || message.startsWith(instanceId + INSTANCE_SEPARATOR)) {
+                return;
+            }
+            for (String key : parseKeys(message, index + 1)) {
+                local.remove(key);
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * 两级缓存命中统计的快照
+     */
+    public static final class Stats {
+
+        private final long localHits;
+        private final long localMisses;
+        private final long localEvictions;
+        private final int localSize;
+        private final long remoteHits;
+        private final long remoteMisses;
+        private final long invalidations;
+
+        Stats(long localHits, long localMisses, long localEvictions, int localSize,
+              long remoteHits, long remoteMisses, long invalidations) {
+            this.localHits = localHits;
+            this.localMisses = localMisses;
+            this.localEvictions = localEvictions;
+            this.localSize = localSize;
+            this.remoteHits = remoteHits;
+            this.remoteMisses = remoteMisses;
+            this.invalidations = invalidations;
+        }
+
+        public long getLocalHits() {
+            return localHits;
+        }
+
+        public long getLocalMisses() {
+            return localMisses;
+        }
+
+        public long getLocalEvictions() {
+            return localEvictions;
+        }
+
+        public int getLocalSize() {
+            return localSize;
+        }
+
+        public long getRemoteHits() {
+            return remoteHits;
+        }
+
+        public long getRemoteMisses() {
+            return remoteMisses;
+        }
+
+        /**
+         * 收到其他实例的失效消息而删除的key数
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        @Override
+        public String toString() {
+            return "localHits=" + localHits + " localMisses=" + localMisses + " localEvictions=" + localEvictions
+                    + " localSize=" + localSize + " remoteHits=" + remoteHits + " remoteMisses=" + remoteMisses
+                    + " invalidations=" + invalidations;
+        }
+    }
+}
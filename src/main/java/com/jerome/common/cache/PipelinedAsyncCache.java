@@ -0,0 +1,353 @@
+package com.jerome.common.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * AsyncCacheI 的实现：命令先进入队列，由固定数量的I/O线程取出，合并成pipeline发送
+ * <p>
+ * I/O线程每次阻塞取一个命令，再把队列里已经积累的命令一起取出(最多 maxBatchSize 个)，用一个连接的一个pipeline执行。
+ * 上一批在等redis返回时新的请求在队列中积累，并发越高每批越大，往返次数越少；没有并发时每批只有一个命令，不额外增加延迟。
+ * 队列满时直接返回失败的 future，不阻塞调用线程。
+ *
+ * @author jerome
+ */
+public class PipelinedAsyncCache implements AsyncCacheI {
+
+    public static final int DEFAULT_IO_THREADS = 2;
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+    private final Supplier<Jedis> connections;
+
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Command<?>> queue;
+
+    private final List<Thread> ioThreads = new ArrayList<Thread>();
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder commands = new LongAdder();
+
+    private volatile boolean running = true;
+
+    public PipelinedAsyncCache() {
+        this(JedisUtil::getJedisInstance, DEFAULT_IO_THREADS, DEFAULT_MAX_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param connections   每一批借一次连接，执行完 close 归还
+     * @param ioThreadCount I/O线程数，也是同时占用的最大连接数
+     * @param maxBatchSize  每个pipeline最多的命令数
+     * @param queueCapacity 等待发送的命令上限
+     */
+    public PipelinedAsyncCache(Supplier<Jedis> connections, int ioThreadCount, int maxBatchSize, int queueCapacity) {
+        if (ioThreadCount <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("ioThreadCount and maxBatchSize must be positive");
+        }
+        this.connections = connections;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<Command<?>>(queueCapacity);
+        for (int i = 0; i < ioThreadCount; i++) {
+            Thread thread = new Thread(this::ioLoop, "cache-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            ioThreads.add(thread);
+        }
+    }
+
+    /**
+     * 提交一个pipeline命令
+     *
+     * @param command 在pipeline上发出命令并返回它的 Response
+     * @return 命令执行完成的 future
+     */
+    public <R> CompletableFuture<R> submit(Function<Pipeline, Response<R>> command) {
+        CompletableFuture<R> future = new CompletableFuture<R>();
+        if (!running) {
+            future.completeExceptionally(new RejectedExecutionException("async cache is shut down"));
+            return future;
+        }
+        Command<R> pending = new Command<R>(command, future);
+        if (!queue.offer(pending)) {
+            future.completeExceptionally(new RejectedExecutionException("async cache queue is full"));
+        } else if (!running && queue.remove(pending)) {
+            // 入队时正好 shutdown，I/O线程可能已经退出，没被取走的命令直接失败
+            future.completeExceptionally(new RejectedExecutionException("async cache is shut down"));
+        }
+        return future;
+    }
+
+    private void ioLoop() {
+        List<Command<?>> batch = new ArrayList<Command<?>>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Command<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                execute(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        if (!running) {
+            rejectPending();
+        }
+    }
+
+    /**
+     * I/O线程退出后队列里剩下的命令不会再被发送，让它们的 future 失败
+     */
+    private void rejectPending() {
+        List<Command<?>> pending = new ArrayList<Command<?>>();
+        queue.drainTo(pending);
+        for (Command<?> command : pending) {
+            command.future.completeExceptionally(new RejectedExecutionException("async cache is shut down"));
+        }
+    }
+
+    private void execute(List<Command<?>> batch) {
+        batches.increment();
+        commands.add(batch.size());
+        Jedis jedis = null;
+        try {
+            jedis = connections.get();
+            if (jedis == null) {
+                throw new IllegalStateException("no redis connection available");
+            }
+            Pipeline pipeline = jedis.pipelined();
+            for (Command<?> command : batch) {
+                command.send(pipeline);
+            }
+            pipeline.sync();
+            for (Command<?> command : batch) {
+                command.complete();
+            }
+        } catch (Exception e) {
+            for (Command<?> command : batch) {
+                command.future.completeExceptionally(e);
+            }
+        } finally {
+            JedisUtil.returnResource(jedis);
+        }
+    }
+
+    /**
+     * 平均每个pipeline的命令数，越大说明合并越多
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) commands.sum() / count;
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getCommandCount() {
+        return commands.sum();
+    }
+
+    /**
+     * 等待发送的命令数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 不再接受新命令，已经提交的命令发送完后I/O线程退出
+     * 和 shutdown 同时提交的命令要么被发送，要么 future 以 RejectedExecutionException 失败，不会一直不完成
+     *
+     * @param timeoutMillis 最多等待的时间
+     * @throws InterruptedException
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread thread : ioThreads) {
+            thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> put(String key, Object value) {
+        return put(key, value, 0);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> put(String key, Object value, int secondsToLive) {
+        String str = value.toString();
+        CompletableFuture<String> flag = secondsToLive == 0
+                ? submit(pipeline -> pipeline.set(key, str))
+                : submit(pipeline -> pipeline.setex(key, secondsToLive, str));
+        return flag.thenApply("OK"::equals);
+    }
+
+    @Override
+    public CompletableFuture<String> get(String key) {
+        return submit(pipeline -> pipeline.get(key));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> mget(List<String> keys) {
+        return submit(pipeline -> pipeline.mget(keys.toArray(new String[keys.size()])));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(String key) {
+        return submit(pipeline -> pipeline.del(key)).thenApply(result -> result > 0);
+    }
+
+    @Override
+    public CompletableFuture<Long> expire(String key, int seconds) {
+        return submit(pipeline -> pipeline.expire(key, seconds));
+    }
+
+    @Override
+    public CompletableFuture<Long> incr(String key) {
+        return submit(pipeline -> pipeline.incr(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> incrBy(String key, long integer) {
+        return submit(pipeline -> pipeline.incrBy(key, integer));
+    }
+
+    @Override
+    public CompletableFuture<Long> llen(String key) {
+        return submit(pipeline -> pipeline.llen(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> lpush(String key, String str) {
+        return submit(pipeline -> pipeline.lpush(key, str));
+    }
+
+    @Override
+    public CompletableFuture<Long> rpush(String key, String str) {
+        return submit(pipeline -> pipeline.rpush(key, str));
+    }
+
+    @Override
+    public CompletableFuture<String> rpop(String key) {
+        return submit(pipeline -> pipeline.rpop(key));
+    }
+
+    @Override
+    public CompletableFuture<String> ltrim(String key, long start, long end) {
+        return submit(pipeline -> pipeline.ltrim(key, start, end));
+    }
+
+    @Override
+    public CompletableFuture<Long> zadd(String key, double score, String member) {
+        return submit(pipeline -> pipeline.zadd(key, score, member));
+    }
+
+    @Override
+    public CompletableFuture<Long> zrem(String key, String... members) {
+        return submit(pipeline -> pipeline.zrem(key, members));
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> zrange(String key, long start, long end) {
+        return submit(pipeline -> pipeline.zrange(key, start, end));
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> zrevrange(String key, long start, long end) {
+        return submit(pipeline -> pipeline.zrevrange(key, start, end));
+    }
+
+    @Override
+    public CompletableFuture<Long> zcount(String key, double min, double max) {
+        return submit(pipeline -> pipeline.zcount(key, min, max));
+    }
+
+    @Override
+    public CompletableFuture<Long> sadd(String key, String... members) {
+        return submit(pipeline -> pipeline.sadd(key, members));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sismember(String key, String member) {
+        return submit(pipeline -> pipeline.sismember(key, member));
+    }
+
+    @Override
+    public CompletableFuture<Long> srem(String key, String... members) {
+        return submit(pipeline -> pipeline.srem(key, members));
+    }
+
+    @Override
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        return submit(pipeline -> pipeline.hset(key, field, value));
+    }
+
+    @Override
+    public CompletableFuture<String> hget(String key, String field) {
+        return submit(pipeline -> pipeline.hget(key, field));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> hgetall(String key) {
+        return submit(pipeline -> pipeline.hgetAll(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> hdel(String key, String... fields) {
+        return submit(pipeline -> pipeline.hdel(key, fields));
+    }
+
+    /**
+     * 队列中的一个命令：发送时拿到 Response，pipeline sync 之后取结果完成 future
+     */
+    private static final class Command<R> {
+
+        private final Function<Pipeline, Response<R>> command;
+
+        private final CompletableFuture<R> future;
+
+        private Response<R> response;
+
+        Command(Function<Pipeline, Response<R>> command, CompletableFuture<R> future) {
+            this.command = command;
+            this.future = future;
+        }
+
+        void send(Pipeline pipeline) {
+            response = command.apply(pipeline);
+        }
+
+        void complete() {
+            try {
+                future.complete(response.get());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -1,28 +1,47 @@
 package com.jerome.common.cache;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.jerome.common.cache.codec.CacheCodec;
+import com.jerome.common.util.LatencyMetrics;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
-import redis.clients.jedis.Transaction;
+import redis.clients.util.SafeEncoder;
 
 
 /**
  * RedisCached 实现类
+ * 每个操作的次数、失败数和耗时记录在 LatencyMetrics 中，通过 getMetrics() 查看
+ * 拿不到连接或命令抛出异常记为失败，命令正常返回空值(如key不存在)不算失败
+ * 阻塞式的 blpop、psubscribe 不做统计
  *
  */
 public final class RedisCachedImpl implements CacheI {
 
     protected RedisUtil redisCached = RedisUtil.getInstance();
-    private static final Logger LOG = LoggerFactory.getLogger(RedisCachedImpl.class.getName());
+
+    private final LatencyMetrics metrics = new LatencyMetrics("redis");
+
+    /**
+     * 借连接的方式，拿不到连接时返回null
+     */
+    private final Supplier<Jedis> connections;
 
     private static RedisCachedImpl redisCachedImpl = null;
 
     public RedisCachedImpl() {
+        this.connections = () -> redisCached.getJedis();
+    }
+
+    RedisCachedImpl(Supplier<Jedis> connections) {
+        this.connections = connections;
     }
 
     public static RedisCachedImpl getInstance() {
@@ -32,148 +51,137 @@ public final class RedisCachedImpl implements CacheI {
         return redisCachedImpl;
     }
 
+    /**
+     * 操作统计，可以设置抽样率和慢日志阈值
+     *
+     * @return
+     */
+    public LatencyMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public boolean put(String key, Object value) {
-        LOG.info("put key=" + key + " start");
-        String flag = redisCached.set(key, value.toString());
-        LOG.info("put key=" + key + " end flag=" + flag);
-        if (flag.equals("OK")) {
-            return true;
-        } else {
-            return false;
-        }
+        String flag = execute("put", key, jedis -> jedis.set(key, value.toString()));
+        return "OK".equals(flag);
     }
 
     @Override
     public boolean put(String key, Object value, int secondsToLive) {
-        LOG.info("put key=" + key + " start");
-        String flag = "";
+        String str = value.toString();
+        String flag;
         if (secondsToLive == 0) {
-            flag = redisCached.set(key, value.toString());
+            flag = execute("put", key, jedis -> jedis.set(key, str));
         } else {
-            flag = redisCached.setex(key, value.toString(), secondsToLive);
-        }
-        LOG.info("put key=" + key + " end flag=" + flag);
-        if (flag.equals("OK")) {
-            return true;
-        } else {
-            return false;
+            flag = execute("put", key, jedis -> jedis.setex(key, secondsToLive, str));
         }
+        return "OK".equals(flag);
     }
 
     @Override
     public Object get(String key) {
-        LOG.info("get key=" + key + " start");
-        Object obj = redisCached.get(key);
-        LOG.info("get key=" + key + " end");
-        return obj;
+        return execute("get", key, jedis -> jedis.get(key));
     }
 
+    /**
+     * 编码、解码在统计之外，编码器抛出的异常直接抛给调用方
+     */
     @Override
-    public boolean delete(String key) {
-        LOG.info("delete key=" + key + " start");
-        long result = redisCached.del(key);
-        LOG.info("delete key=" + key + " end result=" + result);
-        if (result > 0) {
-            return true;
+    public <T> boolean put(String key, T value, int secondsToLive, CacheCodec<T> codec) {
+        byte[] bytes = codec.encode(value);
+        byte[] rawKey = SafeEncoder.encode(key);
+        String flag;
+        if (secondsToLive == 0) {
+            flag = execute("putBytes", key, jedis -> jedis.set(rawKey, bytes));
         } else {
-            return false;
+            flag = execute("putBytes", key, jedis -> jedis.setex(rawKey, secondsToLive, bytes));
         }
+        return "OK".equals(flag);
+    }
+
+    @Override
+    public <T> T get(String key, CacheCodec<T> codec) {
+        byte[] bytes = execute("getBytes", key, jedis -> jedis.get(SafeEncoder.encode(key)));
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        Long result = execute("delete", key, jedis -> jedis.del(key));
+        return result != null && result > 0;
     }
 
     @Override
     public long lpush(String key, String str) {
-        LOG.info("lpush key=" + key + " start");
-        long result = redisCached.lpush(key, str);
-        LOG.info("lpush key=" + key + " end result=" + result);
-        return result;
+        Long result = execute("lpush", key, jedis -> jedis.lpush(key, str));
+        return result == null ? 0L : result;
     }
 
     @Override
     public String rpop(String key) {
-        LOG.info("rpop key=" + key + " start");
-        String result = redisCached.rpop(key);
-        LOG.info("rpop key=" + key + " end result=" + result);
-        return result;
+        return execute("rpop", key, jedis -> jedis.rpop(key));
     }
 
     @Override
     public long publish(String channel, String message) {
-        LOG.info("publish channel=" + channel + " start");
-        long result = redisCached.publish(channel, message);
-        LOG.info("publish channel=" + channel + " end result=" + result);
-        return result;
+        Long result = execute("publish", channel, jedis -> jedis.publish(channel, message));
+        return result == null ? 0L : result;
     }
 
     @Override
     public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
-        LOG.info("psubscribe patterns=" + patterns + " start");
         redisCached.psubscribe(jedisPubSub, patterns);
-        LOG.info("psubscribe patterns=" + patterns + " end");
     }
 
     @Override
     public Long incr(String key) {
-        LOG.info("incr key=" + key + " start");
-        Long result = redisCached.incr(key);
-        LOG.info("incr key=" + key + " end result=" + result);
-        return result;
+        return execute("incr", key, jedis -> jedis.incr(key));
     }
 
     @Override
     public Long decr(String key) {
-        LOG.info("decr key=" + key + " start");
-        Long result = redisCached.decr(key);
-        LOG.info("decr key=" + key + " end result=" + result);
-        return result;
+        return execute("decr", key, jedis -> jedis.decr(key));
     }
 
     @Override
     public long rpush(String key, String str) {
-        LOG.info("lpush key=" + key + " start");
-        long result = redisCached.rpush(key, str);
-        LOG.info("lpush key=" + key + " end result=" + result);
-        return result;
+        Long result = execute("rpush", key, jedis -> jedis.rpush(key, str));
+        return result == null ? 0L : result;
     }
 
     @Override
     public String blpop(int timeout, String key) {
-        LOG.info("blpop key=" + key + " start");
-        String result = redisCached.blpop(timeout, key);
-        LOG.info("blpop key=" + key + " end result=" + result);
-        return result;
+        return redisCached.blpop(timeout, key);
     }
 
     @Override
     public String ltrim(String key, long start, long end) {
-        String result = redisCached.ltrim(key, start, end);
-        LOG.info("ltrim key=" + key + " result=" + result);
-        return result;
+        return execute("ltrim", key, jedis -> jedis.ltrim(key, start, end));
     }
 
     @Override
     public Long zadd(String key, double score, String member) {
-        return redisCached.zadd(key, score, member);
+        return execute("zadd", key, jedis -> jedis.zadd(key, score, member));
     }
 
     @Override
     public Long zadd(String key, Map<String, Double> scoreMembers) {
-        return redisCached.zadd(key, scoreMembers);
+        return execute("zadd", key, jedis -> jedis.zadd(key, scoreMembers));
     }
 
     @Override
     public Long zrem(String key, String... members) {
-        return redisCached.zrem(key, members);
+        return execute("zrem", key, jedis -> jedis.zrem(key, members));
     }
 
     @Override
     public Set<String> zrevrange(String key, long start, long end) {
-        return redisCached.zrevrange(key, start, end);
+        return execute("zrevrange", key, jedis -> jedis.zrevrange(key, start, end));
     }
 
     @Override
     public Set<String> zrange(String key, long start, long end) {
-        return redisCached.zrange(key, start, end);
+        return execute("zrange", key, jedis -> jedis.zrange(key, start, end));
     }
 
     /**
@@ -185,7 +193,7 @@ public final class RedisCachedImpl implements CacheI {
      */
     @Override
     public Long sadd(String key, String... members) {
-        return redisCached.sadd(key, members);
+        return execute("sadd", key, jedis -> jedis.sadd(key, members));
     }
 
     /**
@@ -197,7 +205,7 @@ public final class RedisCachedImpl implements CacheI {
      */
     @Override
     public Boolean sismember(String key, String member) {
-        return redisCached.sismember(key, member);
+        return execute("sismember", key, jedis -> jedis.sismember(key, member));
     }
 
     /**
@@ -209,7 +217,7 @@ public final class RedisCachedImpl implements CacheI {
      */
     @Override
     public Long srem(String key, String... members) {
-        return redisCached.srem(key, members);
+        return execute("srem", key, jedis -> jedis.srem(key, members));
     }
 
     /**
@@ -217,7 +225,7 @@ public final class RedisCachedImpl implements CacheI {
      */
     @Override
     public Long expire(String key, int seconds) {
-        return redisCached.expire(key, seconds);
+        return execute("expire", key, jedis -> jedis.expire(key, seconds));
     }
 
     /**
@@ -225,7 +233,7 @@ public final class RedisCachedImpl implements CacheI {
      */
     @Override
     public Long incrBy(String key, Long integer) {
-        return redisCached.incrBy(key, integer);
+        return execute("incrBy", key, jedis -> jedis.incrBy(key, integer));
     }
 
     /**
@@ -233,32 +241,32 @@ public final class RedisCachedImpl implements CacheI {
      */
     @Override
     public List<String> srandmember(String key, int count) {
-        return redisCached.srandmember(key, count);
+        return execute("srandmember", key, jedis -> jedis.srandmember(key, count));
     }
 
     @Override
     public Long hset(String key, String field, String value) {
-        return redisCached.hset(key, field, value);
+        return execute("hset", key, jedis -> jedis.hset(key, field, value));
     }
 
     @Override
     public String hmset(String key, Map<String, String> hash) {
-        return redisCached.hmset(key, hash);
+        return execute("hmset", key, jedis -> jedis.hmset(key, hash));
     }
 
     @Override
     public String hget(String key, String field) {
-        return redisCached.hget(key, field);
+        return execute("hget", key, jedis -> jedis.hget(key, field));
     }
 
     @Override
     public Map<String, String> hgetall(String key) {
-        return redisCached.hgetall(key);
+        return execute("hgetall", key, jedis -> jedis.hgetAll(key));
     }
 
     @Override
     public Long hdel(String key, String... fields) {
-        return redisCached.hdel(key, fields);
+        return execute("hdel", key, jedis -> jedis.hdel(key, fields));
     }
 
     /**
@@ -281,40 +289,150 @@ public final class RedisCachedImpl implements CacheI {
 
     @Override
     public Long zcount(String key, double min, double max) {
-        return redisCached.zcount(key, min, max);
+        return execute("zcount", key, jedis -> jedis.zcount(key, min, max));
     }
 
     @Override
     public Set<String> zrevrangeByScore(String key, double max, double min,
                                         int offset, int count) {
-        return redisCached.zrevrangeByScore(key, max, min, offset, count);
+        return execute("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
     }
 
     @Override
     public long llen(String key) {
-        return redisCached.llen(key);
+        Long result = execute("llen", key, jedis -> jedis.llen(key));
+        return result == null ? 0L : result;
     }
 
     @Override
     public List<Object> incrAndExpire(String key, int ttl) {
-        RedisCachedImpl cache = new RedisCachedImpl();
-        Jedis jedis = cache.getJedis();
-        List<Object> exec = null;
+        Long value = execute("incrAndExpire", key, jedis -> CacheScripts.incrWithTtl(jedis, key, 1, ttl));
+        return value == null ? null : Arrays.<Object>asList(value, 1L);
+    }
+
+    @Override
+    public Long incrWithTtl(String key, long delta, int ttl) {
+        return execute("incrWithTtl", key, jedis -> CacheScripts.incrWithTtl(jedis, key, delta, ttl));
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long capacity, double permitsPerSecond, long permits) {
+        Boolean ok = execute("tryAcquire", key, jedis -> CacheScripts.tryAcquire(jedis, key, capacity, permitsPerSecond, permits));
+        return ok != null && ok;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expect, String update, int secondsToLive) {
+        Boolean ok = execute("compareAndSet", key, jedis -> CacheScripts.compareAndSet(jedis, key, expect, update, secondsToLive));
+        return ok != null && ok;
+    }
+
+    @Override
+    public Long pushCapped(String key, int maxLength, int secondsToLive, String... values) {
+        return execute("pushCapped", key, jedis -> CacheScripts.pushCapped(jedis, key, maxLength, secondsToLive, values));
+    }
+
+    /**
+     * 借一个连接执行命令并记录统计
+     * 拿不到连接(熔断中或连接池不可用)或命令抛出异常时记为失败并返回null，
+     * 命令正常返回null(如key不存在)记为成功
+     */
+    private <R> R execute(String op, String key, Function<Jedis, R> command) {
+        long start = metrics.start();
+        Jedis jedis = null;
+        boolean ok = false;
+        R result = null;
         try {
-            String watch = jedis.watch(key);
-            LOG.info("key="+ key + " watch="+ watch);
-            Transaction multi = jedis.multi();
-            multi.incr(key);
-            multi.expire(key, ttl);
-            exec = multi.exec();
-            LOG.info("key="+ key + " exec="+ exec);
-            String unwatch = jedis.unwatch();
-            LOG.info("key="+ key + " unwatch="+ unwatch);
+            jedis = connections.get();
+            if (jedis != null) {
+                result = command.apply(jedis);
+                ok = true;
+            }
         } catch (Exception e) {
             e.printStackTrace();
-        } finally{
-            cache.returnJedis(jedis);
+        } finally {
+            returnJedis(jedis);
+            metrics.record(op, key, start, ok);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Object> mget(List<String> keys) {
+        List<Object> responses = execute("mget", null,
+                jedis -> RedisUtil.pipelined(jedis, keys, (pipeline, key) -> pipeline.get(key), redisCached.getPipelineBatchSize()));
+        if (responses == null) {
+            return null;
+        }
+        List<Object> values = new ArrayList<Object>(responses.size());
+        for (Object response : responses) {
+            values.add(response instanceof String ? response : null);
+        }
+        return values;
+    }
+
+    @Override
+    public boolean mput(Map<String, ?> keyValues, int secondsToLive) {
+        Map<String, String> values = toStringValues(keyValues);
+        List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>(values.entrySet());
+        List<Object> responses = execute("mput", null, jedis -> RedisUtil.pipelined(jedis, entries, (pipeline, entry) -> {
+            if (secondsToLive == 0) {
+                pipeline.set(entry.getKey(), entry.getValue());
+            } else {
+                pipeline.setex(entry.getKey(), secondsToLive, entry.getValue());
+            }
+        }, redisCached.getPipelineBatchSize()));
+        if (responses == null) {
+            return false;
+        }
+        for (Object response : responses) {
+            if (!"OK".equals(response)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * mput 的值转成字符串，有null值时整批拒绝，不写入任何key
+     */
+    static Map<String, String> toStringValues(Map<String, ?> keyValues) {
+        Map<String, String> values = new LinkedHashMap<String, String>(keyValues.size());
+        for (Map.Entry<String, ?> entry : keyValues.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException("mput value must not be null, key: " + entry.getKey());
+            }
+            values.put(entry.getKey(), entry.getValue().toString());
+        }
+        return values;
+    }
+
+    @Override
+    public long mdelete(List<String> keys) {
+        List<Object> responses = execute("mdelete", null,
+                jedis -> RedisUtil.pipelined(jedis, keys, (pipeline, key) -> pipeline.del(key), redisCached.getPipelineBatchSize()));
+        long count = 0L;
+        if (responses != null) {
+            for (Object response : responses) {
+                if (response instanceof Long) {
+                    count += (Long) response;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<String> mhget(List<String> keys, String field) {
+        List<Object> responses = execute("mhget", null,
+                jedis -> RedisUtil.pipelined(jedis, keys, (pipeline, key) -> pipeline.hget(key, field), redisCached.getPipelineBatchSize()));
+        if (responses == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<String>(responses.size());
+        for (Object response : responses) {
+            values.add(response instanceof String ? (String) response : null);
         }
-        return exec;
+        return values;
     }
 }
@@ -0,0 +1,381 @@
+package com.jerome.common.cache;
+
+import com.jerome.arithmetic.ConsistencyHash;
+import com.jerome.arithmetic.RebalancePlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分片增删后把key迁移到新的分片
+ * <p>
+ * 对每个有key迁出的分片用 SCAN 遍历，按新环算出key的新分片，
+ * 在源分片用pipeline批量 DUMP + PTTL，再在目标分片用pipeline批量 RESTORE。
+ * 同时迁移的源分片数由 parallelism 限制，所有分片合计每秒迁移的key数由 maxKeysPerSecond 限制。
+ * <p>
+ * 建议的顺序：先 RebalancePlan 看迁移量，再让客户端切到新环(ShardedRedisCachedImpl.addShard)，最后调用 migrate。
+ * RESTORE 不覆盖目标分片上已经存在的key，切换后客户端新写入的值不会被旧值覆盖；
+ * 移除分片时要在迁移完成后再关闭它的连接池。
+ *
+ * @author jerome
+ */
+public class RedisRebalancer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisRebalancer.class.getName());
+
+    private final ConsistencyHash<String> from;
+
+    private final ConsistencyHash<String> to;
+
+    private final Map<String, JedisPool> pools;
+
+    private int parallelism = 2;
+
+    private int scanCount = 1000;
+
+    private int batchSize = 200;
+
+    private int maxKeysPerSecond = 5000;
+
+    private boolean deleteSource = true;
+
+    private String match = "*";
+
+    /**
+     * @param from  迁移前的环
+     * @param to    迁移后的环
+     * @param pools 两个环里所有分片的连接池，key为分片名
+     */
+    public RedisRebalancer(ConsistencyHash<String> from, ConsistencyHash<String> to, Map<String, JedisPool> pools) {
+        this.from = from;
+        this.to = to;
+        this.pools = pools;
+    }
+
+    /**
+     * 同时迁移的源分片数
+     */
+    public RedisRebalancer setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * 每次 SCAN 的 COUNT
+     */
+    public RedisRebalancer setScanCount(int scanCount) {
+        this.scanCount = Math.max(1, scanCount);
+        return this;
+    }
+
+    /**
+     * 每个pipeline的key数
+     */
+    public RedisRebalancer setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * 所有分片合计每秒最多迁移的key数，小于等于0不限制
+     */
+    public RedisRebalancer setMaxKeysPerSecond(int maxKeysPerSecond) {
+        this.maxKeysPerSecond = maxKeysPerSecond;
+        return this;
+    }
+
+    /**
+     * 迁移成功后是否删除源分片上的key，默认删除
+     */
+    public RedisRebalancer setDeleteSource(boolean deleteSource) {
+        this.deleteSource = deleteSource;
+        return this;
+    }
+
+    /**
+     * 只迁移匹配的key，SCAN 的 MATCH 参数
+     */
+    public RedisRebalancer setMatch(String match) {
+        this.match = match;
+        return this;
+    }
+
+    /**
+     * 只计算不迁移
+     */
+    public RebalancePlan<String> plan() {
+        return RebalancePlan.plan(from, to);
+    }
+
+    /**
+     * 按计划迁移，阻塞到所有源分片迁移完成
+     *
+     * @return 迁移结果
+     * @throws InterruptedException
+     */
+    public Report migrate() throws InterruptedException {
+        RebalancePlan<String> plan = plan();
+        final Report report = new Report();
+        final Throttle throttle = new Throttle(maxKeysPerSecond);
+        final AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "redis-rebalance-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<String, Future<?>> futures = new LinkedHashMap<String, Future<?>>();
+            for (final String source : plan.getSources()) {
+                final JedisPool pool = pools.get(source);
+                if (pool == null) {
+                    throw new IllegalArgumentException("no pool for shard " + source);
+                }
+                futures.put(source, executor.submit(() -> migrateShard(source, pool, report, throttle)));
+            }
+            for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    // 分片中途失败时剩下多少key没有扫描到无从得知，单独记录分片，需要重新迁移
+                    LOG.error("migrate shard " + entry.getKey() + " failed", e.getCause());
+                    report.failedShards.add(entry.getKey());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        LOG.info("rebalance finished: {}", report);
+        return report;
+    }
+
+    private void migrateShard(String source, JedisPool pool, Report report, Throttle throttle) {
+        ScanParams params = new ScanParams().match(match).count(scanCount);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        List<String> pending = new ArrayList<String>(batchSize);
+        try (Jedis jedis = pool.getResource()) {
+            do {
+                ScanResult<String> scan = jedis.scan(cursor, params);
+                cursor = scan.getStringCursor();
+                for (String key : scan.getResult()) {
+                    report.scanned.increment();
+                    if (!source.equals(to.getNode(key))) {
+                        pending.add(key);
+                    }
+                    if (pending.size() >= batchSize) {
+                        throttle.acquire(pending.size());
+                        migrateBatch(jedis, source, pending, report);
+                        pending.clear();
+                    }
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            if (!pending.isEmpty()) {
+                throttle.acquire(pending.size());
+                migrateBatch(jedis, source, pending, report);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一批key：源分片 DUMP + PTTL，按目标分片分组 RESTORE，成功后删除源key
+     */
+    private void migrateBatch(Jedis source, String sourceName, List<String> keys, Report report) {
+        Pipeline read = source.pipelined();
+        for (String key : keys) {
+            read.dump(key);
+            read.pttl(key);
+        }
+        List<Object> dumped = read.syncAndReturnAll();
+
+        Map<String, List<Integer>> byTarget = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++) {
+            // PTTL 返回 -2 表示 DUMP 之后key过期或被删除了，0 表示马上过期，
+            // 这两种都不能 RESTORE，ttl 传0会写成永不过期；-1 表示没有过期时间
+            Object pttl = dumped.get(2 * i + 1);
+            if (!(dumped.get(2 * i) instanceof byte[]) || !(pttl instanceof Long)
+                    || ((Long) pttl != -1 && (Long) pttl <= 0)) {
+                // 扫描之后key已经过期或被删除
+                report.expired.increment();
+                continue;
+            }
+            String target = to.getNode(keys.get(i));
+            List<Integer> indexes = byTarget.get(target);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                byTarget.put(target, indexes);
+            }
+            indexes.add(i);
+        }
+
+        List<String> restored = new ArrayList<String>(keys.size());
+        for (Map.Entry<String, List<Integer>> entry : byTarget.entrySet()) {
+            JedisPool pool = pools.get(entry.getKey());
+            if (pool == null) {
+                LOG.warn("no pool for shard {}, {} keys skipped", entry.getKey(), entry.getValue().size());
+                report.failed.add(entry.getValue().size());
+                continue;
+            }
+            try (Jedis target = pool.getResource()) {
+                Pipeline write = target.pipelined();
+                List<Integer> longTtl = new ArrayList<Integer>();
+                for (int i : entry.getValue()) {
+                    long pttl = (Long) dumped.get(2 * i + 1);
+                    // RESTORE 的ttl是int毫秒，超过的先不带过期时间写入，再单独 PEXPIRE
+                    int ttl = pttl > 0 && pttl <= Integer.MAX_VALUE ? (int) pttl : 0;
+                    if (pttl > Integer.MAX_VALUE) {
+                        longTtl.add(i);
+                    }
+                    write.restore(keys.get(i), ttl, (byte[]) dumped.get(2 * i));
+                }
+                List<Object> results = write.syncAndReturnAll();
+                Pipeline expire = null;
+                for (int n = 0; n < results.size(); n++) {
+                    int i = entry.getValue().get(n);
+                    Object result = results.get(n);
+                    if ("OK".equals(result)) {
+                        restored.add(keys.get(i));
+                        report.migrated.increment();
+                        if (longTtl.contains(i)) {
+                            if (expire == null) {
+                                expire = target.pipelined();
+                            }
+                            expire.pexpire(keys.get(i), (Long) dumped.get(2 * i + 1));
+                        }
+                    } else if (String.valueOf(result).contains("BUSYKEY")) {
+                        // 目标分片已经有更新的值，源key作废
+                        restored.add(keys.get(i));
+                        report.skipped.increment();
+                    } else {
+                        LOG.warn("restore {} from {} to {} failed: {}", keys.get(i), sourceName, entry.getKey(), result);
+                        report.failed.increment();
+                    }
+                }
+                if (expire != null) {
+                    expire.sync();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                report.failed.add(entry.getValue().size());
+            }
+        }
+
+        if (deleteSource && !restored.isEmpty()) {
+            source.del(restored.toArray(new String[restored.size()]));
+        }
+    }
+
+    /**
+     * 迁移结果
+     */
+    public static final class Report {
+
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder migrated = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder expired = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final List<String> failedShards = Collections.synchronizedList(new ArrayList<String>());
+
+        /**
+         * 源分片上扫描到的key数
+         */
+        public long getScanned() {
+            return scanned.sum();
+        }
+
+        /**
+         * 成功迁移的key数
+         */
+        public long getMigrated() {
+            return migrated.sum();
+        }
+
+        /**
+         * 目标分片已经存在而没有覆盖的key数
+         */
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        /**
+         * 扫描后、DUMP前已经过期或被删除的key数
+         */
+        public long getExpired() {
+            return expired.sum();
+        }
+
+        /**
+         * 迁移失败的key数，不包括 failedShards 中没有扫描到的key
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * 迁移中途异常退出的源分片，这些分片上还有没迁移的key，需要重新执行 migrate
+         */
+        public List<String> getFailedShards() {
+            synchronized (failedShards) {
+                return new ArrayList<String>(failedShards);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "scanned=" + getScanned() + ", migrated=" + getMigrated() + ", skipped=" + getSkipped()
+                    + ", expired=" + getExpired() + ", failed=" + getFailed() + ", failedShards=" + getFailedShards();
+        }
+    }
+
+    /**
+     * 所有迁移线程共享的限速：按速率给每批key排一个开始时间，没到时间就睡眠
+     */
+    private static final class Throttle {
+
+        private final long nanosPerKey;
+
+        private long next = System.nanoTime();
+
+        Throttle(int keysPerSecond) {
+            this.nanosPerKey = keysPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / keysPerSecond : 0;
+        }
+
+        void acquire(int keys) throws InterruptedException {
+            if (nanosPerKey == 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long start = Math.max(next, now);
+                next = start + nanosPerKey * keys;
+                wait = start - now;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.jerome.common.cache;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 一段Lua脚本和它的SHA1，SHA1和 SCRIPT LOAD 返回的值相同，本地算出来就可以直接 EVALSHA
+ *
+ * @author jerome
+ */
+public final class RedisScript {
+
+    private final String name;
+
+    private final String source;
+
+    private final String sha1;
+
+    RedisScript(String name, String source) {
+        this.name = name;
+        this.source = source;
+        this.sha1 = sha1(source);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    private static String sha1(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(source.getBytes(Charset.forName("UTF-8")));
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 not supported", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + sha1 + ")";
+    }
+}
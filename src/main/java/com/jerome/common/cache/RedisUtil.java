@@ -4,12 +4,16 @@ import com.jerome.common.util.MD5Utils;
 import redis.clients.jedis.BinaryClient.LIST_POSITION;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.params.sortedset.ZAddParams;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * redis 工具类
@@ -17,11 +21,43 @@ import java.util.Set;
  */
 public class RedisUtil {
 
+    /**
+     * pipeline默认每批发送的命令数
+     */
+    public static final int DEFAULT_PIPELINE_BATCH_SIZE = 500;
+
     protected static RedisUtil redisCached = new RedisUtil();
 
+    private volatile int pipelineBatchSize = DEFAULT_PIPELINE_BATCH_SIZE;
+
+    /**
+     * 拿不到连接(熔断中或连接池不可用)时由 borrow 抛出，各方法按异常处理直接返回失败时的默认值
+     */
+    private static final NoConnectionException NO_CONNECTION = new NoConnectionException();
+
     private RedisUtil() {
     }
 
+    /**
+     * 从连接池借连接，拿不到时抛出 NO_CONNECTION，不再在null上调用命令
+     */
+    private static Jedis borrow() {
+        Jedis jedis = JedisUtil.getJedisInstance();
+        if (jedis == null) {
+            throw NO_CONNECTION;
+        }
+        return jedis;
+    }
+
+    /**
+     * 拿不到连接的原因 getJedisInstance 已经处理过(熔断中不打印)，每次调用不再重复打印
+     */
+    private static void printError(Exception e) {
+        if (e != NO_CONNECTION) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * 获取唯一实例.
      *
@@ -42,11 +78,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String value = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             value = jedis.get(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -64,11 +100,11 @@ public class RedisUtil {
     public String set(String key, String value) {
         Jedis jedis = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             return jedis.set(key, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
             return "0";
         } finally {
             JedisUtil.returnResource(jedis);
@@ -85,11 +121,11 @@ public class RedisUtil {
     public Long del(String... keys) {
         Jedis jedis = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             return jedis.del(keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
             return 0L;
         } finally {
             JedisUtil.returnResource(jedis);
@@ -107,11 +143,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.append(key, str);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
             return 0L;
         } finally {
             JedisUtil.returnResource(jedis);
@@ -128,11 +164,11 @@ public class RedisUtil {
     public Boolean exists(String key) {
         Jedis jedis = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             return jedis.exists(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
             return false;
         } finally {
             JedisUtil.returnResource(jedis);
@@ -149,11 +185,11 @@ public class RedisUtil {
     public Long setnx(String key, String value) {
         Jedis jedis = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             return jedis.setnx(key, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
             return 0L;
         } finally {
             JedisUtil.returnResource(jedis);
@@ -172,11 +208,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.setex(key, seconds, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -202,11 +238,11 @@ public class RedisUtil {
     public Long setrange(String key, String str, int offset) {
         Jedis jedis = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             return jedis.setrange(key, offset, str);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
             return 0L;
         } finally {
             JedisUtil.returnResource(jedis);
@@ -224,11 +260,11 @@ public class RedisUtil {
         Jedis jedis = null;
         List<String> values = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             values = jedis.mget(keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -247,11 +283,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.mset(keysvalues);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -270,11 +306,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = 0L;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.msetnx(keysvalues);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -292,11 +328,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.getSet(key, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -315,11 +351,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.getrange(key, startOffset, endOffset);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -336,11 +372,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.incr(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -358,11 +394,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.incrBy(key, integer);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -379,11 +415,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.decr(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -401,11 +437,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.decrBy(key, integer);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -422,11 +458,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.strlen(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -445,11 +481,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hset(key, field, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -468,11 +504,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hsetnx(key, field, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -490,11 +526,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hmset(key, hash);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -512,11 +548,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hget(key, field);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -534,11 +570,11 @@ public class RedisUtil {
         Jedis jedis = null;
         List<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hmget(key, fields);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -557,11 +593,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hincrBy(key, field, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -579,11 +615,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Boolean res = false;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hexists(key, field);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -600,11 +636,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hlen(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -623,11 +659,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hdel(key, fields);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -644,11 +680,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hkeys(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -665,11 +701,11 @@ public class RedisUtil {
         Jedis jedis = null;
         List<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hvals(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -686,11 +722,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Map<String, String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.hgetAll(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -708,11 +744,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.lpush(key, strs);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -730,11 +766,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.rpush(key, strs);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -755,11 +791,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.linsert(key, where, pivot, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -779,11 +815,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.lset(key, index, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -802,11 +838,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.lrem(key, count, value);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -825,11 +861,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.ltrim(key, start, end);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -846,11 +882,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.lpop(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -867,11 +903,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.rpop(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -890,11 +926,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.rpoplpush(srckey, dstkey);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -912,11 +948,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.lindex(key, index);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -933,11 +969,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.llen(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -957,11 +993,11 @@ public class RedisUtil {
         Jedis jedis = null;
         List<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.lrange(key, start, end);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -979,11 +1015,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sadd(key, members);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1001,11 +1037,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.srem(key, members);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1022,11 +1058,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.spop(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1044,11 +1080,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sdiff(keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1067,11 +1103,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sdiffstore(dstkey, keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1088,11 +1124,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sinter(keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1110,11 +1146,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sinterstore(dstkey, keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1131,11 +1167,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sunion(keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1153,11 +1189,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sunionstore(dstkey, keys);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1176,11 +1212,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.smove(srckey, dstkey, member);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1197,11 +1233,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.scard(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1219,11 +1255,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Boolean res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.sismember(key, member);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1240,11 +1276,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.srandmember(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1261,11 +1297,11 @@ public class RedisUtil {
         Jedis jedis = null;
         List<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.srandmember(key, count);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1282,11 +1318,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.smembers(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1305,11 +1341,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zadd(key, scoreMembers, ZAddParams.zAddParams());
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1329,11 +1365,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zadd(key, score, member);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1351,11 +1387,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrem(key, members);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1374,11 +1410,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Double res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zincrby(key, score, member);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1397,11 +1433,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrank(key, member);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1420,11 +1456,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrevrank(key, member);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1445,11 +1481,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrevrange(key, start, end);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1470,11 +1506,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrange(key, start, end);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1493,11 +1529,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrevrangeByScore(key, max, min);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1516,11 +1552,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrevrangeByScore(key, max, min);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1541,11 +1577,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zrevrangeByScore(key, max, min, offset, count);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1564,11 +1600,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zcount(key, min, max);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1587,11 +1623,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zcount(key, min, max);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1608,11 +1644,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zcard(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1630,11 +1666,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Double res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zscore(key, member);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1653,11 +1689,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zremrangeByRank(key, start, end);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1676,11 +1712,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.zremrangeByScore(key, start, end);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1691,25 +1727,125 @@ public class RedisUtil {
      * <p>返回满足pattern表达式的所有key</p>
      * <p>keys(*)</p>
      * <p>返回所有的key</p>
+     * <p>内部用 SCAN 分页遍历，不再执行会阻塞redis的 KEYS，但结果仍然全部放在内存里，key很多时用 scan(pattern) 边遍历边处理</p>
      *
      * @param pattern
      * @return
      */
     public Set<String> keys(String pattern) {
-        Jedis jedis = null;
         Set<String> res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
-            res = jedis.keys(pattern);
+            KeyScanner scanner = scan(pattern);
+            res = new HashSet<String>();
+            while (scanner.hasNext()) {
+                res.add(scanner.next());
+            }
         } catch (Exception e) {
-            JedisUtil.returnResource(jedis);
-            e.printStackTrace();
-        } finally {
-            JedisUtil.returnResource(jedis);
+            printError(e);
+            res = null;
         }
         return res;
     }
 
+    /**
+     * <p>用 SCAN 逐页遍历满足pattern的key, 每页借一次连接</p>
+     *
+     * @param pattern
+     * @return
+     */
+    public KeyScanner scan(String pattern) {
+        return scan(pattern, KeyScanner.DEFAULT_COUNT);
+    }
+
+    /**
+     * <p>用 SCAN 逐页遍历满足pattern的key, 每页借一次连接</p>
+     *
+     * @param pattern
+     * @param count   每次 SCAN 的 COUNT
+     * @return
+     */
+    public KeyScanner scan(String pattern, int count) {
+        return new KeyScanner(JedisUtil::getJedisInstance, pattern, count);
+    }
+
+    /**
+     * <p>删除满足pattern的所有key, 每扫描一页用pipeline删除一页</p>
+     *
+     * @param pattern
+     * @return 删除的个数, 异常返回null
+     */
+    public Long deleteByPattern(String pattern) {
+        return forEachPage(pattern, new BiConsumer<Pipeline, String>() {
+            @Override
+            public void accept(Pipeline pipeline, String key) {
+                pipeline.del(key);
+            }
+        });
+    }
+
+    /**
+     * <p>为满足pattern的所有key设置过期时间, 每扫描一页用pipeline设置一页</p>
+     *
+     * @param pattern
+     * @param seconds
+     * @return 设置成功的个数, 异常返回null
+     */
+    public Long expireByPattern(String pattern, final int seconds) {
+        return forEachPage(pattern, new BiConsumer<Pipeline, String>() {
+            @Override
+            public void accept(Pipeline pipeline, String key) {
+                pipeline.expire(key, seconds);
+            }
+        });
+    }
+
+    /**
+     * <p>统计满足pattern的key数, SCAN 可能重复返回同一个key, 结果是近似值</p>
+     *
+     * @param pattern
+     * @return 异常返回null
+     */
+    public Long countByPattern(String pattern) {
+        try {
+            KeyScanner scanner = scan(pattern);
+            long count = 0;
+            for (List<String> page = scanner.nextPage(); !page.isEmpty(); page = scanner.nextPage()) {
+                count += page.size();
+            }
+            return count;
+        } catch (Exception e) {
+            printError(e);
+            return null;
+        }
+    }
+
+    /**
+     * <p>逐页扫描, 每页的key用pipeline执行command, 扫描下一页前当前页已经执行完</p>
+     *
+     * @return 返回值为正整数的命令个数, 异常返回null
+     */
+    private Long forEachPage(String pattern, BiConsumer<Pipeline, String> command) {
+        try {
+            KeyScanner scanner = scan(pattern);
+            long affected = 0;
+            for (List<String> page = scanner.nextPage(); !page.isEmpty(); page = scanner.nextPage()) {
+                List<Object> responses = pipelined(page, command);
+                if (responses == null) {
+                    return null;
+                }
+                for (Object response : responses) {
+                    if (response instanceof Long && (Long) response > 0) {
+                        affected++;
+                    }
+                }
+            }
+            return affected;
+        } catch (Exception e) {
+            printError(e);
+            return null;
+        }
+    }
+
     /**
      * <p>通过key判断值得类型</p>
      *
@@ -1720,11 +1856,11 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.type(key);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1742,11 +1878,11 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.publish(channel, message);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1762,11 +1898,11 @@ public class RedisUtil {
     public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
         Jedis jedis = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             jedis.psubscribe(jedisPubSub, patterns);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1783,14 +1919,14 @@ public class RedisUtil {
         Jedis jedis = null;
         String res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             List<String> results = jedis.blpop(timeout, key);
             if (results != null && results.size() > 0) {
                 res = results.get(1);
             }
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
@@ -1808,20 +1944,222 @@ public class RedisUtil {
         Jedis jedis = null;
         Long res = null;
         try {
-            jedis = JedisUtil.getJedisInstance();
+            jedis = borrow();
             res = jedis.expire(key, seconds);
         } catch (Exception e) {
             JedisUtil.returnResource(jedis);
-            e.printStackTrace();
+            printError(e);
         } finally {
             JedisUtil.returnResource(jedis);
         }
         return res;
     }
 
+    /**
+     * <p>通过二进制key获取储存在redis中的二进制value</p>
+     *
+     * @param key
+     * @return 成功返回value 失败返回null
+     */
+    public byte[] get(byte[] key) {
+        Jedis jedis = null;
+        byte[] value = null;
+        try {
+            jedis = borrow();
+            value = jedis.get(key);
+        } catch (Exception e) {
+            printError(e);
+        } finally {
+            JedisUtil.returnResource(jedis);
+        }
+        return value;
+    }
+
+    /**
+     * <p>向redis存入二进制key和value</p>
+     * <p>seconds为0时不设置过期时间</p>
+     *
+     * @param key
+     * @param value
+     * @param seconds 生存时间 单位:秒
+     * @return 成功 返回OK 失败返回 0
+     */
+    public String set(byte[] key, byte[] value, int seconds) {
+        Jedis jedis = null;
+        try {
+            jedis = borrow();
+            if (seconds == 0) {
+                return jedis.set(key, value);
+            }
+            return jedis.setex(key, seconds, value);
+        } catch (Exception e) {
+            printError(e);
+            return "0";
+        } finally {
+            JedisUtil.returnResource(jedis);
+        }
+    }
+
+    /**
+     * <p>设置pipeline每批发送的命令数</p>
+     * <p>批量方法会把keys按该大小切分，每批一次网络往返</p>
+     *
+     * @param pipelineBatchSize 必须大于0
+     */
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        if (pipelineBatchSize <= 0) {
+            throw new IllegalArgumentException("pipelineBatchSize must be positive: " + pipelineBatchSize);
+        }
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
+    public int getPipelineBatchSize() {
+        return pipelineBatchSize;
+    }
+
+    /**
+     * <p>通过pipeline批量获取value</p>
+     *
+     * @param keys
+     * @return 与keys顺序一致的value列表, 不存在的key对应null, 异常返回null
+     */
+    public List<String> pipelineGet(List<String> keys) {
+        List<Object> responses = pipelined(keys, new BiConsumer<Pipeline, String>() {
+            @Override
+            public void accept(Pipeline pipeline, String key) {
+                pipeline.get(key);
+            }
+        });
+        return toStrings(responses);
+    }
+
+    /**
+     * <p>通过pipeline批量存入key和value</p>
+     * <p>seconds为0时不设置过期时间</p>
+     *
+     * @param keyValues
+     * @param seconds   生存时间 单位:秒
+     * @return 返回成功写入的个数, 异常返回0
+     */
+    public Long pipelineSet(Map<String, String> keyValues, final int seconds) {
+        List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>(keyValues.entrySet());
+        List<Object> responses = pipelined(entries, new BiConsumer<Pipeline, Map.Entry<String, String>>() {
+            @Override
+            public void accept(Pipeline pipeline, Map.Entry<String, String> entry) {
+                if (seconds == 0) {
+                    pipeline.set(entry.getKey(), entry.getValue());
+                } else {
+                    pipeline.setex(entry.getKey(), seconds, entry.getValue());
+                }
+            }
+        });
+        long count = 0L;
+        if (responses != null) {
+            for (Object response : responses) {
+                if ("OK".equals(response)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>通过pipeline批量删除key</p>
+     *
+     * @param keys
+     * @return 返回删除成功的个数, 异常返回0
+     */
+    public Long pipelineDel(List<String> keys) {
+        List<Object> responses = pipelined(keys, new BiConsumer<Pipeline, String>() {
+            @Override
+            public void accept(Pipeline pipeline, String key) {
+                pipeline.del(key);
+            }
+        });
+        long count = 0L;
+        if (responses != null) {
+            for (Object response : responses) {
+                if (response instanceof Long) {
+                    count += (Long) response;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>通过pipeline批量获取多个hash中同一个field的value</p>
+     *
+     * @param keys
+     * @param field
+     * @return 与keys顺序一致的value列表, 没有对应field返回null, 异常返回null
+     */
+    public List<String> pipelineHget(List<String> keys, final String field) {
+        List<Object> responses = pipelined(keys, new BiConsumer<Pipeline, String>() {
+            @Override
+            public void accept(Pipeline pipeline, String key) {
+                pipeline.hget(key, field);
+            }
+        });
+        return toStrings(responses);
+    }
+
+    /**
+     * <p>从连接池获取jedis, 按pipelineBatchSize分批执行命令并释放连接</p>
+     *
+     * @param items   每个元素对应一条命令
+     * @param command 把元素转换为pipeline上的命令
+     * @return 与items顺序一致的执行结果, 异常返回null
+     */
+    private <T> List<Object> pipelined(List<T> items, BiConsumer<Pipeline, T> command) {
+        Jedis jedis = null;
+        try {
+            jedis = borrow();
+            return pipelined(jedis, items, command, pipelineBatchSize);
+        } catch (Exception e) {
+            printError(e);
+            return null;
+        } finally {
+            JedisUtil.returnResource(jedis);
+        }
+    }
+
+    /**
+     * <p>在给定的jedis上按batchSize分批执行pipeline命令, 不负责释放连接</p>
+     *
+     * @param jedis
+     * @param items
+     * @param command
+     * @param batchSize
+     * @return 与items顺序一致的执行结果, 命令执行失败的位置为对应的异常对象
+     */
+    static <T> List<Object> pipelined(Jedis jedis, List<T> items, BiConsumer<Pipeline, T> command, int batchSize) {
+        List<Object> results = new ArrayList<Object>(items.size());
+        for (int from = 0; from < items.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, items.size());
+            Pipeline pipeline = jedis.pipelined();
+            for (T item : items.subList(from, to)) {
+                command.accept(pipeline, item);
+            }
+            results.addAll(pipeline.syncAndReturnAll());
+        }
+        return results;
+    }
+
+    private static List<String> toStrings(List<Object> responses) {
+        if (responses == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<String>(responses.size());
+        for (Object response : responses) {
+            values.add(response instanceof String ? (String) response : null);
+        }
+        return values;
+    }
+
     public Jedis getJedis() {
-        Jedis jedis = JedisUtil.getJedisInstance();
-        return jedis;
+        return JedisUtil.getJedisInstance();
     }
 
     public void returnJedis(Jedis jedis) {
@@ -1956,4 +2294,21 @@ public class RedisUtil {
         }
     }
 
+
+    /**
+     * 共享的实例，不记录堆栈
+     */
+    private static final class NoConnectionException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        NoConnectionException() {
+            super("no redis connection available");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package com.jerome.common.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lua脚本注册表
+ * <p>
+ * 脚本注册时在本地算好SHA1，执行时先 EVALSHA，服务端没有缓存(NOSCRIPT，比如redis重启或者执行了SCRIPT FLUSH)时改用 EVAL，
+ * EVAL 会把脚本缓存到服务端，之后的 EVALSHA 就能命中。loadAll 可以在连接建立后用 SCRIPT LOAD 预先加载所有脚本。
+ * <p>
+ * 在pipeline中执行时 Jedis 2.8 把 EVALSHA 的结果按字符串解析，要用 evalPipelined 执行的脚本需要用 tostring 返回字符串。
+ *
+ * @author jerome
+ */
+public final class ScriptRegistry {
+
+    private static final ScriptRegistry INSTANCE = new ScriptRegistry();
+
+    private final ConcurrentMap<String, RedisScript> scripts = new ConcurrentHashMap<String, RedisScript>();
+
+    ScriptRegistry() {
+    }
+
+    /**
+     * 缓存层共用的注册表，CacheScripts 中的脚本注册在这里
+     */
+    public static ScriptRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 注册一个脚本，同名的脚本已经存在时返回已有的
+     *
+     * @param name
+     * @param source Lua源码
+     * @return
+     */
+    public RedisScript register(String name, String source) {
+        RedisScript script = new RedisScript(name, source);
+        RedisScript existing = scripts.putIfAbsent(name, script);
+        if (existing != null && !existing.getSource().equals(source)) {
+            throw new IllegalArgumentException("script " + name + " already registered with different source");
+        }
+        return existing == null ? script : existing;
+    }
+
+    public RedisScript get(String name) {
+        return scripts.get(name);
+    }
+
+    public Collection<RedisScript> getScripts() {
+        return Collections.unmodifiableCollection(scripts.values());
+    }
+
+    /**
+     * 用 SCRIPT LOAD 把所有脚本加载到连接所在的redis实例
+     *
+     * @param jedis
+     */
+    public void loadAll(Jedis jedis) {
+        for (RedisScript script : scripts.values()) {
+            jedis.scriptLoad(script.getSource());
+        }
+    }
+
+    /**
+     * 执行脚本，先 EVALSHA，NOSCRIPT 时改用 EVAL
+     *
+     * @param jedis
+     * @param script
+     * @param keys
+     * @param args
+     * @return 脚本的返回值
+     */
+    public Object eval(Jedis jedis, RedisScript script, List<String> keys, List<String> args) {
+        try {
+            return jedis.evalsha(script.getSha1(), keys, args);
+        } catch (JedisDataException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            return jedis.eval(script.getSource(), keys, args);
+        }
+    }
+
+    /**
+     * 用pipeline批量执行同一个脚本，第i次执行的参数为 keys.get(i)、args.get(i)
+     * 有 NOSCRIPT 的先 SCRIPT LOAD，再用pipeline把这些重新执行一次
+     *
+     * @param jedis
+     * @param script
+     * @param keys
+     * @param args
+     * @return 与参数顺序一致的结果，执行出错的位置是 JedisDataException
+     */
+    public List<Object> evalPipelined(Jedis jedis, RedisScript script, List<List<String>> keys, List<List<String>> args) {
+        List<Object> results = new ArrayList<Object>(evalshaPipelined(jedis, script, keys, args));
+        List<Integer> retry = new ArrayList<Integer>();
+        for (int i = 0; i < results.size(); i++) {
+            Object result = results.get(i);
+            if (result instanceof JedisDataException && isNoScript((JedisDataException) result)) {
+                retry.add(i);
+            }
+        }
+        if (retry.isEmpty()) {
+            return results;
+        }
+        jedis.scriptLoad(script.getSource());
+        List<List<String>> retryKeys = new ArrayList<List<String>>(retry.size());
+        List<List<String>> retryArgs = new ArrayList<List<String>>(retry.size());
+        for (int i : retry) {
+            retryKeys.add(keys.get(i));
+            retryArgs.add(args.get(i));
+        }
+        List<Object> retried = evalshaPipelined(jedis, script, retryKeys, retryArgs);
+        for (int n = 0; n < retry.size(); n++) {
+            results.set(retry.get(n), retried.get(n));
+        }
+        return results;
+    }
+
+    private static List<Object> evalshaPipelined(Jedis jedis, RedisScript script, List<List<String>> keys,
+                                                 List<List<String>> args) {
+        Pipeline pipeline = jedis.pipelined();
+        for (int i = 0; i < keys.size(); i++) {
+            pipeline.evalsha(script.getSha1(), keys.get(i), args.get(i));
+        }
+        return pipeline.syncAndReturnAll();
+    }
+
+    private static boolean isNoScript(JedisDataException e) {
+        return e.getMessage() != null && e.getMessage().startsWith("NOSCRIPT");
+    }
+}
@@ -0,0 +1,454 @@
+package com.jerome.common.cache;
+
+import com.jerome.arithmetic.ConsistencyHash;
+import com.jerome.common.cache.codec.CacheCodec;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 按一致性hash把key分散到多个redis实例的 CacheI 实现
+ * 每个分片有自己的连接池，批量操作先按分片分组，每个分片用pipeline执行
+ * pub/sub 按频道名路由，psubscribe 的 pattern 需要是完整的频道名才能和 publish 落到同一个分片
+ *
+ * @author jerome
+ */
+public class ShardedRedisCachedImpl implements CacheI {
+
+    private final ConsistencyHash<String> ring;
+
+    private final Map<String, JedisPool> pools = new ConcurrentHashMap<String, JedisPool>();
+
+    private volatile int pipelineBatchSize = RedisUtil.DEFAULT_PIPELINE_BATCH_SIZE;
+
+    /**
+     * @param shardPools       key为分片名(一般是 ip:port)，决定分片在环上的位置
+     * @param virtualNodeCount 每个分片的虚拟节点数
+     */
+    public ShardedRedisCachedImpl(Map<String, JedisPool> shardPools, int virtualNodeCount) {
+        this.pools.putAll(shardPools);
+        this.ring = new ConsistencyHash<String>(shardPools.keySet(), virtualNodeCount);
+    }
+
+    /**
+     * 使用 redis.shards 配置的分片
+     */
+    public ShardedRedisCachedImpl() {
+        this(JedisUtil.createShardPools(), ConsistencyHash.DEFAULT_VIRTUAL_NODE_COUNT);
+    }
+
+    /**
+     * 加入一个分片，环上部分key会改为落到新分片，原分片上的数据不会自动迁移
+     *
+     * @param name
+     * @param pool
+     */
+    public void addShard(String name, JedisPool pool) {
+        pools.put(name, pool);
+        ring.addNode(name);
+    }
+
+    /**
+     * 移除一个分片并关闭它的连接池
+     *
+     * @param name
+     */
+    public void removeShard(String name) {
+        ring.removeNode(name);
+        JedisPool pool = pools.remove(name);
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    public List<String> getShards() {
+        return ring.getNodes();
+    }
+
+    /**
+     * key所在的分片名
+     *
+     * @param key
+     * @return
+     */
+    public String getShard(String key) {
+        return ring.getNode(key);
+    }
+
+    public ConsistencyHash<String> getRing() {
+        return ring;
+    }
+
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        if (pipelineBatchSize <= 0) {
+            throw new IllegalArgumentException("pipelineBatchSize must be positive: " + pipelineBatchSize);
+        }
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
+    private interface JedisCallback<R> {
+        R doInRedis(Jedis jedis);
+    }
+
+    /**
+     * 在key所在的分片上执行命令并释放连接
+     *
+     * @return 异常返回null
+     */
+    private <R> R execute(String key, JedisCallback<R> callback) {
+        Jedis jedis = null;
+        try {
+            jedis = pools.get(ring.getNode(key)).getResource();
+            return callback.doInRedis(jedis);
+        } catch (CircuitBreakerOpenException e) {
+            // 分片熔断中，快速失败
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            JedisUtil.returnResource(jedis);
+        }
+    }
+
+    /**
+     * 按分片分组，每个分片用pipeline执行，结果按keys原来的顺序返回
+     *
+     * @return 某个分片异常时返回null
+     */
+    private List<Object> pipelined(List<String> keys, BiConsumer<Pipeline, String> command) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++) {
+            String shard = ring.getNode(keys.get(i));
+            List<Integer> indexes = groups.get(shard);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                groups.put(shard, indexes);
+            }
+            indexes.add(i);
+        }
+        Object[] results = new Object[keys.size()];
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            List<String> shardKeys = new ArrayList<String>(group.getValue().size());
+            for (Integer index : group.getValue()) {
+                shardKeys.add(keys.get(index));
+            }
+            Jedis jedis = null;
+            try {
+                jedis = pools.get(group.getKey()).getResource();
+                List<Object> responses = RedisUtil.pipelined(jedis, shardKeys, command, pipelineBatchSize);
+                for (int i = 0; i < responses.size(); i++) {
+                    results[group.getValue().get(i)] = responses.get(i);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                JedisUtil.returnResource(jedis);
+            }
+        }
+        List<Object> list = new ArrayList<Object>(results.length);
+        Collections.addAll(list, results);
+        return list;
+    }
+
+    @Override
+    public boolean put(String key, Object value) {
+        final String str = value.toString();
+        return "OK".equals(execute(key, jedis -> jedis.set(key, str)));
+    }
+
+    @Override
+    public boolean put(String key, Object value, int secondsToLive) {
+        final String str = value.toString();
+        if (secondsToLive == 0) {
+            return put(key, str);
+        }
+        return "OK".equals(execute(key, jedis -> jedis.setex(key, secondsToLive, str)));
+    }
+
+    @Override
+    public Object get(String key) {
+        return execute(key, jedis -> jedis.get(key));
+    }
+
+    @Override
+    public <T> boolean put(String key, T value, int secondsToLive, CacheCodec<T> codec) {
+        final byte[] rawKey = SafeEncoder.encode(key);
+        final byte[] rawValue = codec.encode(value);
+        String flag = execute(key, jedis -> secondsToLive == 0
+                ? jedis.set(rawKey, rawValue) : jedis.setex(rawKey, secondsToLive, rawValue));
+        return "OK".equals(flag);
+    }
+
+    @Override
+    public <T> T get(String key, CacheCodec<T> codec) {
+        byte[] bytes = execute(key, jedis -> jedis.get(SafeEncoder.encode(key)));
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        Long result = execute(key, jedis -> jedis.del(key));
+        return result != null && result > 0;
+    }
+
+    @Override
+    public long llen(String key) {
+        Long result = execute(key, jedis -> jedis.llen(key));
+        return result == null ? 0L : result;
+    }
+
+    @Override
+    public long lpush(String key, String str) {
+        Long result = execute(key, jedis -> jedis.lpush(key, str));
+        return result == null ? 0L : result;
+    }
+
+    @Override
+    public long rpush(String key, String str) {
+        Long result = execute(key, jedis -> jedis.rpush(key, str));
+        return result == null ? 0L : result;
+    }
+
+    @Override
+    public String rpop(String key) {
+        return execute(key, jedis -> jedis.rpop(key));
+    }
+
+    @Override
+    public String blpop(int timeout, String key) {
+        List<String> result = execute(key, jedis -> jedis.blpop(timeout, key));
+        return result != null && result.size() > 1 ? result.get(1) : null;
+    }
+
+    @Override
+    public long publish(String channel, String message) {
+        Long result = execute(channel, jedis -> jedis.publish(channel, message));
+        return result == null ? 0L : result;
+    }
+
+    @Override
+    public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+        execute(patterns[0], jedis -> {
+            jedis.psubscribe(jedisPubSub, patterns);
+            return null;
+        });
+    }
+
+    @Override
+    public Long incr(String key) {
+        return execute(key, jedis -> jedis.incr(key));
+    }
+
+    @Override
+    public Long decr(String key) {
+        return execute(key, jedis -> jedis.decr(key));
+    }
+
+    @Override
+    public String ltrim(String key, long start, long end) {
+        return execute(key, jedis -> jedis.ltrim(key, start, end));
+    }
+
+    @Override
+    public Long zadd(String key, double score, String member) {
+        return execute(key, jedis -> jedis.zadd(key, score, member));
+    }
+
+    @Override
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        return execute(key, jedis -> jedis.zadd(key, scoreMembers));
+    }
+
+    @Override
+    public Long zrem(String key, String... members) {
+        return execute(key, jedis -> jedis.zrem(key, members));
+    }
+
+    @Override
+    public Set<String> zrevrange(String key, long start, long end) {
+        return execute(key, jedis -> jedis.zrevrange(key, start, end));
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(String key, double max, double min, int offset, int count) {
+        return execute(key, jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
+    }
+
+    @Override
+    public Set<String> zrange(String key, long start, long end) {
+        return execute(key, jedis -> jedis.zrange(key, start, end));
+    }
+
+    @Override
+    public Long zcount(String key, double min, double max) {
+        return execute(key, jedis -> jedis.zcount(key, min, max));
+    }
+
+    @Override
+    public Long sadd(String key, String... members) {
+        return execute(key, jedis -> jedis.sadd(key, members));
+    }
+
+    @Override
+    public Boolean sismember(String key, String member) {
+        return execute(key, jedis -> jedis.sismember(key, member));
+    }
+
+    @Override
+    public Long srem(String key, String... members) {
+        return execute(key, jedis -> jedis.srem(key, members));
+    }
+
+    @Override
+    public Long expire(String key, int seconds) {
+        return execute(key, jedis -> jedis.expire(key, seconds));
+    }
+
+    @Override
+    public Long incrBy(String key, Long integer) {
+        return execute(key, jedis -> jedis.incrBy(key, integer));
+    }
+
+    @Override
+    public List<String> srandmember(String key, int count) {
+        return execute(key, jedis -> jedis.srandmember(key, count));
+    }
+
+    @Override
+    public Long hset(String key, String field, String value) {
+        return execute(key, jedis -> jedis.hset(key, field, value));
+    }
+
+    @Override
+    public String hmset(String key, Map<String, String> hash) {
+        return execute(key, jedis -> jedis.hmset(key, hash));
+    }
+
+    @Override
+    public String hget(String key, String field) {
+        return execute(key, jedis -> jedis.hget(key, field));
+    }
+
+    @Override
+    public Map<String, String> hgetall(String key) {
+        return execute(key, jedis -> jedis.hgetAll(key));
+    }
+
+    @Override
+    public Long hdel(String key, String... fields) {
+        return execute(key, jedis -> jedis.hdel(key, fields));
+    }
+
+    @Override
+    public List<Object> incrAndExpire(String key, int ttl) {
+        Long value = execute(key, jedis -> CacheScripts.incrWithTtl(jedis, key, 1, ttl));
+        return value == null ? null : Arrays.<Object>asList(value, 1L);
+    }
+
+    @Override
+    public Long incrWithTtl(String key, long delta, int ttl) {
+        return execute(key, jedis -> CacheScripts.incrWithTtl(jedis, key, delta, ttl));
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long capacity, double permitsPerSecond, long permits) {
+        Boolean ok = execute(key, jedis -> CacheScripts.tryAcquire(jedis, key, capacity, permitsPerSecond, permits));
+        return ok != null && ok;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expect, String update, int secondsToLive) {
+        Boolean ok = execute(key, jedis -> CacheScripts.compareAndSet(jedis, key, expect, update, secondsToLive));
+        return ok != null && ok;
+    }
+
+    @Override
+    public Long pushCapped(String key, int maxLength, int secondsToLive, String... values) {
+        return execute(key, jedis -> CacheScripts.pushCapped(jedis, key, maxLength, secondsToLive, values));
+    }
+
+    @Override
+    public List<Object> mget(List<String> keys) {
+        List<Object> responses = pipelined(keys, (pipeline, key) -> pipeline.get(key));
+        if (responses == null) {
+            return null;
+        }
+        List<Object> values = new ArrayList<Object>(responses.size());
+        for (Object response : responses) {
+            values.add(response instanceof String ? response : null);
+        }
+        return values;
+    }
+
+    @Override
+    public boolean mput(Map<String, ?> keyValues, int secondsToLive) {
+        final Map<String, String> values = RedisCachedImpl.toStringValues(keyValues);
+        List<Object> responses = pipelined(new ArrayList<String>(values.keySet()), (pipeline, key) -> {
+            if (secondsToLive == 0) {
+                pipeline.set(key, values.get(key));
+            } else {
+                pipeline.setex(key, secondsToLive, values.get(key));
+            }
+        });
+        if (responses == null) {
+            return false;
+        }
+        for (Object response : responses) {
+            if (!"OK".equals(response)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long mdelete(List<String> keys) {
+        List<Object> responses = pipelined(keys, (pipeline, key) -> pipeline.del(key));
+        long count = 0L;
+        if (responses != null) {
+            for (Object response : responses) {
+                if (response instanceof Long) {
+                    count += (Long) response;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<String> mhget(List<String> keys, String field) {
+        List<Object> responses = pipelined(keys, (pipeline, key) -> pipeline.hget(key, field));
+        if (responses == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<String>(responses.size());
+        for (Object response : responses) {
+            values.add(response instanceof String ? (String) response : null);
+        }
+        return values;
+    }
+
+    /**
+     * 关闭所有分片的连接池
+     */
+    public void close() {
+        for (JedisPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+}
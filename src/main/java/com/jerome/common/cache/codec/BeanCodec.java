@@ -0,0 +1,100 @@
+package com.jerome.common.cache.codec;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 按字段位置编码POJO，不写字段名
+ * 字段按名称排序后依次用 TypedBinaryCodec 编码，开头写入字段名和类型的指纹，
+ * 类的字段有变化时解码会抛出异常，此时需要更换key或清理旧数据
+ * 要求类有无参构造方法
+ * 字段类型只能是 TypedBinaryCodec 支持的类型：String、int、long、double、float、boolean(及其包装类)、byte[]，
+ * 以及元素为这些类型的 List/Set/Map；Date、BigDecimal、short/byte/char、枚举、嵌套的POJO 等在编码时抛出 IllegalArgumentException
+ *
+ * @param <T>
+ * @author jerome
+ */
+public class BeanCodec<T> implements CacheCodec<T> {
+
+    private final Constructor<T> constructor;
+
+    private final Field[] fields;
+
+    private final int fingerprint;
+
+    private final TypedBinaryCodec codec = TypedBinaryCodec.INSTANCE;
+
+    public BeanCodec(Class<T> type) {
+        try {
+            this.constructor = type.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no default constructor", e);
+        }
+        List<Field> list = new ArrayList<Field>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                list.add(field);
+            }
+        }
+        Collections.sort(list, new Comparator<Field>() {
+            @Override
+            public int compare(Field f1, Field f2) {
+                int result = f1.getName().compareTo(f2.getName());
+                return result != 0 ? result : f1.getDeclaringClass().getName().compareTo(f2.getDeclaringClass().getName());
+            }
+        });
+        this.fields = list.toArray(new Field[list.size()]);
+        int hash = 1;
+        for (Field field : fields) {
+            hash = 31 * hash + field.getName().hashCode();
+            hash = 31 * hash + field.getType().getName().hashCode();
+        }
+        this.fingerprint = hash;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        TypedBinaryCodec.Output out = new TypedBinaryCodec.Output();
+        out.writeVarLong(fingerprint & 0xffffffffL);
+        try {
+            for (Field field : fields) {
+                codec.write(out, field.get(value));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("encode " + value.getClass().getName() + " failed", e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        TypedBinaryCodec.Input in = new TypedBinaryCodec.Input(bytes);
+        if ((int) in.readVarLong() != fingerprint) {
+            throw new IllegalArgumentException("fields of " + constructor.getDeclaringClass().getName()
+                    + " changed since the value was written");
+        }
+        try {
+            T value = constructor.newInstance();
+            for (Field field : fields) {
+                Object fieldValue = codec.read(in);
+                if (fieldValue != null || !field.getType().isPrimitive()) {
+                    field.set(value, fieldValue);
+                }
+            }
+            return value;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("decode " + constructor.getDeclaringClass().getName() + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.jerome.common.cache.codec;
+
+/**
+ * 缓存value的编解码接口，value以byte[]形式存入redis
+ *
+ * @param <T> value类型
+ * @author jerome
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * 编码
+     *
+     * @param value
+     * @return
+     */
+    byte[] encode(T value);
+
+    /**
+     * 解码
+     *
+     * @param bytes redis中取到的值，不会为null
+     * @return
+     */
+    T decode(byte[] bytes);
+}
@@ -0,0 +1,41 @@
+package com.jerome.common.cache.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * 使用jackson把指定类型的对象编码为JSON字节
+ * 适合字段固定的POJO，解码时按构造时传入的类型还原
+ *
+ * @param <T>
+ * @author jerome
+ */
+public class JacksonCodec<T> implements CacheCodec<T> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Class<T> type;
+
+    public JacksonCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("encode " + type.getName() + " failed", e);
+        }
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        try {
+            return MAPPER.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("decode " + type.getName() + " failed", e);
+        }
+    }
+}
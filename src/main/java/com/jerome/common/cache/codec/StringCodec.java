@@ -0,0 +1,25 @@
+package com.jerome.common.cache.codec;
+
+import java.nio.charset.Charset;
+
+/**
+ * UTF-8字符串编解码，和 CacheI.put(String, Object) 写入的数据兼容
+ *
+ * @author jerome
+ */
+public class StringCodec implements CacheCodec<String> {
+
+    public static final StringCodec INSTANCE = new StringCodec();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Override
+    public byte[] encode(String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    @Override
+    public String decode(byte[] bytes) {
+        return new String(bytes, UTF_8);
+    }
+}
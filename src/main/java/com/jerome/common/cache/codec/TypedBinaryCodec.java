@@ -0,0 +1,282 @@
+package com.jerome.common.cache.codec;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 带类型标记的紧凑二进制编解码
+ * 每个值以一个字节的类型标记开头，整数使用zigzag变长编码，
+ * String/byte[]/List/Set/Map 递归编码，其他类型编码时抛出 IllegalArgumentException，对象请用 BeanCodec 或 JacksonCodec
+ * <p>
+ * 不支持JDK序列化：缓存中的数据任何能写redis的客户端都可以修改，反序列化不可信的字节可能导致远程代码执行
+ *
+ * @author jerome
+ */
+public class TypedBinaryCodec implements CacheCodec<Object> {
+
+    public static final TypedBinaryCodec INSTANCE = new TypedBinaryCodec();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte TRUE = 6;
+    private static final byte FALSE = 7;
+    private static final byte BYTES = 8;
+    private static final byte LIST = 9;
+    private static final byte SET = 10;
+    private static final byte MAP = 11;
+
+    @Override
+    public byte[] encode(Object value) {
+        Output out = new Output();
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        return read(new Input(bytes));
+    }
+
+    void write(Output out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof String) {
+            out.write(STRING);
+            writeBytes(out, ((String) value).getBytes(UTF_8));
+        } else if (value instanceof Integer) {
+            out.write(INT);
+            out.writeVarLong(zigzag((Integer) value));
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            out.writeVarLong(zigzag((Long) value));
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            out.writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Float) {
+            out.write(FLOAT);
+            out.writeVarLong(Float.floatToIntBits((Float) value) & 0xffffffffL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof byte[]) {
+            out.write(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof List) {
+            out.write(LIST);
+            writeCollection(out, (List<?>) value);
+        } else if (value instanceof Set) {
+            out.write(SET);
+            writeCollection(out, (Set<?>) value);
+        } else if (value instanceof Map) {
+            out.write(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey());
+                write(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    Object read(Input in) {
+        byte tag = in.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), UTF_8);
+            case INT:
+                return (int) unzigzag(in.readVarLong());
+            case LONG:
+                return unzigzag(in.readVarLong());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case FLOAT:
+                return Float.intBitsToFloat((int) in.readVarLong());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTES:
+                return readBytes(in);
+            case LIST: {
+                int size = readSize(in, 1);
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            case SET: {
+                int size = readSize(in, 1);
+                Set<Object> set = new LinkedHashSet<Object>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    set.add(read(in));
+                }
+                return set;
+            }
+            case MAP: {
+                int size = readSize(in, 2);
+                Map<Object, Object> map = new LinkedHashMap<Object, Object>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    map.put(read(in), read(in));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("unknown type tag: " + tag);
+        }
+    }
+
+    private void writeCollection(Output out, Collection<?> collection) {
+        out.writeVarLong(collection.size());
+        for (Object element : collection) {
+            write(out, element);
+        }
+    }
+
+    private static void writeBytes(Output out, byte[] bytes) {
+        out.writeVarLong(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] readBytes(Input in) {
+        return in.read(readSize(in, 1));
+    }
+
+    /**
+     * 读取长度或元素个数，在分配之前校验：每个元素至少占 bytesPerElement 个字节，
+     * 超过剩余字节数说明数据已损坏，避免按损坏的长度分配出超大的数组
+     */
+    private static int readSize(Input in, int bytesPerElement) {
+        long size = in.readVarLong();
+        if (size < 0 || size > in.remaining() / bytesPerElement) {
+            throw new IllegalArgumentException("invalid size: " + size + ", remaining bytes: " + in.remaining());
+        }
+        return (int) size;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 不做同步的ByteArrayOutputStream
+     */
+    static final class Output {
+
+        private byte[] buf = new byte[64];
+
+        private int count;
+
+        void write(byte b) {
+            ensure(1);
+            buf[count++] = b;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buf[count++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buf[count++] = (byte) value;
+        }
+
+        void writeFixedLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[count++] = (byte) (value >>> shift);
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[count];
+            System.arraycopy(buf, 0, result, 0, count);
+            return result;
+        }
+
+        private void ensure(int extra) {
+            if (count + extra > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length << 1, count + extra)];
+                System.arraycopy(buf, 0, bigger, 0, count);
+                buf = bigger;
+            }
+        }
+    }
+
+    static final class Input {
+
+        private final byte[] buf;
+
+        private int pos;
+
+        Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte read() {
+            if (pos >= buf.length) {
+                throw new IllegalArgumentException("unexpected end of data");
+            }
+            return buf[pos++];
+        }
+
+        byte[] read(int length) {
+            if (length < 0 || pos + length > buf.length) {
+                throw new IllegalArgumentException("unexpected end of data");
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(buf, pos, result, 0, length);
+            pos += length;
+            return result;
+        }
+
+        int remaining() {
+            return buf.length - pos;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = read();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        long readFixedLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (read() & 0xff);
+            }
+            return result;
+        }
+    }
+}
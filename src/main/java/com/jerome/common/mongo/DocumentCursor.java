@@ -0,0 +1,118 @@
+package com.jerome.common.mongo;
+
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 流式读取查询结果，代替把整个游标读进 List
+ * <p>
+ * 每次只在内存中保留一批(batchSize)文档，读完自动关闭；提前结束时调用 close() 释放服务端游标。
+ * 用法：
+ * <pre>
+ * try (DocumentCursor cursor = mongoUtil.iterate("sys_user", where, projection, sort, 1000)) {
+ *     while (cursor.hasNext()) {
+ *         Document doc = cursor.next();
+ *     }
+ * }
+ * </pre>
+ * 或者 try (Stream&lt;Document&gt; stream = mongoUtil.stream(...)) { ... }，流关闭时关闭游标。
+ * <p>
+ * 不是线程安全的，只能在一个线程中使用。
+ *
+ * @author jerome
+ */
+public class DocumentCursor implements Iterator<Document>, Closeable {
+
+	/**
+	 * 默认每批从服务端取的文档数
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final MongoCursor<Document> cursor;
+
+	private boolean closed;
+
+	private long count;
+
+	public DocumentCursor(MongoCursor<Document> cursor) {
+		this.cursor = cursor;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (cursor.hasNext()) {
+			return true;
+		}
+		close();
+		return false;
+	}
+
+	@Override
+	public Document next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		count++;
+		return cursor.next();
+	}
+
+	/**
+	 * 逐个处理文档，handler 返回 false 时提前结束并关闭游标
+	 * 
+	 * @param handler
+	 * @return 处理的文档数
+	 */
+	public long each(Predicate<Document> handler) {
+		long handled = 0;
+		try {
+			while (hasNext()) {
+				handled++;
+				if (!handler.test(next())) {
+					break;
+				}
+			}
+		} finally {
+			close();
+		}
+		return handled;
+	}
+
+	/**
+	 * 转成顺序流，流关闭时关闭游标
+	 */
+	public Stream<Document> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+				false).onClose(this::close);
+	}
+
+	/**
+	 * 已经读取的文档数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			cursor.close();
+		}
+	}
+}
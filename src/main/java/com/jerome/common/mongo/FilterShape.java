@@ -0,0 +1,124 @@
+package com.jerome.common.mongo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把查询条件转成只有结构、没有值的字符串，用于慢查询记录和按结构聚合
+ * <p>
+ * 字段名和操作符保留，值替换成 ?；$and/$or/$nor 等文档列表逐个处理，$in/$nin 等值列表整体替换成 [?]；
+ * 聚合管道保留每个阶段名，只展开 $match 阶段的条件。同一结构不同值的查询得到相同的字符串，可以据此找缺少的索引。
+ * 例如 {age: {$gt: 20}, name: "jerome"} 得到 {age: {$gt: ?}, name: ?}。
+ *
+ * @author jerome
+ */
+final class FilterShape {
+
+	private static final String VALUE = "?";
+
+	private FilterShape() {
+	}
+
+	/**
+	 * @param filter
+	 *            条件 Document 或者聚合管道 List&lt;Document&gt;，可以为null
+	 * @param sort
+	 *            排序，可以为null
+	 * @return
+	 */
+	static String of(Object filter, Object sort) {
+		StringBuilder sb = new StringBuilder();
+		if (filter instanceof List) {
+			pipeline((List<?>) filter, sb);
+		} else if (filter instanceof Map) {
+			document((Map<?, ?>) filter, sb);
+		}
+		if (sort instanceof Map && !((Map<?, ?>) sort).isEmpty()) {
+			sb.append(sb.length() == 0 ? "" : " ").append("sort={");
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) sort).entrySet()) {
+				sb.append(first ? "" : ", ").append(entry.getKey()).append(": ").append(entry.getValue());
+				first = false;
+			}
+			sb.append('}');
+		}
+		return sb.toString();
+	}
+
+	private static void pipeline(List<?> stages, StringBuilder sb) {
+		sb.append('[');
+		boolean first = true;
+		for (Object stage : stages) {
+			if (!first) {
+				sb.append(", ");
+			}
+			first = false;
+			if (!(stage instanceof Map)) {
+				sb.append(VALUE);
+				continue;
+			}
+			sb.append('{');
+			boolean firstKey = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) stage).entrySet()) {
+				if (!firstKey) {
+					sb.append(", ");
+				}
+				firstKey = false;
+				sb.append(entry.getKey());
+				if ("$match".equals(entry.getKey()) && entry.getValue() instanceof Map) {
+					sb.append(": ");
+					document((Map<?, ?>) entry.getValue(), sb);
+				}
+			}
+			sb.append('}');
+		}
+		sb.append(']');
+	}
+
+	private static void document(Map<?, ?> document, StringBuilder sb) {
+		sb.append('{');
+		boolean first = true;
+		for (Map.Entry<?, ?> entry : document.entrySet()) {
+			if (!first) {
+				sb.append(", ");
+			}
+			first = false;
+			sb.append(entry.getKey()).append(": ");
+			value(entry.getValue(), sb);
+		}
+		sb.append('}');
+	}
+
+	private static void value(Object value, StringBuilder sb) {
+		if (value instanceof Map) {
+			document((Map<?, ?>) value, sb);
+		} else if (value instanceof List && isDocumentList((List<?>) value)) {
+			sb.append('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first) {
+					sb.append(", ");
+				}
+				first = false;
+				document((Map<?, ?>) item, sb);
+			}
+			sb.append(']');
+		} else if (value instanceof List) {
+			sb.append('[').append(VALUE).append(']');
+		} else {
+			sb.append(VALUE);
+		}
+	}
+
+	private static boolean isDocumentList(List<?> list) {
+		if (list.isEmpty()) {
+			return false;
+		}
+		for (Object item : list) {
+			if (!(item instanceof Map)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,388 @@
+package com.jerome.common.mongo;
+
+import com.jerome.threadPool.NamedThreadFactory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 批量写缓冲，代替循环调用 insert/updateOrInsertOne
+ * <p>
+ * insert/upsert/delete 先按集合放入缓冲区，一个集合攒够 maxBatchSize 条时由调用线程立即写入(同时起到限流作用)，
+ * 不满的缓冲区由后台线程在第一条写入 lingerMillis 之后写入。每批用一次无序(ordered=false)的 bulkWrite 提交，
+ * 一条失败不影响同批其他写入，服务端也可以并行执行。
+ * <p>
+ * 无序写入时同一批内的执行顺序不确定，所以一批里只放同一类写入：加入的写入和缓冲区里的类型不同(如 insert 之后 delete)，
+ * 或者 upsert 的条件和缓冲区里某条 upsert 相同时，先把缓冲区写掉再加入。同一个集合的批按加入顺序依次写入，
+ * 所以同一个线程对同一个集合的写入按调用顺序生效；不同线程之间的先后仍由调用方保证。
+ * <p>
+ * 每批的结果(插入、匹配、修改、删除、upsert 数量和每条失败的下标、错误码、错误信息)通过 listener 回调，并累计到总数中。
+ * 用完调用 close()，写入剩余的缓冲。
+ *
+ * @author jerome
+ */
+public class MongoBulkWriter implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MongoBulkWriter.class.getName());
+
+	private final MongoUtilI mongoUtil;
+
+	private final int maxBatchSize;
+
+	private final long lingerMillis;
+
+	private final Map<String, Buffer> buffers = new HashMap<String, Buffer>();
+
+	private final ScheduledExecutorService flusher;
+
+	private volatile Consumer<BatchResult> listener = result -> {
+		if (!result.isSuccess()) {
+			LOG.warn("mongo bulk write failed {}", result);
+		}
+	};
+
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failedRequests = new LongAdder();
+
+	private volatile boolean closed;
+
+	/**
+	 * @param mongoUtil
+	 *            数据源
+	 * @param maxBatchSize
+	 *            每批最多的写入数，一个集合攒够时立即写入
+	 * @param lingerMillis
+	 *            不满一批时最多等待多久写入，小于等于0表示只在满批和 flush() 时写入
+	 */
+	public MongoBulkWriter(MongoUtilI mongoUtil, int maxBatchSize, long lingerMillis) {
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+		}
+		this.mongoUtil = mongoUtil;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerMillis = lingerMillis;
+		if (lingerMillis > 0) {
+			flusher = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("mongo-bulk-flusher", true));
+			long interval = Math.max(1, lingerMillis / 2);
+			flusher.scheduleWithFixedDelay(this::flushExpired, interval, interval, TimeUnit.MILLISECONDS);
+		} else {
+			flusher = null;
+		}
+	}
+
+	/**
+	 * @param listener
+	 *            每批写入完成后在写入线程中回调，默认只记录失败的批(warn)
+	 */
+	public void setListener(Consumer<BatchResult> listener) {
+		this.listener = listener;
+	}
+
+	public void insert(String collectionName, Document document) {
+		add(collectionName, new InsertOneModel<Document>(document));
+	}
+
+	/**
+	 * 同 updateOrInsertOne：按条件 $set 一条，不存在时插入
+	 */
+	public void upsert(String collectionName, Document where, Document update) {
+		add(collectionName, new UpdateOneModel<Document>(where, new Document("$set", update), new UpdateOptions().upsert(true)));
+	}
+
+	/**
+	 * 删除满足条件的所有文档
+	 */
+	public void delete(String collectionName, Document where) {
+		add(collectionName, new DeleteManyModel<Document>(where));
+	}
+
+	public void add(String collectionName, WriteModel<Document> request) {
+		if (closed) {
+			throw new IllegalStateException("bulk writer has been closed");
+		}
+		Buffer buffer;
+		synchronized (buffers) {
+			buffer = buffers.get(collectionName);
+			if (buffer == null) {
+				buffer = new Buffer();
+				buffers.put(collectionName, buffer);
+			}
+		}
+		// 写入也在缓冲区的锁内，同一个集合的批按顺序写入
+		synchronized (buffer) {
+			if (buffer.conflicts(request)) {
+				write(collectionName, buffer.take());
+			}
+			buffer.add(request);
+			if (buffer.requests.size() >= maxBatchSize) {
+				write(collectionName, buffer.take());
+			}
+		}
+	}
+
+	/**
+	 * 立即写入所有缓冲
+	 */
+	public void flush() {
+		flush(Long.MAX_VALUE);
+	}
+
+	private void flushExpired() {
+		try {
+			flush(System.currentTimeMillis() - lingerMillis);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * 写入第一条加入时间早于等于 firstAddedBefore 的缓冲
+	 */
+	private void flush(long firstAddedBefore) {
+		Map<String, Buffer> snapshot;
+		synchronized (buffers) {
+			snapshot = new HashMap<String, Buffer>(buffers);
+		}
+		for (Map.Entry<String, Buffer> entry : snapshot.entrySet()) {
+			Buffer buffer = entry.getValue();
+			synchronized (buffer) {
+				if (!buffer.requests.isEmpty() && buffer.firstAddedAt <= firstAddedBefore) {
+					write(entry.getKey(), buffer.take());
+				}
+			}
+		}
+	}
+
+	private void write(String collectionName, List<WriteModel<Document>> batch) {
+		long start = System.currentTimeMillis();
+		BatchResult result;
+		try {
+			BulkWriteResult writeResult = mongoUtil.bulkWrite(collectionName, batch);
+			result = new BatchResult(collectionName, batch.size(), writeResult, Collections.<BulkWriteError>emptyList(),
+					null, System.currentTimeMillis() - start);
+		} catch (MongoBulkWriteException e) {
+			// 无序写入时其他请求已经执行，结果里只有成功的部分
+			result = new BatchResult(collectionName, batch.size(), e.getWriteResult(), e.getWriteErrors(), e,
+					System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			result = new BatchResult(collectionName, batch.size(), null, Collections.<BulkWriteError>emptyList(), e,
+					System.currentTimeMillis() - start);
+		}
+		batches.increment();
+		requests.add(batch.size());
+		failedRequests.add(result.getFailed());
+		Consumer<BatchResult> l = listener;
+		if (l != null) {
+			try {
+				l.accept(result);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * 已经提交的写入数
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	public long getFailedRequests() {
+		return failedRequests.sum();
+	}
+
+	/**
+	 * 写入剩余缓冲，停止后台线程
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+	}
+
+	private static final class Buffer {
+
+		List<WriteModel<Document>> requests = new ArrayList<WriteModel<Document>>();
+
+		long firstAddedAt;
+
+		/**
+		 * 缓冲区里写入的类型
+		 */
+		Class<?> type;
+
+		/**
+		 * 缓冲区里 upsert 的条件
+		 */
+		final Set<Object> updateFilters = new HashSet<Object>();
+
+		/**
+		 * 和缓冲区里的写入放在同一批时先后可能被打乱
+		 */
+		boolean conflicts(WriteModel<Document> request) {
+			if (requests.isEmpty()) {
+				return false;
+			}
+			if (request.getClass() != type) {
+				return true;
+			}
+			return request instanceof UpdateOneModel
+					&& updateFilters.contains(((UpdateOneModel<Document>) request).getFilter());
+		}
+
+		void add(WriteModel<Document> request) {
+			if (requests.isEmpty()) {
+				firstAddedAt = System.currentTimeMillis();
+				type = request.getClass();
+			}
+			if (request instanceof UpdateOneModel) {
+				updateFilters.add(((UpdateOneModel<Document>) request).getFilter());
+			}
+			requests.add(request);
+		}
+
+		List<WriteModel<Document>> take() {
+			List<WriteModel<Document>> taken = requests;
+			requests = new ArrayList<WriteModel<Document>>();
+			updateFilters.clear();
+			return taken;
+		}
+	}
+
+	/**
+	 * 一批写入的结果
+	 */
+	public static final class BatchResult {
+
+		private final String collectionName;
+		private final int size;
+		private final BulkWriteResult writeResult;
+		private final List<BulkWriteError> writeErrors;
+		private final Exception exception;
+		private final long costMillis;
+
+		BatchResult(String collectionName, int size, BulkWriteResult writeResult, List<BulkWriteError> writeErrors,
+				Exception exception, long costMillis) {
+			this.collectionName = collectionName;
+			this.size = size;
+			this.writeResult = writeResult;
+			this.writeErrors = writeErrors;
+			this.exception = exception;
+			this.costMillis = costMillis;
+		}
+
+		public String getCollectionName() {
+			return collectionName;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public boolean isSuccess() {
+			return exception == null;
+		}
+
+		/**
+		 * 失败的写入数：有写入错误时为错误条数，整批失败(网络等)时为批大小
+		 */
+		public int getFailed() {
+			if (exception == null) {
+				return 0;
+			}
+			return writeResult == null ? size : writeErrors.size();
+		}
+
+		public int getInserted() {
+			return writeResult == null || !writeResult.wasAcknowledged() ? 0 : writeResult.getInsertedCount();
+		}
+
+		public int getMatched() {
+			return writeResult == null || !writeResult.wasAcknowledged() ? 0 : writeResult.getMatchedCount();
+		}
+
+		public int getModified() {
+			return writeResult == null || !writeResult.wasAcknowledged() || !writeResult.isModifiedCountAvailable()
+					? 0 : writeResult.getModifiedCount();
+		}
+
+		public int getDeleted() {
+			return writeResult == null || !writeResult.wasAcknowledged() ? 0 : writeResult.getDeletedCount();
+		}
+
+		public int getUpserted() {
+			return writeResult == null || !writeResult.wasAcknowledged() ? 0 : writeResult.getUpserts().size();
+		}
+
+		/**
+		 * 每条失败写入的下标(在本批中的位置)、错误码和错误信息
+		 */
+		public List<BulkWriteError> getWriteErrors() {
+			return writeErrors;
+		}
+
+		/**
+		 * 整批失败或者有写入错误时的异常
+		 */
+		public Exception getException() {
+			return exception;
+		}
+
+		public long getCostMillis() {
+			return costMillis;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(collectionName).append(" size=").append(size).append(" inserted=").append(getInserted())
+					.append(" matched=").append(getMatched()).append(" modified=").append(getModified())
+					.append(" deleted=").append(getDeleted()).append(" upserted=").append(getUpserted())
+					.append(" failed=").append(getFailed()).append(" cost=").append(costMillis).append("ms");
+			for (BulkWriteError error : writeErrors) {
+				sb.append("\n  [").append(error.getIndex()).append("] code=").append(error.getCode()).append(" ")
+						.append(error.getMessage());
+			}
+			if (exception != null && writeErrors.isEmpty()) {
+				sb.append(" error=").append(exception);
+			}
+			return sb.toString();
+		}
+	}
+}
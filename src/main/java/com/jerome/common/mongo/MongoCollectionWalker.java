@@ -0,0 +1,222 @@
+package com.jerome.common.mongo;
+
+import com.jerome.threadPool.ThreadPoolFactory;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 多线程遍历整个集合(导出、迁移、重建数据)
+ * <p>
+ * 先按有索引的键(默认 _id)取 parts - 1 个分割点，把集合切成 [负无穷, b1)、[b1, b2) ... [bn, 正无穷) 几段，
+ * 每段在一个工作线程里按键顺序流式读取(iterate)，各段之间互不重叠，也不需要 skip。
+ * 分割点用 sort + skip 在键的索引上定位：每个分割点从上一个分割点开始 skip count/parts 条，
+ * 服务端要逐条走过被跳过的索引项，parts - 1 次查询合计大约把满足条件的索引项扫一遍；
+ * 有 where 时还要逐条判断条件，条件用不上索引时要读出文档，代价接近再遍历一遍集合。
+ * MongoDB 3.4 以上可以用 $bucketAuto、分片集群可以用 splitVector 更快地取分割点，这里为了兼容驱动 3.0.3 和老版本服务端没有使用。
+ * <p>
+ * 所有文档都要有这个键；handler 会被多个线程同时调用，必须是线程安全的。
+ * 用法：
+ * <pre>
+ * long total = new MongoCollectionWalker(mongoUtil, 4).walk("sys_user", null, doc -> ...);
+ * </pre>
+ *
+ * @author jerome
+ */
+public class MongoCollectionWalker {
+
+	private final MongoUtilI mongoUtil;
+
+	private final int threads;
+
+	private String key = "_id";
+
+	private int parts;
+
+	private int batchSize = DocumentCursor.DEFAULT_BATCH_SIZE;
+
+	private Document projection;
+
+	/**
+	 * @param mongoUtil
+	 *            数据源
+	 * @param threads
+	 *            工作线程数，默认也切成 threads 段
+	 */
+	public MongoCollectionWalker(MongoUtilI mongoUtil, int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.mongoUtil = mongoUtil;
+		this.threads = threads;
+		this.parts = threads;
+	}
+
+	/**
+	 * @param key
+	 *            切分用的键，要有索引
+	 */
+	public MongoCollectionWalker setKey(String key) {
+		this.key = key;
+		return this;
+	}
+
+	/**
+	 * @param parts
+	 *            切成几段，比线程数多时段之间的负载更均衡
+	 */
+	public MongoCollectionWalker setParts(int parts) {
+		if (parts <= 0) {
+			throw new IllegalArgumentException("parts must be positive: " + parts);
+		}
+		this.parts = parts;
+		return this;
+	}
+
+	public MongoCollectionWalker setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param projection
+	 *            返回的字段，null表示全部字段
+	 */
+	public MongoCollectionWalker setProjection(Document projection) {
+		this.projection = projection;
+		return this;
+	}
+
+	/**
+	 * 遍历满足条件的所有文档，所有段处理完后返回
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件，null表示全部
+	 * @param handler
+	 *            处理每个文档，多个线程同时调用
+	 * @return 处理的文档数
+	 * @throws ExecutionException
+	 *             某一段读取或处理失败，其余段仍会执行完
+	 */
+	public long walk(String collectionName, Document where, Consumer<Document> handler)
+			throws InterruptedException, ExecutionException {
+		List<Document> ranges = ranges(splitPoints(collectionName, where, parts));
+		LongAdder handled = new LongAdder();
+		int poolSize = Math.min(threads, ranges.size());
+		ExecutorService executor = new ThreadPoolFactory("mongo-walk-" + collectionName).setCorePoolSize(poolSize)
+				.setMaxPoolSize(poolSize).setQueueCapacity(ranges.size()).setDaemon(true).newExecutor();
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (Document range : ranges) {
+				Document filter = where == null || where.isEmpty() ? range : new Document("$and", Arrays.asList(where, range));
+				futures.add(executor.submit(() -> {
+					try (DocumentCursor cursor = mongoUtil.iterate(collectionName, filter, projection,
+							new Document(key, 1), batchSize)) {
+						while (cursor.hasNext()) {
+							handler.accept(cursor.next());
+							handled.increment();
+						}
+					}
+				}));
+			}
+			ExecutionException failure = null;
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return handled.sum();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * 按键把满足条件的文档大致等分成 parts 段的分割点，升序、不重复
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param parts
+	 *            段数
+	 * @return 最多 parts - 1 个分割点
+	 */
+	public List<Object> splitPoints(String collectionName, Document where, int parts) {
+		List<Object> points = new ArrayList<Object>();
+		if (parts <= 1) {
+			return points;
+		}
+		Long count = mongoUtil.count(collectionName, where == null ? new Document() : where);
+		if (count == null || count < parts) {
+			return points;
+		}
+		Document base = where == null ? new Document() : where;
+		int step = (int) (count / parts);
+		Object previous = null;
+		for (int i = 1; i < parts; i++) {
+			// 从上一个分割点开始跳，每次只跳过一段
+			Document filter = base;
+			if (previous != null) {
+				Document after = new Document(key, new Document("$gte", previous));
+				filter = base.isEmpty() ? after : new Document("$and", Arrays.asList(base, after));
+			}
+			List<Document> found = mongoUtil.find(collectionName, filter, new Document(key, 1), 1, step);
+			if (found == null || found.isEmpty()) {
+				break;
+			}
+			Object point = found.get(0).get(key);
+			if (point == null) {
+				continue;
+			}
+			previous = point;
+			// 键不唯一时相邻分割点可能相同，去掉空段
+			if (points.isEmpty() || !point.equals(points.get(points.size() - 1))) {
+				points.add(point);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * 由分割点生成每段的条件
+	 */
+	List<Document> ranges(List<Object> points) {
+		List<Document> ranges = new ArrayList<Document>();
+		Object lower = null;
+		for (Object point : points) {
+			ranges.add(range(lower, point));
+			lower = point;
+		}
+		ranges.add(range(lower, null));
+		return ranges;
+	}
+
+	private Document range(Object lower, Object upper) {
+		Document condition = new Document();
+		if (lower != null) {
+			condition.append("$gte", lower);
+		}
+		if (upper != null) {
+			condition.append("$lt", upper);
+		}
+		// 只有一段时不加条件
+		return condition.isEmpty() ? new Document() : new Document(key, condition);
+	}
+}
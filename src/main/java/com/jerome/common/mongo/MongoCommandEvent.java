@@ -0,0 +1,76 @@
+package com.jerome.common.mongo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次命令的执行结果
+ *
+ * @author jerome
+ */
+public class MongoCommandEvent {
+
+	private final String dataSourceName;
+	private final String collectionName;
+	private final String operation;
+	private final Object filter;
+	private final Object sort;
+	private final long durationNanos;
+	private final Throwable error;
+
+	private String filterShape;
+
+	MongoCommandEvent(String dataSourceName, String collectionName, String operation, Object filter, Object sort,
+			long durationNanos, Throwable error) {
+		this.dataSourceName = dataSourceName;
+		this.collectionName = collectionName;
+		this.operation = operation;
+		this.filter = filter;
+		this.sort = sort;
+		this.durationNanos = durationNanos;
+		this.error = error;
+	}
+
+	public String getDataSourceName() {
+		return dataSourceName;
+	}
+
+	public String getCollectionName() {
+		return collectionName;
+	}
+
+	/**
+	 * 操作名，如 find、count、updateOne、aggregate
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * 条件的结构，值都替换成 ?，排序原样保留，见 FilterShape；没有条件的操作为空字符串
+	 */
+	public String getFilterShape() {
+		if (filterShape == null) {
+			filterShape = FilterShape.of(filter, sort);
+		}
+		return filterShape;
+	}
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public long getDurationMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * 失败时的异常，成功时为null
+	 */
+	public Throwable getError() {
+		return error;
+	}
+}
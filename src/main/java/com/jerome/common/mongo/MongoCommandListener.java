@@ -0,0 +1,13 @@
+package com.jerome.common.mongo;
+
+/**
+ * MongoUtil 每次执行命令后的回调，通过 MongoUtil.addCommandListener 注册
+ * <p>
+ * 在执行命令的线程中同步调用，要尽快返回；抛出的异常只打印，不影响命令的结果。
+ *
+ * @author jerome
+ */
+public interface MongoCommandListener {
+
+	void onCommand(MongoCommandEvent event);
+}
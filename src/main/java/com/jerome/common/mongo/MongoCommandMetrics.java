@@ -0,0 +1,307 @@
+package com.jerome.common.mongo;
+
+import com.jerome.common.util.LatencyMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 命令耗时统计和慢查询记录，每个 MongoUtil 默认注册一个(MongoUtil.getCommandMetrics)
+ * <p>
+ * 耗时按 "集合.操作" 分别记入直方图(复用 LatencyMetrics)。
+ * 超过 slowThresholdMillis 的命令记录条件结构(值已替换成 ?，见 FilterShape)：最近 maxSlowCommands 条保留明细，
+ * 另外按 集合+操作+条件结构 累计次数和耗时，次数多、耗时长的结构通常就是缺少索引的查询。
+ * snapshot() 返回当前所有统计的快照。
+ *
+ * @author jerome
+ */
+public class MongoCommandMetrics implements MongoCommandListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MongoCommandMetrics.class.getName());
+
+	private final LatencyMetrics latency = new LatencyMetrics("mongo");
+
+	private final ConcurrentMap<String, ShapeCounter> slowShapes = new ConcurrentHashMap<String, ShapeCounter>();
+
+	private final Deque<SlowCommand> slowCommands = new ArrayDeque<SlowCommand>();
+
+	private volatile long slowThresholdNanos;
+
+	private volatile int maxSlowCommands = 100;
+
+	/**
+	 * @param slowThresholdMillis
+	 *            慢命令阈值，小于等于0表示不记录慢命令
+	 */
+	public MongoCommandMetrics(long slowThresholdMillis) {
+		setSlowThresholdMillis(slowThresholdMillis);
+	}
+
+	public void setSlowThresholdMillis(long slowThresholdMillis) {
+		this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+	}
+
+	/**
+	 * @param maxSlowCommands
+	 *            保留明细的最近慢命令条数
+	 */
+	public void setMaxSlowCommands(int maxSlowCommands) {
+		this.maxSlowCommands = maxSlowCommands;
+	}
+
+	@Override
+	public void onCommand(MongoCommandEvent event) {
+		String op = event.getCollectionName() + "." + event.getOperation();
+		// record 用 start 计算耗时，按事件的耗时倒推 start
+		latency.record(op, null, System.nanoTime() - event.getDurationNanos(), event.isSuccess());
+		long threshold = slowThresholdNanos;
+		if (threshold <= 0 || event.getDurationNanos() < threshold) {
+			return;
+		}
+		String shape = event.getFilterShape();
+		SlowCommand slow = new SlowCommand(System.currentTimeMillis(), event.getDataSourceName(),
+				event.getCollectionName(), event.getOperation(), shape, event.getDurationMillis(), event.isSuccess());
+		LOG.warn("slow mongo command {}", slow);
+		String key = op + " " + shape;
+		ShapeCounter counter = slowShapes.get(key);
+		if (counter == null) {
+			ShapeCounter created = new ShapeCounter(event.getCollectionName(), event.getOperation(), shape);
+			counter = slowShapes.putIfAbsent(key, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.add(slow.getCostMillis());
+		synchronized (slowCommands) {
+			slowCommands.addLast(slow);
+			while (slowCommands.size() > maxSlowCommands) {
+				slowCommands.removeFirst();
+			}
+		}
+	}
+
+	public Snapshot snapshot() {
+		List<SlowCommand> recent;
+		synchronized (slowCommands) {
+			recent = new ArrayList<SlowCommand>(slowCommands);
+		}
+		List<SlowShape> shapes = new ArrayList<SlowShape>();
+		for (ShapeCounter counter : slowShapes.values()) {
+			shapes.add(new SlowShape(counter.collectionName, counter.operation, counter.shape, counter.count.sum(),
+					counter.totalMillis.sum(), counter.maxMillis.get()));
+		}
+		// 总耗时最多的排在前面
+		shapes.sort((a, b) -> Long.compare(b.getTotalMillis(), a.getTotalMillis()));
+		return new Snapshot(latency.snapshot(), Collections.unmodifiableList(recent),
+				Collections.unmodifiableList(shapes));
+	}
+
+	/**
+	 * 清空所有统计
+	 */
+	public void reset() {
+		latency.reset();
+		slowShapes.clear();
+		synchronized (slowCommands) {
+			slowCommands.clear();
+		}
+	}
+
+	private static final class ShapeCounter {
+
+		final String collectionName;
+		final String operation;
+		final String shape;
+		final LongAdder count = new LongAdder();
+		final LongAdder totalMillis = new LongAdder();
+		final AtomicLong maxMillis = new AtomicLong();
+
+		ShapeCounter(String collectionName, String operation, String shape) {
+			this.collectionName = collectionName;
+			this.operation = operation;
+			this.shape = shape;
+		}
+
+		void add(long millis) {
+			count.increment();
+			totalMillis.add(millis);
+			maxMillis.accumulateAndGet(millis, Math::max);
+		}
+	}
+
+	/**
+	 * 统计快照
+	 */
+	public static final class Snapshot {
+
+		private final Map<String, LatencyMetrics.Snapshot> latency;
+		private final List<SlowCommand> slowCommands;
+		private final List<SlowShape> slowShapes;
+
+		Snapshot(Map<String, LatencyMetrics.Snapshot> latency, List<SlowCommand> slowCommands,
+				List<SlowShape> slowShapes) {
+			this.latency = latency;
+			this.slowCommands = slowCommands;
+			this.slowShapes = slowShapes;
+		}
+
+		/**
+		 * @return key为 集合.操作，如 sys_user.find
+		 */
+		public Map<String, LatencyMetrics.Snapshot> getLatency() {
+			return latency;
+		}
+
+		/**
+		 * 最近的慢命令，按时间先后
+		 */
+		public List<SlowCommand> getSlowCommands() {
+			return slowCommands;
+		}
+
+		/**
+		 * 按 集合+操作+条件结构 累计的慢命令，总耗时多的在前
+		 */
+		public List<SlowShape> getSlowShapes() {
+			return slowShapes;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<String, LatencyMetrics.Snapshot> entry : latency.entrySet()) {
+				sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+			}
+			for (SlowShape shape : slowShapes) {
+				sb.append("slow ").append(shape).append('\n');
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * 一条慢命令
+	 */
+	public static final class SlowCommand {
+
+		private final long time;
+		private final String dataSourceName;
+		private final String collectionName;
+		private final String operation;
+		private final String filterShape;
+		private final long costMillis;
+		private final boolean success;
+
+		SlowCommand(long time, String dataSourceName, String collectionName, String operation, String filterShape,
+				long costMillis, boolean success) {
+			this.time = time;
+			this.dataSourceName = dataSourceName;
+			this.collectionName = collectionName;
+			this.operation = operation;
+			this.filterShape = filterShape;
+			this.costMillis = costMillis;
+			this.success = success;
+		}
+
+		/**
+		 * 结束时间，毫秒
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public String getDataSourceName() {
+			return dataSourceName;
+		}
+
+		public String getCollectionName() {
+			return collectionName;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public String getFilterShape() {
+			return filterShape;
+		}
+
+		public long getCostMillis() {
+			return costMillis;
+		}
+
+		public boolean isSuccess() {
+			return success;
+		}
+
+		@Override
+		public String toString() {
+			return dataSourceName + " " + collectionName + "." + operation + " " + filterShape + " cost=" + costMillis
+					+ "ms success=" + success;
+		}
+	}
+
+	/**
+	 * 同一结构的慢命令累计
+	 */
+	public static final class SlowShape {
+
+		private final String collectionName;
+		private final String operation;
+		private final String filterShape;
+		private final long count;
+		private final long totalMillis;
+		private final long maxMillis;
+
+		SlowShape(String collectionName, String operation, String filterShape, long count, long totalMillis,
+				long maxMillis) {
+			this.collectionName = collectionName;
+			this.operation = operation;
+			this.filterShape = filterShape;
+			this.count = count;
+			this.totalMillis = totalMillis;
+			this.maxMillis = maxMillis;
+		}
+
+		public String getCollectionName() {
+			return collectionName;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public String getFilterShape() {
+			return filterShape;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalMillis() {
+			return totalMillis;
+		}
+
+		public long getMaxMillis() {
+			return maxMillis;
+		}
+
+		@Override
+		public String toString() {
+			return collectionName + "." + operation + " " + filterShape + " count=" + count + " total=" + totalMillis
+					+ "ms max=" + maxMillis + "ms";
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package com.jerome.common.mongo;
+
+import com.jerome.common.util.GetCfgUtils;
+import com.jerome.common.util.NumberUtils;
+import com.mongodb.Bytes;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一个MongoDB数据源：按配置前缀创建的 MongoClient 和 MongoDatabase
+ * <p>
+ * 配置项(name 为前缀，如 mongodb1)：
+ * <pre>
+ * name.host / name.port / name.dbName / name.userName / name.pwd    连接信息，userName 为空时不认证
+ * name.pool.maxSize=100             每个服务器的最大连接数
+ * name.pool.minSize=0               每个服务器保持的最少连接数
+ * name.pool.waitQueueMultiple=5     等待连接的线程最多为 maxSize * waitQueueMultiple，超过时直接抛出 MongoWaitQueueFullException
+ * name.pool.maxWaitMillis=10000     等待连接的最长时间
+ * name.pool.maxIdleMillis=60000     连接空闲多久后关闭，0表示不关闭
+ * name.pool.maxLifeMillis=0         连接最长使用多久，0表示不限制
+ * name.connectTimeoutMillis=10000
+ * name.socketTimeoutMillis=0
+ * name.serverSelectionTimeoutMillis=30000   服务器不可用时操作最多等待多久
+ * name.slowCommandMillis=100        超过这个耗时的命令记为慢命令，见 MongoCommandMetrics
+ * </pre>
+ * MongoClient 本身是线程安全的并且自带连接池，每个数据源只创建一个，第一次使用时创建(双重检查加锁)，close() 后再使用会重新创建。
+ * <p>
+ * 连接池状态通过驱动注册的JMX MBean读取(MongoClientOptions.description 设为数据源名，用来区分不同数据源的连接池)。
+ *
+ * @author jerome
+ */
+public class MongoDataSource {
+
+	private final String name;
+
+	private volatile MongoClient mongoClient;
+
+	private volatile MongoDatabase mongoDataBase;
+
+	public MongoDataSource(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 根据 collectionName 获取 collection
+	 *
+	 * @param collectionName
+	 * @return
+	 */
+	public MongoCollection<Document> getCollection(String collectionName) {
+		return getDatabase().getCollection(collectionName);
+	}
+
+	public MongoDatabase getDatabase() {
+		MongoDatabase database = mongoDataBase;
+		if (database == null) {
+			synchronized (this) {
+				database = mongoDataBase;
+				if (database == null) {
+					open();
+					database = mongoDataBase;
+				}
+			}
+		}
+		return database;
+	}
+
+	public MongoClient getClient() {
+		getDatabase();
+		return mongoClient;
+	}
+
+	/**
+	 * 创建客户端，已经创建时不重复创建
+	 */
+	public synchronized void open() {
+		if (mongoClient != null) {
+			return;
+		}
+		String host = value("host");
+		int port = NumberUtils.toInt(value("port"), ServerAddress.defaultPort());
+		String userName = value("userName");
+		String dbName = value("dbName");
+		ServerAddress addr = new ServerAddress(host, port);
+		MongoClient client;
+		if (userName != null && userName.length() > 0) {
+			// 需要权限认证的方式
+			MongoCredential credential = MongoCredential.createCredential(userName, dbName, value("pwd").toCharArray());
+			client = new MongoClient(addr, Collections.singletonList(credential), buildOptions());
+		} else {
+			// 无需权限认证的方式
+			client = new MongoClient(addr, buildOptions());
+		}
+		client.addOption(Bytes.QUERYOPTION_SLAVEOK);
+		mongoDataBase = client.getDatabase(dbName);
+		mongoClient = client;
+	}
+
+	/**
+	 * 关闭客户端和连接池
+	 */
+	public synchronized void close() {
+		MongoClient client = mongoClient;
+		mongoDataBase = null;
+		mongoClient = null;
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	public boolean isOpen() {
+		return mongoClient != null;
+	}
+
+	/**
+	 * 由配置生成客户端参数
+	 */
+	public MongoClientOptions buildOptions() {
+		return MongoClientOptions.builder().description(name)
+				.connectionsPerHost(intValue("pool.maxSize", 100))
+				.minConnectionsPerHost(intValue("pool.minSize", 0))
+				.threadsAllowedToBlockForConnectionMultiplier(intValue("pool.waitQueueMultiple", 5))
+				.maxWaitTime(intValue("pool.maxWaitMillis", 10000))
+				.maxConnectionIdleTime(intValue("pool.maxIdleMillis", 60000))
+				.maxConnectionLifeTime(intValue("pool.maxLifeMillis", 0))
+				.connectTimeout(intValue("connectTimeoutMillis", 10000))
+				.socketTimeout(intValue("socketTimeoutMillis", 0))
+				.serverSelectionTimeout(intValue("serverSelectionTimeoutMillis", 30000))
+				.build();
+	}
+
+	/**
+	 * 当前连接池状态，每个服务器一个，客户端还没有创建时为空
+	 */
+	public List<PoolStats> getPoolStats() {
+		List<PoolStats> result = new ArrayList<PoolStats>();
+		if (mongoClient == null) {
+			return result;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (ObjectName objectName : server.queryNames(new ObjectName("org.mongodb.driver:type=ConnectionPool,*"), null)) {
+				if (!name.equals(objectName.getKeyProperty("description"))) {
+					continue;
+				}
+				result.add(new PoolStats((String) server.getAttribute(objectName, "Host"),
+						(Integer) server.getAttribute(objectName, "Port"),
+						(Integer) server.getAttribute(objectName, "MaxSize"),
+						(Integer) server.getAttribute(objectName, "Size"),
+						(Integer) server.getAttribute(objectName, "CheckedOutCount"),
+						(Integer) server.getAttribute(objectName, "WaitQueueSize")));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return result;
+	}
+
+	private String value(String key) {
+		return GetCfgUtils.getValue(name + "." + key);
+	}
+
+	int intValue(String key, int defaultValue) {
+		return NumberUtils.toInt(value(key), defaultValue);
+	}
+
+	/**
+	 * 一个服务器的连接池状态
+	 */
+	public static final class PoolStats {
+
+		private final String host;
+		private final int port;
+		private final int maxSize;
+		private final int size;
+		private final int checkedOut;
+		private final int waitQueueSize;
+
+		PoolStats(String host, int port, int maxSize, int size, int checkedOut, int waitQueueSize) {
+			this.host = host;
+			this.port = port;
+			this.maxSize = maxSize;
+			this.size = size;
+			this.checkedOut = checkedOut;
+			this.waitQueueSize = waitQueueSize;
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public int getPort() {
+			return port;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		/**
+		 * 已经建立的连接数
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * 正在使用的连接数
+		 */
+		public int getCheckedOut() {
+			return checkedOut;
+		}
+
+		/**
+		 * 等待连接的线程数
+		 */
+		public int getWaitQueueSize() {
+			return waitQueueSize;
+		}
+
+		@Override
+		public String toString() {
+			return host + ":" + port + " checkedOut=" + checkedOut + " size=" + size + "/" + maxSize + " waiting="
+					+ waitQueueSize;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.jerome.common.mongo;
+
+import org.bson.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按键翻页(keyset/seek)的一页结果，代替 find(collectionName, where, limit, skip)
+ * <p>
+ * skip 翻页时服务端要先扫过前面所有的文档，越往后越慢；按键翻页记住上一页最后一条的排序键，
+ * 下一页直接用 (k1 &gt; v1) or (k1 = v1 and k2 &gt; v2) ... 的条件从索引上定位，每页的代价与页码无关。
+ * <p>
+ * 排序键要有索引(与排序一致的复合索引)，且每个文档都有这些字段；排序中没有 _id 时自动追加 _id 保证顺序唯一。
+ * 上一页最后一条的排序键值和排序方式编码成不透明的 token(Base64)，调用方原样传回即可，不要解析。
+ * 用法：
+ * <pre>
+ * String token = null;
+ * do {
+ *     MongoPage page = mongoUtil.findPage("sys_user", where, new Document("age", 1), 100, token);
+ *     ...page.getDocuments()...
+ *     token = page.getNextToken();
+ * } while (token != null);
+ * </pre>
+ *
+ * @author jerome
+ */
+public class MongoPage {
+
+	private static final String ID = "_id";
+
+	private final List<Document> documents;
+
+	private final String nextToken;
+
+	MongoPage(List<Document> documents, String nextToken) {
+		this.documents = documents;
+		this.nextToken = nextToken;
+	}
+
+	/**
+	 * 本页的文档
+	 */
+	public List<Document> getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * 取下一页用的 token，没有下一页时为null
+	 */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+
+	/**
+	 * 实际使用的排序：复制 sort，没有 _id 时按最后一个键的方向追加 _id
+	 *
+	 * @param sort
+	 *            排序，null表示只按 _id 升序
+	 * @return
+	 */
+	static Document keyOrder(Document sort) {
+		Document order = new Document();
+		int direction = 1;
+		if (sort != null) {
+			for (Map.Entry<String, Object> entry : sort.entrySet()) {
+				direction = direction(entry.getKey(), entry.getValue());
+				order.append(entry.getKey(), direction);
+			}
+		}
+		if (!order.containsKey(ID)) {
+			order.append(ID, direction);
+		}
+		return order;
+	}
+
+	/**
+	 * 查询条件：where 加上从 token 位置之后开始的条件
+	 *
+	 * @param where
+	 *            条件，null表示全部
+	 * @param order
+	 *            keyOrder 返回的排序
+	 * @param token
+	 *            上一页的 token，null表示第一页
+	 * @return
+	 */
+	static Document seek(Document where, Document order, String token) {
+		Document base = where == null ? new Document() : where;
+		if (token == null || token.isEmpty()) {
+			return base;
+		}
+		List<Object> values = decode(token, order);
+		List<String> keys = new ArrayList<String>(order.keySet());
+		List<Document> or = new ArrayList<Document>();
+		for (int i = 0; i < keys.size(); i++) {
+			Document branch = new Document();
+			for (int j = 0; j < i; j++) {
+				branch.append(keys.get(j), values.get(j));
+			}
+			String op = ((Integer) order.get(keys.get(i))) > 0 ? "$gt" : "$lt";
+			branch.append(keys.get(i), new Document(op, values.get(i)));
+			or.add(branch);
+		}
+		Document after = or.size() == 1 ? or.get(0) : new Document("$or", or);
+		if (base.isEmpty()) {
+			return after;
+		}
+		return new Document("$and", Arrays.asList(base, after));
+	}
+
+	/**
+	 * 由多取一条的查询结果生成一页
+	 *
+	 * @param fetched
+	 *            按 order 排序、最多 limit + 1 条的结果
+	 * @param order
+	 *            keyOrder 返回的排序
+	 * @param limit
+	 *            每页条数
+	 * @return
+	 */
+	static MongoPage of(List<Document> fetched, Document order, int limit) {
+		if (fetched.size() <= limit) {
+			return new MongoPage(fetched, null);
+		}
+		List<Document> documents = new ArrayList<Document>(fetched.subList(0, limit));
+		return new MongoPage(documents, encode(documents.get(limit - 1), order));
+	}
+
+	static String encode(Document last, Document order) {
+		List<Object> values = new ArrayList<Object>();
+		for (String key : order.keySet()) {
+			values.add(value(last, key));
+		}
+		Document token = new Document("s", order).append("v", values);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toJson().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@SuppressWarnings("unchecked")
+	static List<Object> decode(String token, Document order) {
+		Document decoded;
+		try {
+			decoded = Document.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			throw new IllegalArgumentException("invalid page token: " + token, e);
+		}
+		// 换了排序的 token 定位不到正确的位置
+		if (!order.equals(decoded.get("s"))) {
+			throw new IllegalArgumentException("page token was issued for sort " + decoded.get("s") + ", not " + order);
+		}
+		return (List<Object>) decoded.get("v");
+	}
+
+	/**
+	 * 取字段值，支持 a.b 形式的嵌套字段
+	 */
+	private static Object value(Document document, String key) {
+		Object value = document;
+		for (String part : key.split("\\.")) {
+			if (!(value instanceof Document)) {
+				return null;
+			}
+			value = ((Document) value).get(part);
+		}
+		return value;
+	}
+
+	private static int direction(String key, Object value) {
+		if (value instanceof Number) {
+			int direction = ((Number) value).intValue();
+			if (direction == 1 || direction == -1) {
+				return direction;
+			}
+		}
+		throw new IllegalArgumentException("keyset sort supports only 1/-1: " + key + "=" + value);
+	}
+}
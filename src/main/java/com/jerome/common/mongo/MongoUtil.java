@@ -0,0 +1,454 @@
+package com.jerome.common.mongo;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * MongoDB工具类，每个数据源一个实例，通过 MongoUtilFactory 获取
+ * <p>
+ * 所有方法都是线程安全的，多个线程共用数据源的 MongoClient 和连接池。
+ * 每次命令执行后通知注册的 MongoCommandListener(集合名、操作名、条件、耗时、异常)；
+ * 默认注册一个 MongoCommandMetrics，按 集合.操作 统计耗时分布，并记录超过 name.slowCommandMillis(默认100)的慢命令。
+ * 连接池状态见 getPoolStats。
+ *
+ * @author jerome
+ */
+public class MongoUtil implements MongoUtilI {
+
+	private final MongoDataSource dataSource;
+
+	private final MongoCommandMetrics commandMetrics;
+
+	private final List<MongoCommandListener> listeners = new CopyOnWriteArrayList<MongoCommandListener>();
+
+	public MongoUtil(MongoDataSource dataSource) {
+		this.dataSource = dataSource;
+		this.commandMetrics = new MongoCommandMetrics(dataSource.intValue("slowCommandMillis", 100));
+		listeners.add(commandMetrics);
+	}
+
+	public MongoDataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * 初始化，重新创建客户端
+	 */
+	public void init() {
+		closeMongoClient();
+		getMongoClient();
+	}
+
+	/**
+	 * 关闭资源
+	 */
+	public void close() {
+		closeMongoClient();
+	}
+
+	public void getMongoClient() {
+		try {
+			dataSource.open();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void getMongoDataBase() {
+		try {
+			if (!dataSource.isOpen()) {
+				throw new RuntimeException("MongoClient不能够为空");
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void closeMongoClient() {
+		dataSource.close();
+	}
+
+	/**
+	 * 根据 collectionName 获取 collection
+	 *
+	 * @param collectionName
+	 * @return
+	 */
+	public MongoCollection<Document> getCollection(String collectionName) {
+		return dataSource.getCollection(collectionName);
+	}
+
+	/**
+	 * 插入一个文档
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param document
+	 *            文档
+	 */
+	public void insert(String collectionName, Document document) {
+		if (collectionName != null && !"".equals(collectionName) && document != null) {
+			call("insert", collectionName, null, null, () -> {
+				getCollection(collectionName).insertOne(document);
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * 插入多个文档
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param documentList
+	 *            文档列表
+	 */
+	public void insertMany(String collectionName, List<Document> documentList) {
+		if (collectionName != null && !"".equals(collectionName) && documentList != null && documentList.size() > 0) {
+			call("insertMany", collectionName, null, null, () -> {
+				getCollection(collectionName).insertMany(documentList);
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * 根据条件查找文档列表, 支持排序
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param sort
+	 *            排序
+	 * @param limit
+	 * @return
+	 */
+	public List<Document> find(String collectionName, Document where, Document sort, int limit, int skip) {
+		try {
+			return query(collectionName, where, sort, limit, skip);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * 同 find，异常直接抛出
+	 */
+	private List<Document> query(String collectionName, Document where, Document sort, int limit, int skip) {
+		return call("find", collectionName, where, sort, () -> {
+			FindIterable<Document> iterable = getCollection(collectionName).find(where).sort(sort).skip(skip).limit(limit);
+			try (MongoCursor<Document> cursor = iterable.iterator()) {
+				List<Document> list = new ArrayList<Document>();
+				while (cursor.hasNext()) {
+					list.add(cursor.next());
+				}
+				return list;
+			}
+		});
+	}
+
+	/**
+	 * 聚合查询
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param docs
+	 *            查询条件集合
+	 * @return
+	 */
+	public List<Document> findByAggregate(String collectionName, List<Document> docs) {
+		try {
+			return call("aggregate", collectionName, docs, null, () -> {
+				AggregateIterable<Document> iterable = getCollection(collectionName).aggregate(docs);
+				try (MongoCursor<Document> cursor = iterable.iterator()) {
+					List<Document> list = new ArrayList<Document>();
+					while (cursor.hasNext()) {
+						list.add(cursor.next());
+					}
+					return list;
+				}
+			});
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * 聚合查询
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param matchDoc
+	 *            条件
+	 * @param groupDoc
+	 *            分组
+	 * @return
+	 */
+	public List<Document> findByAggregate(String collectionName, Document matchDoc, Document groupDoc) {
+		List<Document> docs = new ArrayList<>();
+		docs.add(matchDoc);
+		docs.add(groupDoc);
+		return findByAggregate(collectionName, docs);
+	}
+
+	/**
+	 * 根据条件查找文档列表
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param limit
+	 * @return
+	 */
+	public List<Document> find(String collectionName, Document where, int limit, int skip) {
+		return find(collectionName, where, null, limit, skip);
+	}
+
+	/**
+	 * 按键翻页，多取一条判断是否还有下一页
+	 * 查询失败时异常直接抛出，不返回空页，否则调用方会当成已经翻到最后一页
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param sort
+	 *            排序
+	 * @param limit
+	 *            每页条数
+	 * @param token
+	 *            上一页的 token
+	 * @return
+	 */
+	public MongoPage findPage(String collectionName, Document where, Document sort, int limit, String token) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive: " + limit);
+		}
+		Document order = MongoPage.keyOrder(sort);
+		List<Document> fetched = query(collectionName, MongoPage.seek(where, order, token), order, limit + 1, 0);
+		return MongoPage.of(fetched, order, limit);
+	}
+
+	/**
+	 * 根据条件查找文档个数
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @return
+	 */
+	public Long count(String collectionName, Document where) {
+		return call("count", collectionName, where, null, () -> getCollection(collectionName).count(where));
+	}
+
+	/**
+	 * 删除集合
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 */
+	public void dropCollection(String collectionName) {
+		call("drop", collectionName, null, null, () -> {
+			getCollection(collectionName).drop();
+			return null;
+		});
+	}
+
+	/**
+	 * 修改或者插入一个文档(集合不存在时，创建一个集合) 只修改一条记录
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param update
+	 *            更新文档
+	 */
+	public void updateOrInsertOne(String collectionName, Document where, Document update) {
+		if (collectionName != null && !"".equals(collectionName) && where != null && update != null) {
+			UpdateOptions updateOptions = new UpdateOptions();
+			updateOptions.upsert(true);// 集合不存在时创建一个集合
+			call("updateOne", collectionName, where, null,
+					() -> getCollection(collectionName).updateOne(where, new Document("$set", update), updateOptions));
+		}
+	}
+
+	/**
+	 * 修改多个文档或者插入一个文档(集合不存在时，创建一个集合) 修改满足条件的所有数据
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param update
+	 *            更新文档
+	 */
+	public void updateOrInsertMany(String collectionName, Document where, Document update) {
+		if (collectionName != null && !"".equals(collectionName) && where != null && update != null) {
+			UpdateOptions updateOptions = new UpdateOptions();
+			updateOptions.upsert(true);// 集合不存在时创建一个集合
+			call("updateMany", collectionName, where, null,
+					() -> getCollection(collectionName).updateMany(where, new Document("$set", update), updateOptions));
+		}
+	}
+
+	/**
+	 * 流式查询，按批从服务端读取，用完必须关闭，只统计第一批的耗时
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param projection
+	 *            返回的字段
+	 * @param sort
+	 *            排序
+	 * @param batchSize
+	 *            每批读取的文档数
+	 * @return
+	 */
+	public DocumentCursor iterate(String collectionName, Document where, Document projection, Document sort, int batchSize) {
+		return call("iterate", collectionName, where, sort, () -> {
+			FindIterable<Document> iterable = getCollection(collectionName).find(where == null ? new Document() : where)
+					.batchSize(batchSize > 0 ? batchSize : DocumentCursor.DEFAULT_BATCH_SIZE);
+			if (projection != null) {
+				iterable.projection(projection);
+			}
+			if (sort != null) {
+				iterable.sort(sort);
+			}
+			return new DocumentCursor(iterable.iterator());
+		});
+	}
+
+	/**
+	 * 流式聚合查询，用完必须关闭，只统计第一批的耗时
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param docs
+	 *            聚合管道
+	 * @param batchSize
+	 *            每批读取的文档数
+	 * @return
+	 */
+	public DocumentCursor iterateByAggregate(String collectionName, List<Document> docs, int batchSize) {
+		return call("iterateByAggregate", collectionName, docs, null, () -> {
+			AggregateIterable<Document> iterable = getCollection(collectionName).aggregate(docs).allowDiskUse(true)
+					.batchSize(batchSize > 0 ? batchSize : DocumentCursor.DEFAULT_BATCH_SIZE);
+			return new DocumentCursor(iterable.iterator());
+		});
+	}
+
+	/**
+	 * 同 iterate，返回 Stream，流关闭时关闭游标
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param projection
+	 *            返回的字段
+	 * @param sort
+	 *            排序
+	 * @param batchSize
+	 *            每批读取的文档数
+	 * @return
+	 */
+	public Stream<Document> stream(String collectionName, Document where, Document projection, Document sort, int batchSize) {
+		return iterate(collectionName, where, projection, sort, batchSize).stream();
+	}
+
+	/**
+	 * 无序批量写入
+	 *
+	 * @param collectionName
+	 *            集合名称
+	 * @param requests
+	 *            写入请求
+	 * @return
+	 */
+	public BulkWriteResult bulkWrite(String collectionName, List<? extends WriteModel<? extends Document>> requests) {
+		return call("bulkWrite", collectionName, null, null,
+				() -> getCollection(collectionName).bulkWrite(requests, new BulkWriteOptions().ordered(false)));
+	}
+
+	/**
+	 * 默认注册的命令统计，可以修改慢命令阈值
+	 */
+	public MongoCommandMetrics getCommandMetrics() {
+		return commandMetrics;
+	}
+
+	/**
+	 * 按 集合.操作 的耗时分布、最近的慢命令和按条件结构累计的慢命令
+	 */
+	public MongoCommandMetrics.Snapshot getCommandStats() {
+		return commandMetrics.snapshot();
+	}
+
+	public void addCommandListener(MongoCommandListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeCommandListener(MongoCommandListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * 连接池状态，见 MongoDataSource.getPoolStats
+	 */
+	public List<MongoDataSource.PoolStats> getPoolStats() {
+		return dataSource.getPoolStats();
+	}
+
+	/**
+	 * 执行一次命令并通知 listener，异常原样抛出
+	 *
+	 * @param filter
+	 *            条件或者聚合管道，只用于生成条件结构
+	 * @param sort
+	 *            排序
+	 */
+	private <T> T call(String op, String collectionName, Object filter, Object sort, Callable<T> command) {
+		long start = System.nanoTime();
+		Throwable error = null;
+		try {
+			return command.call();
+		} catch (RuntimeException e) {
+			error = e;
+			throw e;
+		} catch (Exception e) {
+			error = e;
+			throw new RuntimeException(e);
+		} finally {
+			MongoCommandEvent event = new MongoCommandEvent(dataSource.getName(), collectionName, op, filter, sort,
+					System.nanoTime() - start, error);
+			for (MongoCommandListener listener : listeners) {
+				try {
+					listener.onCommand(event);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -1,12 +1,28 @@
 package com.jerome.common.mongo;
 
+import com.jerome.common.util.GetCfgUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * MongoDB工具工厂类
+ * <p>
+ * 按数据源名(配置前缀，如 mongodb1)注册，每个数据源只创建一个 MongoUtil 和一个 MongoClient，任意多个数据源共用这一个入口。
+ * 配置项 mongodb.dataSources 列出所有数据源名(逗号分隔，默认 mongodb1,mongodb2)，getAll() 按它返回；
+ * 没有列出的前缀也可以直接用 getMongoUtil(name) 获取。
  *
  * @author jerome
  */
 public class MongoUtilFactory {
 
+    private static final String DATA_SOURCES_KEY = "mongodb.dataSources";
+
+    private static final ConcurrentMap<String, MongoUtil> REGISTRY = new ConcurrentHashMap<String, MongoUtil>();
+
     /**
      * MongoDB数据源1
      *
@@ -14,7 +30,7 @@ public class MongoUtilFactory {
      * @author：jerome
      */
     public static MongoUtilI getMongoUtil1() {
-        return MongoUtil1.getInstance();
+        return getMongoUtil("mongodb1");
     }
 
     /**
@@ -24,6 +40,48 @@ public class MongoUtilFactory {
      * @author：jerome
      */
     public static MongoUtilI getMongoUtil2() {
-        return MongoUtil2.getInstance();
+        return getMongoUtil("mongodb2");
+    }
+
+    /**
+     * 按数据源名获取，第一次获取时创建
+     *
+     * @param name 配置前缀
+     * @return
+     */
+    public static MongoUtil getMongoUtil(String name) {
+        MongoUtil mongoUtil = REGISTRY.get(name);
+        if (mongoUtil == null) {
+            MongoUtil created = new MongoUtil(new MongoDataSource(name));
+            mongoUtil = REGISTRY.putIfAbsent(name, created);
+            if (mongoUtil == null) {
+                mongoUtil = created;
+            }
+        }
+        return mongoUtil;
+    }
+
+    /**
+     * 配置的所有数据源
+     *
+     * @return key为数据源名，按配置顺序
+     */
+    public static Map<String, MongoUtil> getAll() {
+        Map<String, MongoUtil> result = new LinkedHashMap<String, MongoUtil>();
+        for (String name : GetCfgUtils.getDefaultValue(DATA_SOURCES_KEY, "mongodb1,mongodb2").split(",")) {
+            if (!name.trim().isEmpty()) {
+                result.put(name.trim(), getMongoUtil(name.trim()));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * 关闭所有已经创建的客户端
+     */
+    public static void closeAll() {
+        for (MongoUtil mongoUtil : REGISTRY.values()) {
+            mongoUtil.close();
+        }
     }
 }
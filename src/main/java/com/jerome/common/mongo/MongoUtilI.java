@@ -1,7 +1,10 @@
 package com.jerome.common.mongo;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.WriteModel;
 import org.bson.Document;
 
 /**
@@ -100,6 +103,24 @@ public interface MongoUtilI {
 	 * @return
 	 */
 	List<Document> find(String collectionName, Document where, int limit, int skip);
+
+	/**
+	 * 按键翻页，代替 skip 翻页，每页的代价与页码无关，见 MongoPage
+	 * 和 find 不同，查询失败时抛出异常，不会返回看起来像最后一页的空页
+	 * 
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件，null表示全部
+	 * @param sort
+	 *            排序，只支持 1/-1，要有对应的索引，没有 _id 时自动追加 _id
+	 * @param limit
+	 *            每页条数
+	 * @param token
+	 *            上一页的 getNextToken()，null表示第一页
+	 * @return
+	 */
+	MongoPage findPage(String collectionName, Document where, Document sort, int limit, String token);
 	
 	/**
 	 * 根据条件查找文档个数
@@ -144,4 +165,63 @@ public interface MongoUtilI {
 	 *            更新文档
 	 */
 	void updateOrInsertMany(String collectionName, Document where, Document update);
+
+	/**
+	 * 流式查询，按批从服务端读取，不把结果全部放入内存，用完必须关闭(try-with-resources)
+	 * 
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件，null表示全部
+	 * @param projection
+	 *            返回的字段，如 new Document("name", 1)，null表示全部字段
+	 * @param sort
+	 *            排序，null表示不排序
+	 * @param batchSize
+	 *            每批读取的文档数，小于等于0时使用 DocumentCursor.DEFAULT_BATCH_SIZE
+	 * @return
+	 */
+	DocumentCursor iterate(String collectionName, Document where, Document projection, Document sort, int batchSize);
+
+	/**
+	 * 流式聚合查询，结果较大时允许使用磁盘(allowDiskUse)，用完必须关闭
+	 * 
+	 * @param collectionName
+	 *            集合名称
+	 * @param docs
+	 *            聚合管道
+	 * @param batchSize
+	 *            每批读取的文档数，小于等于0时使用 DocumentCursor.DEFAULT_BATCH_SIZE
+	 * @return
+	 */
+	DocumentCursor iterateByAggregate(String collectionName, List<Document> docs, int batchSize);
+
+	/**
+	 * 同 iterate，返回 Stream，流关闭时关闭游标，limit/findFirst 等短路操作后也要关闭
+	 * 
+	 * @param collectionName
+	 *            集合名称
+	 * @param where
+	 *            条件
+	 * @param projection
+	 *            返回的字段
+	 * @param sort
+	 *            排序
+	 * @param batchSize
+	 *            每批读取的文档数
+	 * @return
+	 */
+	Stream<Document> stream(String collectionName, Document where, Document projection, Document sort, int batchSize);
+
+	/**
+	 * 无序批量写入，一次请求提交多个插入、修改、删除，一条失败不影响其他写入
+	 * 有写入失败时抛出 MongoBulkWriteException，其中包含成功部分的结果和每条失败的详情
+	 * 
+	 * @param collectionName
+	 *            集合名称
+	 * @param requests
+	 *            写入请求
+	 * @return
+	 */
+	BulkWriteResult bulkWrite(String collectionName, List<? extends WriteModel<? extends Document>> requests);
 }
@@ -0,0 +1,265 @@
+package com.jerome.common.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 操作耗时统计：按操作名统计调用次数、失败次数和耗时分布，redis、连接池、线程池、mongo 的统计都用它
+ * 耗时按 sampleRate 抽样记入直方图，超过 slowThresholdMillis 的操作打印慢日志，日志中带上构造时的名称
+ * <p>
+ * 用法：
+ * <pre>
+ * long start = metrics.start();
+ * boolean ok = false;
+ * try {
+ *     ...
+ *     ok = true;
+ * } finally {
+ *     metrics.record("get", key, start, ok);
+ * }
+ * </pre>
+ *
+ * @author jerome
+ */
+public class LatencyMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LatencyMetrics.class.getName());
+
+    /**
+     * 直方图桶数，第i个桶统计耗时在 [2^(i-1), 2^i) 微秒之间的操作，第0个桶为1微秒以内
+     */
+    static final int BUCKETS = 32;
+
+    private final String name;
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+
+    /**
+     * 每sampleRate次操作记录一次耗时，1表示全部记录
+     */
+    private volatile int sampleRate = 1;
+
+    /**
+     * 慢操作阈值，单位纳秒，小于等于0表示不打印慢日志
+     */
+    private volatile long slowThresholdNanos = 0;
+
+    /**
+     * @param name 统计的对象，如 redis、mongo，只在慢日志中使用
+     */
+    public LatencyMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public void setSlowThresholdMillis(long slowThresholdMillis) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+
+    /**
+     * 操作开始时调用
+     *
+     * @return 开始时间，传给 record
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 操作结束时调用
+     *
+     * @param op      操作名
+     * @param key     只在慢日志中使用
+     * @param start   start() 的返回值
+     * @param success false计入失败次数
+     */
+    public void record(String op, String key, long start, boolean success) {
+        long nanos = System.nanoTime() - start;
+        Operation operation = operation(op);
+        operation.count.increment();
+        if (!success) {
+            operation.errors.increment();
+        }
+        long threshold = slowThresholdNanos;
+        if (threshold > 0 && nanos >= threshold) {
+            LOG.warn("slow {} op={} key={} cost={}ms success={}", name, op, key, TimeUnit.NANOSECONDS.toMillis(nanos), success);
+        }
+        int rate = sampleRate;
+        if (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0) {
+            operation.record(nanos);
+        }
+    }
+
+    /**
+     * 当前所有操作的统计快照
+     *
+     * @return key为操作名
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> result = new TreeMap<String, Snapshot>();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    private Operation operation(String op) {
+        Operation operation = operations.get(op);
+        if (operation == null) {
+            Operation created = new Operation();
+            operation = operations.putIfAbsent(op, created);
+            if (operation == null) {
+                operation = created;
+            }
+        }
+        return operation;
+    }
+
+    static int bucket(long micros) {
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static final class Operation {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder sampled = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+        volatile long maxNanos;
+
+        Operation() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            sampled.increment();
+            totalNanos.add(nanos);
+            buckets[bucket(TimeUnit.NANOSECONDS.toMicros(nanos))].increment();
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new Snapshot(count.sum(), errors.sum(), sampled.sum(), totalNanos.sum(), maxNanos, counts);
+        }
+    }
+
+    /**
+     * 单个操作的统计快照，耗时单位为微秒，百分位数取所在直方图桶的上界
+     */
+    public static final class Snapshot {
+
+        private final long count;
+        private final long errors;
+        private final long sampled;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] buckets;
+
+        Snapshot(long count, long errors, long sampled, long totalNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.errors = errors;
+            this.sampled = sampled;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * 记录了耗时的次数
+         */
+        public long getSampled() {
+            return sampled;
+        }
+
+        public long getMeanMicros() {
+            return sampled == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / sampled);
+        }
+
+        public long getMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxNanos);
+        }
+
+        /**
+         * @param percentile 0~100
+         * @return
+         */
+        public long getPercentileMicros(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= target) {
+                    return i == 0 ? 1 : 1L << i;
+                }
+            }
+            return 1L << (buckets.length - 1);
+        }
+
+        /**
+         * 直方图原始计数，下标含义见 LatencyMetrics.BUCKETS
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " errors=" + errors + " sampled=" + sampled + " mean=" + getMeanMicros()
+                    + "us p50=" + getPercentileMicros(50) + "us p99=" + getPercentileMicros(99)
+                    + "us max=" + getMaxMicros() + "us";
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.jerome.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * 批量消费者，代替 Consumer 的逐条 take + "exit" 结束标记
+ * <p>
+ * 消费线程阻塞等到第一条消息后，用 drainTo 取走队列里已有的消息，凑不满 maxBatchSize 时最多再等 lingerMillis，
+ * 然后整批交给 BatchHandler。lingerMillis 为0时不等待，有多少处理多少。
+ * <p>
+ * 生命周期：start() 启动；shutdown() 不再等待新消息，把队列里剩下的消息处理完后退出，应该在生产者停止之后调用；
+ * stop() 处理完当前这批后立即退出；awaitTermination() 等待线程退出。
+ * <p>
+ * 统计：消费条数、批次数、失败批次数、平均批大小、吞吐量、队列积压，
+ * 设置了时间戳函数时还统计延迟(批中最早一条消息从产生到开始处理的时间)。
+ *
+ * @param <E>
+ * @author jerome
+ */
+public class BatchConsumer<E> {
+
+    public enum State {
+        NEW, RUNNING, DRAINING, STOPPED, TERMINATED
+    }
+
+    /**
+     * 没有消息时检查一次状态的间隔
+     */
+    private static final long POLL_MILLIS = 100;
+
+    private final String name;
+
+    private final BlockingQueue<E> queue;
+
+    private final BatchHandler<E> handler;
+
+    private volatile int maxBatchSize = 100;
+
+    private volatile long lingerMillis = 0;
+
+    private volatile ToLongFunction<? super E> timestamp;
+
+    private volatile State state = State.NEW;
+
+    private volatile Thread thread;
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private volatile long startedAt;
+
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder handleNanos = new LongAdder();
+    private volatile long lastLagMillis;
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    /**
+     * @param name    消费线程名，也出现在统计中
+     * @param queue
+     * @param handler
+     */
+    public BatchConsumer(String name, BlockingQueue<E> queue, BatchHandler<E> handler) {
+        this.name = name;
+        this.queue = queue;
+        this.handler = handler;
+    }
+
+    /**
+     * 消费 Message 的批量消费者，按 Message.getTimestamp() 统计延迟
+     */
+    public static BatchConsumer<Message> forMessages(String name, BlockingQueue<Message> queue,
+                                                     BatchHandler<Message> handler) {
+        return new BatchConsumer<Message>(name, queue, handler).setTimestamp(Message::getTimestamp);
+    }
+
+    public BatchConsumer<E> setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * @param lingerMillis 批没满时最多再等多久，越大批越大、延迟越高
+     */
+    public BatchConsumer<E> setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+        return this;
+    }
+
+    /**
+     * @param timestamp 取消息产生时间(毫秒)，用来统计延迟
+     */
+    public BatchConsumer<E> setTimestamp(ToLongFunction<? super E> timestamp) {
+        this.timestamp = timestamp;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public synchronized BatchConsumer<E> start() {
+        if (state != State.NEW) {
+            throw new IllegalStateException(name + " is " + state);
+        }
+        state = State.RUNNING;
+        startedAt = System.nanoTime();
+        thread = new Thread(this::run, name);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * 处理完队列里剩下的消息后退出
+     */
+    public synchronized void shutdown() {
+        if (state == State.NEW) {
+            terminate();
+        } else if (state == State.RUNNING) {
+            state = State.DRAINING;
+        }
+    }
+
+    /**
+     * 处理完当前这批后退出，队列里剩下的消息不处理
+     */
+    public synchronized void stop() {
+        if (state == State.NEW) {
+            terminate();
+        } else if (state == State.RUNNING || state == State.DRAINING) {
+            state = State.STOPPED;
+            Thread t = thread;
+            if (t != null) {
+                t.interrupt();
+            }
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private synchronized void terminate() {
+        state = State.TERMINATED;
+        terminated.countDown();
+    }
+
+    private void run() {
+        List<E> batch = new ArrayList<E>();
+        try {
+            while (state == State.RUNNING || state == State.DRAINING) {
+                if (!fill(batch)) {
+                    if (state == State.DRAINING) {
+                        break;
+                    }
+                    continue;
+                }
+                process(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // stop()，当前这批已经取出，处理完再退出
+            if (!batch.isEmpty()) {
+                process(batch);
+            }
+        } finally {
+            terminate();
+        }
+    }
+
+    /**
+     * 取一批消息
+     *
+     * @return false表示等待 POLL_MILLIS 没有消息
+     */
+    private boolean fill(List<E> batch) throws InterruptedException {
+        int max = maxBatchSize;
+        E first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return false;
+        }
+        batch.add(first);
+        queue.drainTo(batch, max - 1);
+        long linger = lingerMillis;
+        if (linger <= 0 || batch.size() >= max || state != State.RUNNING) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+        while (batch.size() < max) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            E next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, max - batch.size());
+        }
+        return true;
+    }
+
+    private void process(List<E> batch) {
+        ToLongFunction<? super E> ts = timestamp;
+        if (ts != null) {
+            long lag = System.currentTimeMillis() - ts.applyAsLong(batch.get(0));
+            lastLagMillis = lag;
+            maxLagMillis.accumulateAndGet(lag, Math::max);
+        }
+        long start = System.nanoTime();
+        try {
+            handler.handle(batch);
+        } catch (Exception e) {
+            e.printStackTrace();
+            failedBatches.increment();
+        } finally {
+            handleNanos.add(System.nanoTime() - start);
+            batches.increment();
+            consumed.add(batch.size());
+        }
+    }
+
+    /**
+     * 交给handler的消息数，包括失败的批
+     */
+    public long getConsumed() {
+        return consumed.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) consumed.sum() / count;
+    }
+
+    /**
+     * 每批的平均处理时间，毫秒
+     */
+    public double getAverageHandleMillis() {
+        long count = batches.sum();
+        return count == 0 ? 0 : handleNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * 启动以来的平均吞吐量，条/秒
+     */
+    public double getThroughput() {
+        if (startedAt == 0) {
+            return 0;
+        }
+        long nanos = System.nanoTime() - startedAt;
+        return nanos <= 0 ? 0 : consumed.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * 队列中还没被取走的消息数(多个消费者共用队列时是整个队列的积压)
+     */
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    /**
+     * 最近一批中最早的消息从产生到开始处理的时间，毫秒，没有设置时间戳函数时为0
+     */
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s] consumed=%d batches=%d failed=%d avgBatch=%.1f avgHandle=%.2fms "
+                        + "throughput=%.0f/s backlog=%d lag=%dms maxLag=%dms", name, state, getConsumed(), getBatches(),
+                getFailedBatches(), getAverageBatchSize(), getAverageHandleMillis(), getThroughput(), getBacklog(),
+                getLastLagMillis(), getMaxLagMillis());
+    }
+}
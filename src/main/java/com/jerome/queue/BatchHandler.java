@@ -0,0 +1,20 @@
+package com.jerome.queue;
+
+import java.util.List;
+
+/**
+ * 批量处理消息
+ *
+ * @param <E>
+ * @author jerome
+ */
+public interface BatchHandler<E> {
+
+    /**
+     * 处理一批消息，批次对象在返回后会被复用，需要保留时复制一份
+     *
+     * @param batch 至少有一条
+     * @throws Exception 整批计为失败，不重试
+     */
+    void handle(List<E> batch) throws Exception;
+}
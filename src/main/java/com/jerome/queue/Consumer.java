@@ -21,7 +21,7 @@ public class Consumer implements Runnable {
         try {
             Message msg;
             //consuming messages until exit message is received
-            while ((msg = queue.take()).getMsg() != "exit") {
+            while (!"exit".equals((msg = queue.take()).getMsg())) {
                 Thread.sleep(10);
                 System.out.println("Consumed " + msg.getMsg());
             }
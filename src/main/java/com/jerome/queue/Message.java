@@ -9,11 +9,41 @@ package com.jerome.queue;
 public class Message {
     private String msg;
 
+    /**
+     * 消息在redis stream中的id，内存队列中的消息为null
+     */
+    private String id;
+
+    /**
+     * 消息产生的时间，毫秒，用来统计消费延迟
+     */
+    private long timestamp;
+
     public Message(String str) {
         this.msg = str;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @param id  redis stream的消息id，格式为 写入时间毫秒-序号
+     * @param str
+     */
+    public Message(String id, String str) {
+        this.id = id;
+        this.msg = str;
+        int dash = id == null ? -1 : id.indexOf('-');
+        this.timestamp = dash > 0 ? Long.parseLong(id.substring(0, dash)) : System.currentTimeMillis();
     }
 
     public String getMsg() {
         return msg;
     }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
 }
@@ -0,0 +1,17 @@
+package com.jerome.queue;
+
+/**
+ * 消息处理
+ *
+ * @author jerome
+ */
+public interface MessageHandler {
+
+    /**
+     * 正常返回后消息被确认(XACK)，抛出异常时消息留在 pending 列表中，之后被重新认领再次投递
+     *
+     * @param message
+     * @throws Exception
+     */
+    void handle(Message message) throws Exception;
+}
@@ -0,0 +1,371 @@
+package com.jerome.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 有界的环形缓冲队列，生产者-消费者的用法(put/take/offer/poll/drainTo)可以直接替换 ArrayBlockingQueue
+ * <p>
+ * 槽位数组在创建时一次分配，容量向上取2的幂，用 序号 & mask 定位槽位。每个槽位有一个序号：
+ * 等于写入位置时可写，等于写入位置+1时可读，读完后设为 位置+容量 留给下一圈写入。
+ * 生产者和消费者各自推进自己的计数器，不共用锁，交接不需要唤醒线程。
+ * <p>
+ * 单生产者(ProducerType.SINGLE)时写入位置直接自增，不需要CAS；多生产者用CAS抢位置。消费者始终支持多个，用CAS抢位置。
+ * drainTo 一次CAS取走连续的一批可读消息。
+ * <p>
+ * 队列满(put)或空(take)时按 WaitStrategy 等待：BUSY_SPIN 延迟最低但一直占用CPU，适合线程数不超过核数的场景；
+ * YIELDING 自旋一会之后 yield；PARKING 自旋、yield 之后每次 park 一小段时间，CPU占用最低，延迟最高。
+ * <p>
+ * iterator() 返回调用时的弱一致快照，遍历期间的写入和读取不会反映到迭代器上，也不会抛出 ConcurrentModificationException；
+ * 不支持通过迭代器删除，所以 remove(Object)/removeAll/retainAll 会抛出 UnsupportedOperationException。
+ *
+ * @param <E>
+ * @author jerome
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    public enum ProducerType {
+        SINGLE, MULTI
+    }
+
+    public enum WaitStrategy {
+
+        BUSY_SPIN {
+            @Override
+            int idle(int counter) {
+                return counter + 1;
+            }
+        },
+
+        YIELDING {
+            @Override
+            int idle(int counter) {
+                if (counter >= SPIN_TRIES) {
+                    Thread.yield();
+                }
+                return counter + 1;
+            }
+        },
+
+        PARKING {
+            @Override
+            int idle(int counter) {
+                if (counter >= SPIN_TRIES * 2) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else if (counter >= SPIN_TRIES) {
+                    Thread.yield();
+                }
+                return counter + 1;
+            }
+        };
+
+        private static final int SPIN_TRIES = 100;
+
+        private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+        /**
+         * 一次等待
+         *
+         * @param counter 本次操作已经等待的次数
+         * @return counter + 1
+         */
+        abstract int idle(int counter);
+    }
+
+    private final Object[] buffer;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final ProducerType producerType;
+
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * 下一个写入位置
+     */
+    private final Sequence tail = new Sequence();
+
+    /**
+     * 下一个读取位置
+     */
+    private final Sequence head = new Sequence();
+
+    public RingBufferQueue(int capacity) {
+        this(capacity, ProducerType.MULTI, WaitStrategy.YIELDING);
+    }
+
+    /**
+     * @param capacity     容量，向上取2的幂
+     * @param producerType SINGLE时只能有一个线程写入，多个线程写入会丢消息
+     * @param waitStrategy put/take 的等待方式
+     */
+    public RingBufferQueue(int capacity, ProducerType producerType, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.producerType = producerType;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (producerType == ProducerType.SINGLE) {
+            long pos = tail.get();
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos) {
+                return false;
+            }
+            buffer[index] = e;
+            tail.lazySet(pos + 1);
+            sequences.lazySet(index, pos + 1);
+            return true;
+        }
+        while (true) {
+            long pos = tail.get();
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 这个槽位上一圈的消息还没被取走
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int counter = 0;
+        while (!offer(e)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            counter = waitStrategy.idle(counter);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = 0;
+        while (!offer(e)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            counter = waitStrategy.idle(counter);
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = (E) buffer[index];
+                    buffer[index] = null;
+                    sequences.lazySet(index, pos + buffer.length);
+                    return e;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            counter = waitStrategy.idle(counter);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            counter = waitStrategy.idle(counter);
+        }
+        return e;
+    }
+
+    /**
+     * 队首消息，多个消费者时可能已经被其他线程取走
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long pos = head.get();
+        int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        return (E) buffer[index];
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 一次CAS取走最多 maxElements 条连续可读的消息，不等待
+     *
+     * @return 取到的条数
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int max = Math.min(maxElements, buffer.length);
+        while (true) {
+            long pos = head.get();
+            int n = 0;
+            while (n < max && sequences.get((int) (pos + n) & mask) == pos + n + 1) {
+                n++;
+            }
+            if (n == 0) {
+                return 0;
+            }
+            if (head.compareAndSet(pos, pos + n)) {
+                for (int i = 0; i < n; i++) {
+                    int index = (int) (pos + i) & mask;
+                    E e = (E) buffer[index];
+                    buffer[index] = null;
+                    sequences.lazySet(index, pos + i + buffer.length);
+                    c.add(e);
+                }
+                return n;
+            }
+        }
+    }
+
+    /**
+     * 按等待策略等到至少有一条消息，再一次取走最多 maxElements 条
+     *
+     * @return 取到的条数，大于0
+     * @throws InterruptedException
+     */
+    public int drainTo(Collection<? super E> c, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = 0;
+        int n;
+        while ((n = drainTo(c, maxElements)) == 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return 0;
+            }
+            counter = waitStrategy.idle(counter);
+        }
+        return n;
+    }
+
+    /**
+     * 近似值，并发写入和读取时只能作为参考
+     */
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(buffer.length, size));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return buffer.length - size();
+    }
+
+    /**
+     * 从队首到队尾逐个复制当前可读的消息，复制前后槽位序号都没变才算读到，
+     * 已经被取走或者还没写完的槽位跳过
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        long from = head.get();
+        long to = tail.get();
+        List<E> snapshot = new ArrayList<E>((int) Math.max(0, Math.min(buffer.length, to - from)));
+        for (long pos = Math.max(from, to - buffer.length); pos < to; pos++) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) {
+                continue;
+            }
+            Object e = buffer[index];
+            if (e != null && sequences.get(index) == pos + 1) {
+                snapshot.add((E) e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "RingBufferQueue[capacity=" + buffer.length + ", size=" + size() + ", producer=" + producerType
+                + ", wait=" + waitStrategy + "]";
+    }
+
+    /**
+     * 后面填充56字节的计数器，head 和 tail 分别被消费者和生产者频繁修改，避免落在同一个缓存行里
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
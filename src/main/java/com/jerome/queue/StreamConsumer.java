@@ -0,0 +1,376 @@
+package com.jerome.queue;
+
+import com.jerome.common.cache.RedisScript;
+import com.jerome.common.cache.ScriptRegistry;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StreamQueue 的消费组消费者
+ * <p>
+ * 启动 concurrency 个线程，每个线程是消费组中的一个消费者(名字为 consumerName-序号)，循环：
+ * XREADGROUP 一次取 batchSize 条新消息，逐条交给 MessageHandler，成功的id用一次 XACK 批量确认；
+ * 处理失败的消息不确认，留在 pending 列表中。
+ * <p>
+ * 每隔 reclaimIntervalMillis 检查一次 pending 列表，空闲超过 minIdleMillis 的消息(消费者挂了或者处理失败)用 XCLAIM 认领过来重新处理；
+ * 投递次数超过 maxDeliveries 的消息转到死信stream(stream:dead)并确认，不再重试。
+ * <p>
+ * 脚本中不能阻塞，没有新消息时线程休眠，休眠时间从10ms逐步加到500ms，有消息后恢复。
+ * 同一条消息可能被投递多次(at-least-once)，handler需要幂等。
+ *
+ * @author jerome
+ */
+public class StreamConsumer {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long MIN_IDLE_SLEEP_MILLIS = 10;
+
+    private static final long MAX_IDLE_SLEEP_MILLIS = 500;
+
+    /**
+     * 返回 {id1, msg1, id2, msg2, ...}
+     * KEYS[1]=stream ARGV[1]=group ARGV[2]=consumer ARGV[3]=count
+     */
+    private static final RedisScript READ = ScriptRegistry.getInstance().register("streamReadGroup",
+            "redis.replicate_commands()\n"
+                    + "local res = redis.call('XREADGROUP', 'GROUP', ARGV[1], ARGV[2], 'COUNT', ARGV[3], 'STREAMS', KEYS[1], '>')\n"
+                    + "local out = {}\n"
+                    + "if res then\n"
+                    + "  for _, e in ipairs(res[1][2]) do\n"
+                    + "    local msg = ''\n"
+                    + "    for i = 1, #e[2], 2 do\n"
+                    + "      if e[2][i] == '" + StreamQueue.FIELD + "' then msg = e[2][i + 1] end\n"
+                    + "    end\n"
+                    + "    out[#out + 1] = e[1]\n"
+                    + "    out[#out + 1] = msg\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return out");
+
+    /**
+     * KEYS[1]=stream ARGV[1]=group ARGV[2...]=ids
+     */
+    private static final RedisScript ACK = ScriptRegistry.getInstance().register("streamAck",
+            "return redis.call('XACK', KEYS[1], ARGV[1], unpack(ARGV, 2))");
+
+    /**
+     * 认领其他消费者空闲太久的消息，投递次数超限的转到死信stream
+     * 返回 {id1, msg1, ..., 死信条数}
+     * KEYS[1]=stream KEYS[2]=死信stream ARGV[1]=group ARGV[2]=consumer ARGV[3]=minIdle ARGV[4]=count ARGV[5]=maxDeliveries(0不限)
+     */
+    private static final RedisScript RECLAIM = ScriptRegistry.getInstance().register("streamReclaim",
+            "redis.replicate_commands()\n"
+                    + "local pending = redis.call('XPENDING', KEYS[1], ARGV[1], '-', '+', ARGV[4])\n"
+                    + "local minIdle = tonumber(ARGV[3])\n"
+                    + "local maxDeliveries = tonumber(ARGV[5])\n"
+                    + "local claim = {}\n"
+                    + "local dead = 0\n"
+                    + "for _, p in ipairs(pending) do\n"
+                    + "  if tonumber(p[3]) >= minIdle then\n"
+                    + "    if maxDeliveries > 0 and tonumber(p[4]) > maxDeliveries then\n"
+                    + "      local e = redis.call('XRANGE', KEYS[1], p[1], p[1])\n"
+                    + "      local msg = ''\n"
+                    + "      if e[1] then\n"
+                    + "        for i = 1, #e[1][2], 2 do\n"
+                    + "          if e[1][2][i] == '" + StreamQueue.FIELD + "' then msg = e[1][2][i + 1] end\n"
+                    + "        end\n"
+                    + "      end\n"
+                    + "      redis.call('XADD', KEYS[2], '*', '" + StreamQueue.FIELD + "', msg, 'origin', p[1], 'deliveries', p[4])\n"
+                    + "      redis.call('XACK', KEYS[1], ARGV[1], p[1])\n"
+                    + "      dead = dead + 1\n"
+                    + "    else\n"
+                    + "      claim[#claim + 1] = p[1]\n"
+                    + "    end\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "local out = {}\n"
+                    + "if #claim > 0 then\n"
+                    + "  local claimed = redis.call('XCLAIM', KEYS[1], ARGV[1], ARGV[2], ARGV[3], unpack(claim))\n"
+                    + "  local alive = {}\n"
+                    + "  for n = 1, #claimed do\n"
+                    + "    local e = claimed[n]\n"
+                    + "    if e and e[2] then\n"
+                    + "      local msg = ''\n"
+                    + "      for i = 1, #e[2], 2 do\n"
+                    + "        if e[2][i] == '" + StreamQueue.FIELD + "' then msg = e[2][i + 1] end\n"
+                    + "      end\n"
+                    + "      alive[e[1]] = true\n"
+                    + "      out[#out + 1] = e[1]\n"
+                    + "      out[#out + 1] = msg\n"
+                    + "    end\n"
+                    + "  end\n"
+                    // 已经被 MAXLEN ~ 裁掉的消息：redis 5/6 的 XCLAIM 在对应位置返回 nil(Lua里是false)，
+                    // 7.0 起直接不返回。按请求的id对照，没认领到内容的都确认掉，否则会一直留在 pending 里
+                    + "  for _, id in ipairs(claim) do\n"
+                    + "    if not alive[id] then\n"
+                    + "      redis.call('XACK', KEYS[1], ARGV[1], id)\n"
+                    + "    end\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "out[#out + 1] = tostring(dead)\n"
+                    + "return out");
+
+    private final StreamQueue queue;
+
+    private final String group;
+
+    private final String consumerName;
+
+    private final MessageHandler handler;
+
+    private volatile int concurrency = 1;
+
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    private volatile long minIdleMillis = 60000;
+
+    private volatile long reclaimIntervalMillis = 30000;
+
+    private volatile int maxDeliveries = 0;
+
+    private volatile boolean running;
+
+    private final List<Thread> workers = new ArrayList<Thread>();
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder reclaimed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    /**
+     * @param queue        消费的stream
+     * @param group        消费组，不存在时自动创建(从之后写入的消息开始)
+     * @param consumerName 消费者名字前缀，同一个组内每个节点要不同，比如用 主机名:端口
+     * @param handler
+     */
+    public StreamConsumer(StreamQueue queue, String group, String consumerName, MessageHandler handler) {
+        this.queue = queue;
+        this.group = group;
+        this.consumerName = consumerName;
+        this.handler = handler;
+    }
+
+    /**
+     * @param concurrency 消费线程数
+     */
+    public StreamConsumer setConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param batchSize 每次 XREADGROUP 的 COUNT，也是每次 XACK 的最大id数
+     */
+    public StreamConsumer setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param minIdleMillis 消息投递后超过这个时间还没确认，认为消费者已经挂掉，可以被认领；要大于正常处理一批消息的耗时
+     */
+    public StreamConsumer setMinIdleMillis(long minIdleMillis) {
+        this.minIdleMillis = minIdleMillis;
+        return this;
+    }
+
+    public StreamConsumer setReclaimIntervalMillis(long reclaimIntervalMillis) {
+        this.reclaimIntervalMillis = reclaimIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @param maxDeliveries 超过这个投递次数的消息转到死信stream，0表示一直重试
+     */
+    public StreamConsumer setMaxDeliveries(int maxDeliveries) {
+        this.maxDeliveries = maxDeliveries;
+        return this;
+    }
+
+    /**
+     * 死信stream的key
+     */
+    public String getDeadLetterStream() {
+        return queue.getStream() + ":dead";
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        queue.createGroup(group, false);
+        running = true;
+        for (int i = 0; i < concurrency; i++) {
+            final String name = consumerName + "-" + i;
+            Thread thread = new Thread(() -> consume(name), "stream-consumer-" + queue.getStream() + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+    }
+
+    /**
+     * 停止消费，正在处理的一批处理完并确认后线程退出；没有确认的消息留在 pending 列表，由其他消费者认领
+     *
+     * @param timeoutMillis 等待线程退出的最长时间
+     */
+    public synchronized void stop(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+    }
+
+    private void consume(String name) {
+        long idleSleep = MIN_IDLE_SLEEP_MILLIS;
+        // 启动时先认领一次，接管上次没处理完的消息
+        long lastReclaim = 0;
+        while (running) {
+            try {
+                List<Message> messages;
+                if (System.currentTimeMillis() - lastReclaim >= reclaimIntervalMillis) {
+                    lastReclaim = System.currentTimeMillis();
+                    messages = reclaim(name);
+                    if (messages.isEmpty()) {
+                        messages = read(name);
+                    }
+                } else {
+                    messages = read(name);
+                }
+                if (messages.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(idleSleep);
+                    idleSleep = Math.min(MAX_IDLE_SLEEP_MILLIS, idleSleep * 2);
+                    continue;
+                }
+                idleSleep = MIN_IDLE_SLEEP_MILLIS;
+                ack(handle(messages));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // redis不可用，退避后重试
+                e.printStackTrace();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(MAX_IDLE_SLEEP_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<String> handle(List<Message> messages) {
+        List<String> ids = new ArrayList<String>(messages.size());
+        for (Message message : messages) {
+            try {
+                handler.handle(message);
+                ids.add(message.getId());
+                processed.increment();
+            } catch (Exception e) {
+                e.printStackTrace();
+                failed.increment();
+            }
+        }
+        return ids;
+    }
+
+    List<Message> read(String name) {
+        try (Jedis jedis = queue.connection()) {
+            Object result = ScriptRegistry.getInstance().eval(jedis, READ, Collections.singletonList(queue.getStream()),
+                    Arrays.asList(group, name, String.valueOf(batchSize)));
+            return toMessages(result, 0);
+        }
+    }
+
+    List<Message> reclaim(String name) {
+        try (Jedis jedis = queue.connection()) {
+            Object result = ScriptRegistry.getInstance().eval(jedis, RECLAIM,
+                    Arrays.asList(queue.getStream(), getDeadLetterStream()),
+                    Arrays.asList(group, name, String.valueOf(minIdleMillis), String.valueOf(batchSize),
+                            String.valueOf(maxDeliveries)));
+            List<?> values = (List<?>) result;
+            deadLettered.add(Long.parseLong((String) values.get(values.size() - 1)));
+            List<Message> messages = toMessages(values, 1);
+            reclaimed.add(messages.size());
+            return messages;
+        }
+    }
+
+    private void ack(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<String>(ids.size() + 1);
+        args.add(group);
+        args.addAll(ids);
+        try (Jedis jedis = queue.connection()) {
+            ScriptRegistry.getInstance().eval(jedis, ACK, Collections.singletonList(queue.getStream()), args);
+        }
+    }
+
+    /**
+     * {id1, msg1, id2, msg2, ...} 转成消息列表
+     *
+     * @param result 脚本返回值
+     * @param tail   末尾不是消息的元素个数
+     */
+    static List<Message> toMessages(Object result, int tail) {
+        if (!(result instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<?> values = (List<?>) result;
+        List<Message> messages = new ArrayList<Message>(values.size() / 2);
+        for (int i = 0; i + 1 < values.size() - tail; i += 2) {
+            messages.add(new Message((String) values.get(i), (String) values.get(i + 1)));
+        }
+        return messages;
+    }
+
+    /**
+     * 处理成功并确认的消息数
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * 从其他消费者(或自己上次失败)认领回来重新处理的消息数
+     */
+    public long getReclaimed() {
+        return reclaimed.sum();
+    }
+
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    @Override
+    public String toString() {
+        return queue.getStream() + "/" + group + " processed=" + getProcessed() + " failed=" + getFailed()
+                + " reclaimed=" + getReclaimed() + " deadLettered=" + getDeadLettered();
+    }
+}
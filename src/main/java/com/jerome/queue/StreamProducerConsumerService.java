@@ -0,0 +1,42 @@
+package com.jerome.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用 redis stream 代替内存队列启动消息生产和消费，需要redis 5.0以上
+ *
+ * @author jerome
+ */
+public class StreamProducerConsumerService {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        StreamQueue queue = new StreamQueue("demo:queue", 100000);
+
+        //4 consumer threads in group "demo", failed messages are retried 3 times then moved to demo:queue:dead
+        StreamConsumer consumer = new StreamConsumer(queue, "demo", "node1",
+                msg -> System.out.println(Thread.currentThread().getName() + " consumed " + msg.getId() + " " + msg.getMsg()))
+                .setConcurrency(4)
+                .setBatchSize(50)
+                .setMinIdleMillis(10000)
+                .setMaxDeliveries(3);
+        consumer.start();
+        System.out.println("Consumer has been started");
+
+        //produce messages in batches of 10
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new Message(String.valueOf(i)));
+            if (batch.size() == 10) {
+                System.out.println("Produced " + queue.putAll(batch));
+                batch.clear();
+            }
+        }
+
+        Thread.sleep(2000);
+        consumer.stop(5000);
+        System.out.println(consumer);
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.jerome.queue;
+
+import com.jerome.common.cache.JedisUtil;
+import com.jerome.common.cache.RedisScript;
+import com.jerome.common.cache.ScriptRegistry;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 基于 Redis Stream 的持久化消息队列，消息写入redis，重启不丢，多个节点可以共同消费
+ * <p>
+ * Jedis 2.8 没有 Stream 相关的命令，这里通过Lua脚本调用 XADD/XREADGROUP/XACK/XPENDING/XCLAIM(需要redis 5.0以上)，
+ * 脚本注册在 ScriptRegistry 中，用 EVALSHA 执行。脚本中不能使用阻塞命令，所以消费者用轮询代替 XREADGROUP BLOCK。
+ * <p>
+ * 消息体保存在每个stream entry的 msg 字段中。
+ * <p>
+ * 不是 BlockingQueue，不能交给 Producer/Consumer 使用，消费用 StreamConsumer。
+ *
+ * @author jerome
+ */
+public class StreamQueue {
+
+    static final String FIELD = "msg";
+
+    /**
+     * 批量写入，返回每条消息的id
+     * KEYS[1]=stream ARGV[1]=maxLen(0不裁剪) ARGV[2...]=消息
+     */
+    private static final RedisScript ADD = ScriptRegistry.getInstance().register("streamAdd",
+            "redis.replicate_commands()\n"
+                    + "local ids = {}\n"
+                    + "for i = 2, #ARGV do\n"
+                    + "  if tonumber(ARGV[1]) > 0 then\n"
+                    + "    ids[#ids + 1] = redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', '" + FIELD + "', ARGV[i])\n"
+                    + "  else\n"
+                    + "    ids[#ids + 1] = redis.call('XADD', KEYS[1], '*', '" + FIELD + "', ARGV[i])\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return ids");
+
+    /**
+     * KEYS[1]=stream ARGV[1]=group ARGV[2]=起始id
+     */
+    private static final RedisScript CREATE_GROUP = ScriptRegistry.getInstance().register("streamCreateGroup",
+            "return redis.call('XGROUP', 'CREATE', KEYS[1], ARGV[1], ARGV[2], 'MKSTREAM')");
+
+    private static final RedisScript LENGTH = ScriptRegistry.getInstance().register("streamLength",
+            "return redis.call('XLEN', KEYS[1])");
+
+    private final Supplier<Jedis> connections;
+
+    private final String stream;
+
+    private final long maxLength;
+
+    /**
+     * 使用 JedisUtil 的默认连接池
+     *
+     * @param stream    stream的key
+     * @param maxLength 近似的最大长度，写入时用 MAXLEN ~ 裁剪，0表示不裁剪
+     */
+    public StreamQueue(String stream, long maxLength) {
+        this(JedisUtil::getJedisInstance, stream, maxLength);
+    }
+
+    public StreamQueue(Supplier<Jedis> connections, String stream, long maxLength) {
+        this.connections = connections;
+        this.stream = stream;
+        this.maxLength = maxLength;
+    }
+
+    public String getStream() {
+        return stream;
+    }
+
+    /**
+     * 借一个连接，连接池返回null(熔断中或不可用)时直接抛出异常
+     */
+    Jedis connection() {
+        Jedis jedis = connections.get();
+        if (jedis == null) {
+            throw new JedisConnectionException("no redis connection available for stream " + stream);
+        }
+        return jedis;
+    }
+
+    /**
+     * 写入一条消息
+     *
+     * @param message
+     * @return 消息id
+     */
+    public String put(Message message) {
+        return putAll(Collections.singletonList(message)).get(0);
+    }
+
+    /**
+     * 一次往返批量写入
+     *
+     * @param messages
+     * @return 与messages顺序一致的消息id
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> putAll(List<Message> messages) {
+        List<String> args = new ArrayList<String>(messages.size() + 1);
+        args.add(String.valueOf(maxLength));
+        for (Message message : messages) {
+            args.add(message.getMsg());
+        }
+        try (Jedis jedis = connection()) {
+            return (List<String>) ScriptRegistry.getInstance().eval(jedis, ADD, Collections.singletonList(stream), args);
+        }
+    }
+
+    /**
+     * 创建消费组，已经存在时什么都不做
+     *
+     * @param group
+     * @param fromBeginning true从stream开头消费，false只消费之后写入的消息
+     */
+    public void createGroup(String group, boolean fromBeginning) {
+        try (Jedis jedis = connection()) {
+            ScriptRegistry.getInstance().eval(jedis, CREATE_GROUP, Collections.singletonList(stream),
+                    Arrays.asList(group, fromBeginning ? "0" : "$"));
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    public long size() {
+        try (Jedis jedis = connection()) {
+            return (Long) ScriptRegistry.getInstance().eval(jedis, LENGTH, Collections.singletonList(stream),
+                    Collections.<String>emptyList());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.jerome.threadPool;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按后端(redis、mongo、smtp、http...)限制同时进行的调用数
+ * <p>
+ * 每任务一个线程(虚拟线程)的执行器不再用线程数限制并发，后端能承受的并发由这里的信号量控制：
+ * 调用前获取所在后端的许可，最多等待 acquireTimeoutMillis，超时抛出 RejectedExecutionException。
+ * 没有注册的后端不限制。
+ * <p>
+ * 用法：
+ * <pre>
+ * BackendLimiter limiter = new BackendLimiter().register("redis", 200).register("smtp", 10);
+ * String value = limiter.call("redis", () -> cache.get(key));
+ * </pre>
+ *
+ * @author jerome
+ */
+public class BackendLimiter {
+
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<String, Limit>();
+
+    private volatile long acquireTimeoutMillis = 30000;
+
+    /**
+     * @param backend 后端名
+     * @param permits 最大并发调用数
+     */
+    public BackendLimiter register(String backend, int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive: " + permits);
+        }
+        limits.put(backend, new Limit(permits));
+        return this;
+    }
+
+    public BackendLimiter setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        return this;
+    }
+
+    public <T> T call(String backend, Callable<T> task) throws Exception {
+        Limit limit = limits.get(backend);
+        if (limit == null) {
+            return task.call();
+        }
+        limit.acquire(backend, acquireTimeoutMillis);
+        try {
+            return task.call();
+        } finally {
+            limit.release();
+        }
+    }
+
+    public void run(String backend, Runnable task) throws InterruptedException {
+        Limit limit = limits.get(backend);
+        if (limit == null) {
+            task.run();
+            return;
+        }
+        limit.acquire(backend, acquireTimeoutMillis);
+        try {
+            task.run();
+        } finally {
+            limit.release();
+        }
+    }
+
+    /**
+     * 包装成获取许可后再执行的任务，提交给执行器
+     */
+    public Runnable wrap(final String backend, final Runnable task) {
+        return () -> {
+            try {
+                run(backend, task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    /**
+     * 各后端的状态
+     *
+     * @return key为后端名
+     */
+    public Map<String, Stats> getStats() {
+        Map<String, Stats> result = new TreeMap<String, Stats>();
+        for (Map.Entry<String, Limit> entry : limits.entrySet()) {
+            Limit limit = entry.getValue();
+            result.put(entry.getKey(), new Stats(limit.permits, limit.permits - limit.semaphore.availablePermits(),
+                    limit.semaphore.getQueueLength(), limit.calls.sum(), limit.timeouts.sum()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static final class Limit {
+
+        final int permits;
+        final Semaphore semaphore;
+        final LongAdder calls = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+
+        Limit(int permits) {
+            this.permits = permits;
+            this.semaphore = new Semaphore(permits);
+        }
+
+        void acquire(String backend, long timeoutMillis) throws InterruptedException {
+            if (!semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new RejectedExecutionException(backend + " has " + permits + " calls in flight, waited "
+                        + timeoutMillis + "ms");
+            }
+            calls.increment();
+        }
+
+        void release() {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 单个后端的状态
+     */
+    public static final class Stats {
+
+        private final int permits;
+        private final int inFlight;
+        private final int waiting;
+        private final long calls;
+        private final long timeouts;
+
+        Stats(int permits, int inFlight, int waiting, long calls, long timeouts) {
+            this.permits = permits;
+            this.inFlight = inFlight;
+            this.waiting = waiting;
+            this.calls = calls;
+            this.timeouts = timeouts;
+        }
+
+        public int getPermits() {
+            return permits;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * 等待许可的线程数(近似值)
+         */
+        public int getWaiting() {
+            return waiting;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * 等待许可超时的次数
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        @Override
+        public String toString() {
+            return "inFlight=" + inFlight + "/" + permits + " waiting=" + waiting + " calls=" + calls
+                    + " timeouts=" + timeouts;
+        }
+    }
+}
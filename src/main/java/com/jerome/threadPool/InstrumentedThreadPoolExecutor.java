@@ -0,0 +1,212 @@
+package com.jerome.threadPool;
+
+import com.jerome.common.util.LatencyMetrics;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带统计的线程池，一般通过 ThreadPoolFactory 创建
+ * <p>
+ * 每个任务提交时包装一层，记录提交时间，执行时统计 排队等待时间(wait) 和 执行时间(run)，直方图复用 LatencyMetrics；
+ * execute 提交的任务抛出异常时计入 run 的失败次数(submit 提交的任务异常由 Future 捕获，不计入)。另外统计拒绝次数(调用拒绝策略的次数，包括 callerRuns 和 dropOldest)和队列的最大深度。
+ *
+ * @author jerome
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    static final String WAIT_OP = "wait";
+
+    static final String RUN_OP = "run";
+
+    private final String name;
+
+    private final LatencyMetrics metrics = new LatencyMetrics("thread-pool");
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public InstrumentedThreadPoolExecutor(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime,
+                                          TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                                          ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        this.name = name;
+        setRejectedExecutionHandler(handler);
+    }
+
+    /**
+     * 包装一层，统计拒绝次数
+     */
+    @Override
+    public void setRejectedExecutionHandler(final RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler((r, executor) -> {
+            rejected.increment();
+            handler.rejectedExecution(r, executor);
+        });
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        // dropOldest 会把包装过的任务重新提交
+        super.execute(command instanceof TimedTask ? command : new TimedTask(command));
+        int depth = getQueue().size();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * wait 和 run 两个操作的耗时统计
+     */
+    public LatencyMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public Stats getStats() {
+        Map<String, LatencyMetrics.Snapshot> snapshot = metrics.snapshot();
+        return new Stats(name, getQueue().size(), maxQueueDepth.get(), getQueue().remainingCapacity(),
+                getActiveCount(), getPoolSize(), getMaximumPoolSize(), getCompletedTaskCount(), rejected.sum(),
+                snapshot.get(WAIT_OP), snapshot.get(RUN_OP));
+    }
+
+    /**
+     * 记录提交时间的任务
+     */
+    private final class TimedTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long submittedAt = metrics.start();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            metrics.record(WAIT_OP, null, submittedAt, true);
+            long start = metrics.start();
+            boolean ok = false;
+            try {
+                task.run();
+                ok = true;
+            } finally {
+                metrics.record(RUN_OP, null, start, ok);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    /**
+     * 线程池状态快照
+     */
+    public static final class Stats {
+
+        private final String name;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final int remainingCapacity;
+        private final int active;
+        private final int poolSize;
+        private final int maxPoolSize;
+        private final long completed;
+        private final long rejected;
+        private final LatencyMetrics.Snapshot waitTime;
+        private final LatencyMetrics.Snapshot runTime;
+
+        Stats(String name, int queueDepth, int maxQueueDepth, int remainingCapacity, int active, int poolSize,
+              int maxPoolSize, long completed, long rejected, LatencyMetrics.Snapshot waitTime,
+              LatencyMetrics.Snapshot runTime) {
+            this.name = name;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.remainingCapacity = remainingCapacity;
+            this.active = active;
+            this.poolSize = poolSize;
+            this.maxPoolSize = maxPoolSize;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.waitTime = waitTime;
+            this.runTime = runTime;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * 提交任务后观察到的最大队列深度
+         */
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public int getRemainingCapacity() {
+            return remainingCapacity;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * 排队等待时间分布，还没有执行过任务时为null
+         */
+        public LatencyMetrics.Snapshot getWaitTime() {
+            return waitTime;
+        }
+
+        /**
+         * 执行时间分布，失败次数为抛出异常的任务数，还没有执行过任务时为null
+         */
+        public LatencyMetrics.Snapshot getRunTime() {
+            return runTime;
+        }
+
+        @Override
+        public String toString() {
+            return name + " queue=" + queueDepth + "/" + (queueDepth + remainingCapacity) + " maxQueue=" + maxQueueDepth
+                    + " active=" + active + " pool=" + poolSize + "/" + maxPoolSize + " completed=" + completed
+                    + " rejected=" + rejected + " wait=[" + waitTime + "] run=[" + runTime + "]";
+        }
+    }
+}
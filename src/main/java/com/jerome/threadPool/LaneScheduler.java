@@ -0,0 +1,416 @@
+package com.jerome.threadPool;
+
+import com.jerome.common.util.LatencyMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按任务类别分道(lane)的调度器，短任务不会被长任务饿死
+ * <p>
+ * 每个lane有自己的队列、权重、并发上限和延迟SLO。提交任务时放入所在lane的队列，再往 ForkJoinPool 提交一个"槽"；
+ * 槽被工作线程执行时不一定执行提交它的任务，而是按加权公平(stride scheduling)从所有可执行的lane中选一个：
+ * 每个lane有一个虚拟时间，选中一次加 STRIDE/weight，每次选虚拟时间最小的非空lane，权重越大被选中越频繁。
+ * 达到并发上限的lane暂时跳过，它的任务结束时再补一个槽，这样长任务最多占用 maxConcurrency 个线程。
+ * <p>
+ * 工作线程和任务窃取由 ForkJoinPool(asyncMode) 负责，任务内部 fork 的子任务同样可以被空闲线程窃取。
+ * <p>
+ * 每个lane统计排队时间、执行时间、总延迟超过SLO的次数和SLO达成率。
+ *
+ * @author jerome
+ */
+public class LaneScheduler {
+
+    private static final long STRIDE = 1L << 20;
+
+    private final String name;
+
+    private final ForkJoinPool pool;
+
+    private final int parallelism;
+
+    /**
+     * 按名字查找lane，submit 不加锁读取
+     */
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+
+    /**
+     * 按添加顺序排列的所有lane，写时复制，调度和统计时遍历
+     */
+    private volatile Lane[] laneArray = new Lane[0];
+
+    private final LatencyMetrics metrics = new LatencyMetrics("lane");
+
+    private volatile int laneCapacity = 10000;
+
+    /**
+     * 最近一次选中的lane的虚拟时间，空闲后重新活跃的lane从这里开始，不会用攒下的份额挤占其他lane
+     */
+    private long virtualTime;
+
+    private volatile boolean shutdown;
+
+    /**
+     * @param name        线程名前缀
+     * @param parallelism 工作线程数
+     */
+    public LaneScheduler(String name, int parallelism) {
+        this.name = name;
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName(name + "-" + thread.getPoolIndex());
+            return thread;
+        }, null, true);
+    }
+
+    /**
+     * 添加一个lane，要在提交任务前添加完
+     *
+     * @param lane           lane名
+     * @param weight         权重，都有任务时按权重比例分配执行机会
+     * @param sloMillis      排队加执行的目标延迟，用于统计SLO达成率
+     * @param maxConcurrency 最多同时占用的线程数，0表示不限制
+     */
+    public synchronized LaneScheduler addLane(String lane, int weight, long sloMillis, int maxConcurrency) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive: " + weight);
+        }
+        if (lanes.containsKey(lane)) {
+            throw new IllegalArgumentException("duplicate lane: " + lane);
+        }
+        Lane created = new Lane(lane, weight, TimeUnit.MILLISECONDS.toNanos(sloMillis),
+                maxConcurrency <= 0 ? parallelism : maxConcurrency);
+        Lane[] grown = Arrays.copyOf(laneArray, laneArray.length + 1);
+        grown[laneArray.length] = created;
+        laneArray = grown;
+        lanes.put(lane, created);
+        return this;
+    }
+
+    /**
+     * @param laneCapacity 每个lane最多排队的任务数，超过时提交抛出 RejectedExecutionException
+     */
+    public LaneScheduler setLaneCapacity(int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+        return this;
+    }
+
+    public <T> CompletableFuture<T> submit(String lane, Callable<T> task) {
+        Lane target = lanes.get(lane);
+        if (target == null) {
+            throw new IllegalArgumentException("unknown lane: " + lane);
+        }
+        if (shutdown) {
+            target.rejected.increment();
+            throw new RejectedExecutionException(name + " has been shut down");
+        }
+        if (target.pending.incrementAndGet() > laneCapacity) {
+            target.pending.decrementAndGet();
+            target.rejected.increment();
+            throw new RejectedExecutionException("lane " + lane + " is full: " + laneCapacity);
+        }
+        Task<T> queued = new Task<T>(task);
+        target.queue.offer(queued);
+        target.submitted.increment();
+        post();
+        return queued.future;
+    }
+
+    public CompletableFuture<Void> execute(String lane, Runnable task) {
+        return submit(lane, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private void post() {
+        if (!tryPost()) {
+            // 已经关闭，由当前线程执行
+            runSlot();
+        }
+    }
+
+    private boolean tryPost() {
+        try {
+            pool.execute(this::runSlot);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 一个槽：按加权公平选一个任务执行
+     * 任务结束时所在lane还有排队的任务，再补一个槽(达到并发上限时跳过的槽不会再回来)
+     */
+    private void runSlot() {
+        while (true) {
+            Lane lane;
+            Task<?> task;
+            synchronized (this) {
+                lane = pick();
+                if (lane == null) {
+                    return;
+                }
+                task = lane.queue.poll();
+                lane.pending.decrementAndGet();
+            }
+            try {
+                run(lane, task);
+            } finally {
+                lane.running.decrementAndGet();
+            }
+            if (lane.pending.get() == 0 || tryPost()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 选虚拟时间最小、有任务且没达到并发上限的lane，调用方持有锁
+     */
+    private Lane pick() {
+        Lane best = null;
+        for (Lane lane : laneArray) {
+            if (lane.pending.get() > 0 && lane.running.get() < lane.maxConcurrency && !lane.queue.isEmpty()
+                    && (best == null || lane.pass < best.pass)) {
+                best = lane;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        if (best.idle) {
+            best.pass = Math.max(best.pass, virtualTime);
+        }
+        virtualTime = best.pass;
+        best.pass += STRIDE / best.weight;
+        best.running.incrementAndGet();
+        // 选完之后队列空了就算空闲，下次活跃时从当前虚拟时间开始
+        best.idle = best.pending.get() <= 1;
+        return best;
+    }
+
+    private <T> void run(Lane lane, Task<T> task) {
+        long start = metrics.start();
+        long wait = start - task.enqueuedAt;
+        metrics.record(lane.waitOp, null, task.enqueuedAt, true);
+        boolean ok = false;
+        try {
+            T result = task.callable.call();
+            ok = true;
+            task.future.complete(result);
+        } catch (Throwable e) {
+            task.future.completeExceptionally(e);
+        } finally {
+            metrics.record(lane.runOp, null, start, ok);
+            long latency = wait + System.nanoTime() - start;
+            lane.completed.increment();
+            if (!ok) {
+                lane.failed.increment();
+            }
+            if (lane.sloNanos > 0 && latency > lane.sloNanos) {
+                lane.sloViolations.increment();
+            }
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        pool.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 底层的 ForkJoinPool，任务内部可以用它 fork 子任务
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * 各lane的统计
+     *
+     * @return 按添加顺序
+     */
+    public List<LaneStats> getStats() {
+        Map<String, LatencyMetrics.Snapshot> snapshot = metrics.snapshot();
+        List<LaneStats> result = new ArrayList<LaneStats>();
+        for (Lane lane : laneArray) {
+            result.add(new LaneStats(lane.name, lane.weight, TimeUnit.NANOSECONDS.toMillis(lane.sloNanos),
+                    lane.pending.get(), lane.running.get(), lane.submitted.sum(), lane.completed.sum(),
+                    lane.failed.sum(), lane.rejected.sum(), lane.sloViolations.sum(),
+                    snapshot.get(lane.waitOp), snapshot.get(lane.runOp)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static final class Task<T> {
+
+        final Callable<T> callable;
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        final long enqueuedAt = System.nanoTime();
+
+        Task(Callable<T> callable) {
+            this.callable = callable;
+        }
+    }
+
+    private static final class Lane {
+
+        final String name;
+        final int weight;
+        final long sloNanos;
+        final int maxConcurrency;
+        final String waitOp;
+        final String runOp;
+        final ConcurrentLinkedQueue<Task<?>> queue = new ConcurrentLinkedQueue<Task<?>>();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final LongAdder submitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder sloViolations = new LongAdder();
+
+        /**
+         * 虚拟时间，只在调度器的锁内读写
+         */
+        long pass;
+        boolean idle = true;
+
+        Lane(String name, int weight, long sloNanos, int maxConcurrency) {
+            this.name = name;
+            this.weight = weight;
+            this.sloNanos = sloNanos;
+            this.maxConcurrency = maxConcurrency;
+            this.waitOp = name + ".wait";
+            this.runOp = name + ".run";
+        }
+    }
+
+    /**
+     * 单个lane的统计快照
+     */
+    public static final class LaneStats {
+
+        private final String name;
+        private final int weight;
+        private final long sloMillis;
+        private final int pending;
+        private final int running;
+        private final long submitted;
+        private final long completed;
+        private final long failed;
+        private final long rejected;
+        private final long sloViolations;
+        private final LatencyMetrics.Snapshot waitTime;
+        private final LatencyMetrics.Snapshot runTime;
+
+        LaneStats(String name, int weight, long sloMillis, int pending, int running, long submitted, long completed,
+                  long failed, long rejected, long sloViolations, LatencyMetrics.Snapshot waitTime,
+                  LatencyMetrics.Snapshot runTime) {
+            this.name = name;
+            this.weight = weight;
+            this.sloMillis = sloMillis;
+            this.pending = pending;
+            this.running = running;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.sloViolations = sloViolations;
+            this.waitTime = waitTime;
+            this.runTime = runTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public long getSloMillis() {
+            return sloMillis;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * 排队加执行超过SLO的任务数
+         */
+        public long getSloViolations() {
+            return sloViolations;
+        }
+
+        /**
+         * SLO达成率，0~1，还没有完成的任务时为1
+         */
+        public double getSloAttainment() {
+            return completed == 0 ? 1 : 1 - (double) sloViolations / completed;
+        }
+
+        /**
+         * 排队时间分布，还没有执行过任务时为null
+         */
+        public LatencyMetrics.Snapshot getWaitTime() {
+            return waitTime;
+        }
+
+        /**
+         * 执行时间分布，还没有执行过任务时为null
+         */
+        public LatencyMetrics.Snapshot getRunTime() {
+            return runTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(weight=%d slo=%dms) pending=%d running=%d submitted=%d completed=%d failed=%d "
+                            + "rejected=%d slo=%.2f%% wait=[%s] run=[%s]", name, weight, sloMillis, pending, running,
+                    submitted, completed, failed, rejected, getSloAttainment() * 100, waitTime, runTime);
+        }
+    }
+}
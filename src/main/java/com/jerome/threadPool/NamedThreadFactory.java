@@ -0,0 +1,45 @@
+package com.jerome.threadPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程名为 前缀-序号 的线程工厂，便于在 jstack 和日志中区分线程池
+ * 未捕获的异常打印ERROR日志
+ *
+ * @author jerome
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NamedThreadFactory.class.getName());
+
+    private final String prefix;
+
+    private final boolean daemon;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public NamedThreadFactory(String prefix) {
+        this(prefix, false);
+    }
+
+    /**
+     * @param prefix 线程名前缀
+     * @param daemon 是否守护线程，守护线程不会阻止JVM退出
+     */
+    public NamedThreadFactory(String prefix, boolean daemon) {
+        this.prefix = prefix;
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, prefix + "-" + sequence.incrementAndGet());
+        thread.setDaemon(daemon);
+        thread.setUncaughtExceptionHandler((t, e) -> LOG.error("uncaught exception in " + t.getName(), e));
+        return thread;
+    }
+}
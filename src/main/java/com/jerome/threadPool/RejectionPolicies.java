@@ -0,0 +1,66 @@
+package com.jerome.threadPool;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程和队列都满时的拒绝策略
+ * <p>
+ * callerRuns：提交任务的线程自己执行，自然地让提交方慢下来，任务不丢
+ * dropOldest：丢掉队列里最老的任务再提交，适合只关心最新数据的场景
+ * block：提交线程最多等待 timeout 直到队列有空位，超时抛出 RejectedExecutionException
+ * abort：直接抛出 RejectedExecutionException
+ *
+ * @author jerome
+ */
+public final class RejectionPolicies {
+
+    private RejectionPolicies() {
+    }
+
+    public static RejectedExecutionHandler callerRuns() {
+        return new ThreadPoolExecutor.CallerRunsPolicy();
+    }
+
+    public static RejectedExecutionHandler dropOldest() {
+        return new ThreadPoolExecutor.DiscardOldestPolicy();
+    }
+
+    public static RejectedExecutionHandler abort() {
+        return new ThreadPoolExecutor.AbortPolicy();
+    }
+
+    public static RejectedExecutionHandler block(long timeout, TimeUnit unit) {
+        return new BlockPolicy(unit.toNanos(timeout));
+    }
+
+    /**
+     * 等待队列空位，线程池已经达到最大线程数时才会调用拒绝策略，所以直接放入队列即可
+     */
+    static final class BlockPolicy implements RejectedExecutionHandler {
+
+        private final long timeoutNanos;
+
+        BlockPolicy(long timeoutNanos) {
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("executor has been shut down");
+            }
+            try {
+                if (!executor.getQueue().offer(r, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    throw new RejectedExecutionException("queue still full after "
+                            + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for queue space", e);
+            }
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.jerome.threadPool;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 简单线程池例子
@@ -22,22 +20,30 @@ public class SimpleThreadPool {
         // 3. newScheduledThreadPool：创建一个定长线程池，支持定时及周期性任务执行。
         // 4. newSingleThreadExecutor：创建一个单线程化的线程池，它只会用唯一的工作线程来执行任务，保证所有任务按照指定顺序(FIFO, LIFO, 优先级)执行。
 
-        // 也可以通过 ThreadPoolExecutor 灵活创建线程池 可以指定池子最大值等参数，避免如下方式创建过多线程导致OOM
-        ExecutorService executorPool = Executors.newFixedThreadPool(4);
+        // 也可以通过 ThreadPoolExecutor 灵活创建线程池 可以指定池子最大值等参数，避免 newFixedThreadPool 的无界队列堆积任务导致OOM
+        // ThreadPoolFactory 创建有界队列的线程池，队列满时按拒绝策略处理(这里是提交线程等待空位，最多等10秒)，并统计排队和执行时间
+        InstrumentedThreadPoolExecutor executorPool = new ThreadPoolFactory("worker")
+                .setCorePoolSize(4)
+                .setQueueCapacity(4)
+                .setRejectionPolicy(RejectionPolicies.block(10, TimeUnit.SECONDS))
+                .newExecutor();
         for (int i = 0; i < 10; i++) {
             Runnable worker = new WorkerThread(String.valueOf(i));
             executorPool.execute(worker);
 
-            // 返回此执行程序的任务队列.当前会从第5个线程才会开始堆积任务等待处理.堆积的数量可以达到Integer.MAX_VALUE,有OOM风险
-            // 可用作于监控线程任务队列情况,如果任务太多处理不来可触发阀值并Thread.sleep(sleepTimes);
-            System.out.println(((ThreadPoolExecutor) executorPool).getQueue().size());
+            // 当前队列深度，最多堆积4个任务，再提交时提交线程等待
+            System.out.println(executorPool.getQueue().size());
         }
 
         executorPool.shutdown();
         //wait for all tasks to finish
-        while (!executorPool.isTerminated()) {
+        try {
+            executorPool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
         System.out.println("Finished all threads");
+        System.out.println(executorPool.getStats());
     }
 }
 
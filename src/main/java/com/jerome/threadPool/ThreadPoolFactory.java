@@ -0,0 +1,172 @@
+package com.jerome.threadPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 创建有界、带统计的线程池，代替 Executors.newFixedThreadPool(无界队列，任务堆积时OOM)
+ * <p>
+ * 用法：
+ * <pre>
+ * InstrumentedThreadPoolExecutor pool = new ThreadPoolFactory("order")
+ *         .setCorePoolSize(4)
+ *         .setMaxPoolSize(8)
+ *         .setQueueCapacity(1000)
+ *         .setRejectionPolicy(RejectionPolicies.block(1, TimeUnit.SECONDS))
+ *         .newExecutor();
+ * </pre>
+ * 队列满之后才会在 corePoolSize 之外创建线程，到达 maxPoolSize 且队列满时调用拒绝策略，默认 callerRuns。
+ * <p>
+ * 大部分时间阻塞在 redis/mongo/smtp/http 调用上的任务用 newPerTaskExecutor：每个任务一个线程，
+ * 运行在 JDK 21 以上时是虚拟线程，并发由 BackendLimiter 按后端限制，而不是线程数。
+ *
+ * @author jerome
+ */
+public class ThreadPoolFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadPoolFactory.class.getName());
+
+    /**
+     * 创建虚拟线程执行器用到的方法，JDK 21 以下为null
+     */
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            // 项目按 Java 8 编译，通过反射使用 Thread.ofVirtual().name(prefix, 0).factory()
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (Exception e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private final String name;
+
+    private int corePoolSize = Runtime.getRuntime().availableProcessors();
+
+    private int maxPoolSize = corePoolSize;
+
+    private int queueCapacity = 1000;
+
+    private long keepAliveMillis = 60000;
+
+    private boolean daemon = false;
+
+    private RejectedExecutionHandler rejectionPolicy = RejectionPolicies.callerRuns();
+
+    /**
+     * @param name 线程池名，线程名为 name-序号
+     */
+    public ThreadPoolFactory(String name) {
+        this.name = name;
+    }
+
+    public ThreadPoolFactory setCorePoolSize(int corePoolSize) {
+        this.corePoolSize = corePoolSize;
+        if (maxPoolSize < corePoolSize) {
+            maxPoolSize = corePoolSize;
+        }
+        return this;
+    }
+
+    public ThreadPoolFactory setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+        return this;
+    }
+
+    /**
+     * @param queueCapacity 等待队列容量，必须大于0
+     */
+    public ThreadPoolFactory setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * @param keepAliveMillis 超过 corePoolSize 的线程空闲多久后回收
+     */
+    public ThreadPoolFactory setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    public ThreadPoolFactory setDaemon(boolean daemon) {
+        this.daemon = daemon;
+        return this;
+    }
+
+    /**
+     * @param rejectionPolicy 见 RejectionPolicies
+     */
+    public ThreadPoolFactory setRejectionPolicy(RejectedExecutionHandler rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+        return this;
+    }
+
+    public InstrumentedThreadPoolExecutor newExecutor() {
+        if (corePoolSize < 0 || maxPoolSize <= 0 || maxPoolSize < corePoolSize) {
+            throw new IllegalArgumentException("invalid pool size: core=" + corePoolSize + " max=" + maxPoolSize);
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        return new InstrumentedThreadPoolExecutor(name, corePoolSize, maxPoolSize, keepAliveMillis,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new NamedThreadFactory(name, daemon), rejectionPolicy);
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程(JDK 21以上)
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 每个任务一个新线程的执行器，不排队，不限制线程数，并发要用 BackendLimiter 控制
+     * <p>
+     * JDK 21 以上使用虚拟线程，阻塞时不占用平台线程，可以同时挂起上万个任务；
+     * 注意虚拟线程在 synchronized 块中阻塞时会占住平台线程(JDK 24 之前)，Jedis、旧版驱动中的同步块会降低收益。
+     * 不支持时退化为缓存线程池(空闲60秒回收的平台线程)，每个阻塞任务占一个平台线程，并发高时线程数和内存会明显增加。
+     *
+     * @param name 线程名前缀
+     */
+    public static ExecutorService newPerTaskExecutor(String name) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 1L);
+                ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch (Exception e) {
+                LOG.warn("failed to create virtual thread executor, fall back to platform threads", e);
+            }
+        }
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new NamedThreadFactory(name, true));
+    }
+}
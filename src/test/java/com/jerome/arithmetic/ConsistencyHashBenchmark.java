@@ -0,0 +1,165 @@
+package com.jerome.arithmetic;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 一致性hash查询的性能对比，每个节点150个虚拟节点
+ * treeMap: 原来的实现，每次 MessageDigest.getInstance + tailMap/firstKey/get
+ * array(md5): 排序数组二分查找 + ThreadLocal 复用 MessageDigest
+ * array(murmur3): 排序数组二分查找 + MurmurHash3
+ * lookup only: 只比较已知hash值时的环查询
+ *
+ * @author jerome
+ */
+public class ConsistencyHashBenchmark {
+
+    private static final int[] NODE_COUNTS = {10, 100, 1000};
+
+    private static final int KEYS = 1 << 16;
+
+    private static final int ROUNDS = 5;
+
+    private static final int OPS_PER_ROUND = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        String[] keys = new String[KEYS];
+        long[] hashes = new long[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "user:session:" + i;
+            hashes[i] = ConsistencyHash.murmur3(keys[i]) & 0xffffffffL;
+        }
+        System.out.println("nodes\ttreeMap(ns/op)\tarray md5(ns/op)\tarray murmur3(ns/op)"
+                + "\ttreeMap lookup(ns/op)\tarray lookup(ns/op)");
+        for (int nodeCount : NODE_COUNTS) {
+            List<String> nodes = new ArrayList<String>();
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add("192.168.0." + i + ":6379");
+            }
+            final LegacyRing legacy = new LegacyRing(nodes);
+            final ConsistencyHash<String> md5 = new ConsistencyHash<String>(nodes, 150);
+            final ConsistencyHash<String> murmur = new ConsistencyHash<String>(nodes, 150, ConsistencyHash.KeyHash.MURMUR3);
+
+            long legacyKey = measure(keys, new Lookup() {
+                @Override
+                public Object byKey(String key) {
+                    return legacy.getNode(key);
+                }
+            });
+            long md5Key = measure(keys, new Lookup() {
+                @Override
+                public Object byKey(String key) {
+                    return md5.getNode(key);
+                }
+            });
+            long murmurKey = measure(keys, new Lookup() {
+                @Override
+                public Object byKey(String key) {
+                    return murmur.getNode(key);
+                }
+            });
+            long legacyHash = measure(hashes, legacy);
+            long arrayHash = measure(hashes, md5);
+            System.out.println(nodeCount + "\t" + legacyKey + "\t" + md5Key + "\t" + murmurKey
+                    + "\t" + legacyHash + "\t" + arrayHash);
+        }
+    }
+
+    private interface Lookup {
+        Object byKey(String key);
+    }
+
+    private static long measure(String[] keys, Lookup lookup) {
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                sink += lookup.byKey(keys[i & (KEYS - 1)]).hashCode();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / OPS_PER_ROUND);
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return best;
+    }
+
+    private static long measure(long[] hashes, Object ring) {
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            if (ring instanceof LegacyRing) {
+                LegacyRing legacy = (LegacyRing) ring;
+                for (int i = 0; i < OPS_PER_ROUND; i++) {
+                    sink += legacy.getNodeInfo(hashes[i & (KEYS - 1)]).hashCode();
+                }
+            } else {
+                ConsistencyHash<?> array = (ConsistencyHash<?>) ring;
+                for (int i = 0; i < OPS_PER_ROUND; i++) {
+                    sink += array.getNodeInfo(hashes[i & (KEYS - 1)]).hashCode();
+                }
+            }
+            best = Math.min(best, (System.nanoTime() - start) / OPS_PER_ROUND);
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return best;
+    }
+
+    /**
+     * 原来基于 TreeMap<Long, Object> 的实现
+     */
+    private static final class LegacyRing {
+
+        private final TreeMap<Long, Object> allNodes = new TreeMap<Long, Object>();
+
+        LegacyRing(List<String> nodes) throws Exception {
+            for (String node : nodes) {
+                for (int j = 0; j < 150; j++) {
+                    allNodes.put(hash(computeMd5(node + "-VIRTUAL-" + j)), node);
+                }
+            }
+        }
+
+        Object getNode(String key) {
+            try {
+                return getNodeInfo(hash(computeMd5(key)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Object getNodeInfo(long hash) {
+            Long key = hash;
+            SortedMap<Long, Object> tailMap = allNodes.tailMap(key);
+            if (tailMap.isEmpty()) {
+                key = allNodes.firstKey();
+            } else {
+                key = tailMap.firstKey();
+            }
+            return allNodes.get(key);
+        }
+
+        private static byte[] computeMd5(String k) throws NoSuchAlgorithmException, java.io.UnsupportedEncodingException {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.reset();
+            md5.update(k.getBytes("UTF-8"));
+            return md5.digest();
+        }
+
+        private static long hash(byte[] digest) {
+            long rv = ((long) (digest[3] & 0xFF) << 24)
+                    | ((long) (digest[2] & 0xFF) << 16)
+                    | ((long) (digest[1] & 0xFF) << 8)
+                    | (digest[0] & 0xFF);
+            return rv & 0xffffffffL;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.jerome.arithmetic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestConsistencyHash {
+
+    @Test
+    public void addAndRemoveTest() {
+        ConsistencyHash<String> ring = new ConsistencyHash<String>(Arrays.asList("a", "b", "c"), 150);
+        String[] before = new String[1000];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = ring.getNode("key" + i);
+        }
+
+        Assert.assertTrue(ring.addNode("d"));
+        Assert.assertFalse(ring.addNode("d"));
+        for (int i = 0; i < before.length; i++) {
+            String node = ring.getNode("key" + i);
+            // 新加节点只会接管其他节点的key，不会在旧节点之间移动
+            Assert.assertTrue(node.equals("d") || node.equals(before[i]));
+        }
+
+        Assert.assertTrue(ring.removeNode("d"));
+        for (int i = 0; i < before.length; i++) {
+            Assert.assertEquals(before[i], ring.getNode("key" + i));
+        }
+    }
+
+    @Test
+    public void emptyTest() {
+        Assert.assertNull(new ConsistencyHash<String>().getNode("key"));
+    }
+
+    @Test
+    public void sameAsTreeMapTest() {
+        List<String> nodes = Arrays.asList("a", "b", "c", "d", "e");
+        ConsistencyHash<String> ring = new ConsistencyHash<String>(nodes, 150);
+        TreeMap<Long, String> treeMap = new TreeMap<Long, String>();
+        for (String node : nodes) {
+            for (int j = 0; j < 150; j++) {
+                treeMap.put(ring.hash(ring.computeMd5(node + "-VIRTUAL-" + j), 0), node);
+            }
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long hash = random.nextLong() & 0xffffffffL;
+            Map.Entry<Long, String> entry = treeMap.ceilingEntry(hash);
+            String expected = entry == null ? treeMap.firstEntry().getValue() : entry.getValue();
+            Assert.assertEquals(expected, ring.getNodeInfo(hash));
+        }
+    }
+
+    @Test
+    public void murmurTest() {
+        ConsistencyHash<String> ring = new ConsistencyHash<String>(Arrays.asList("a", "b", "c"), 150,
+                ConsistencyHash.KeyHash.MURMUR3);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < 30000; i++) {
+            String node = ring.getNode("key" + i);
+            Integer count = counts.get(node);
+            counts.put(node, count == null ? 1 : count + 1);
+        }
+        for (Integer count : counts.values()) {
+            Assert.assertTrue(count > 7000 && count < 13000);
+        }
+    }
+
+    @Test
+    public void rebalancePlanTest() {
+        ConsistencyHash<String> before = new ConsistencyHash<String>(Arrays.asList("a", "b", "c"), 150);
+        ConsistencyHash<String> after = new ConsistencyHash<String>(Arrays.asList("a", "b", "c", "d"), 150);
+        RebalancePlan<String> plan = RebalancePlan.plan(before, after);
+
+        // 只会迁到新节点，迁移量接近1/4
+        for (RebalancePlan.Move<String> move : plan.getMoves()) {
+            Assert.assertEquals("d", move.getTo());
+        }
+        Assert.assertEquals(0.25, plan.getMovedFraction(), 0.05);
+        Assert.assertEquals(plan.getMovedFraction(), plan.getLoadAfter().get("d"), 1e-9);
+
+        double total = 0;
+        for (Double share : plan.getLoadAfter().values()) {
+            total += share;
+        }
+        Assert.assertEquals(1.0, total, 1e-9);
+
+        // 按key验证：换了节点的key必须落在某个迁移区间里
+        for (int i = 0; i < 10000; i++) {
+            String key = "key" + i;
+            long hash = before.hashKey(key);
+            boolean moved = false;
+            for (RebalancePlan.Move<String> move : plan.getMoves()) {
+                moved |= move.contains(hash);
+            }
+            Assert.assertEquals(!before.getNode(key).equals(after.getNode(key)), moved);
+        }
+
+        Assert.assertTrue(RebalancePlan.plan(after, after).getMoves().isEmpty());
+    }
+
+}
\ No newline at end of file
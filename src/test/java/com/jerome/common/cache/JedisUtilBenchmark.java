@@ -0,0 +1,80 @@
+package com.jerome.common.cache;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JedisUtil获取连接的并发压测
+ * 对比旧的 synchronized static getter(加锁借连接并select) 和当前无锁获取连接的吞吐量
+ * 需要可用的redis，连接信息见 redis.properties
+ *
+ * @author jerome
+ */
+public class JedisUtilBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    private static final long WARMUP_MILLIS = 2000;
+
+    private static final long MEASURE_MILLIS = 5000;
+
+    private static final Object LEGACY_LOCK = new Object();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("threads\tsynchronized(ops/s)\tlock-free(ops/s)");
+        for (int threads : THREADS) {
+            run(threads, true, WARMUP_MILLIS);
+            long legacy = run(threads, true, MEASURE_MILLIS);
+            run(threads, false, WARMUP_MILLIS);
+            long lockFree = run(threads, false, MEASURE_MILLIS);
+            System.out.println(threads + "\t" + legacy + "\t" + lockFree);
+        }
+    }
+
+    /**
+     * 多线程循环 借连接-PING-还连接
+     *
+     * @param threads
+     * @param legacy  true时模拟旧实现：在类锁内借连接并select
+     * @param millis
+     * @return 每秒操作数
+     */
+    private static long run(int threads, final boolean legacy, long millis) throws InterruptedException {
+        final LongAdder ops = new LongAdder();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            Jedis jedis = legacy ? legacyGet() : JedisUtil.getJedisInstance();
+                            try {
+                                jedis.ping();
+                            } finally {
+                                JedisUtil.returnResource(jedis);
+                            }
+                            ops.increment();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        return ops.sum() * 1000 / millis;
+    }
+
+    private static Jedis legacyGet() {
+        synchronized (LEGACY_LOCK) {
+            Jedis jedis = JedisUtil.getJedisInstance();
+            jedis.select(0);
+            return jedis;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jerome.common.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestCircuitBreaker {
+
+    @Test
+    public void openAndRecoverTest() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        breaker.setMinimumCalls(10);
+        breaker.setOpenMillis(50);
+        breaker.setHalfOpenProbes(2);
+        final List<String> events = new ArrayList<String>();
+        breaker.addListener((b, from, to, reason) -> events.add(from + "->" + to));
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(breaker.tryAcquire());
+            breaker.onFailure(1000);
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertTrue(breaker.isOpen());
+        Assert.assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(60);
+        Assert.assertTrue(breaker.tryAcquire());
+        Assert.assertTrue(breaker.tryAcquire());
+        // 试探名额用完
+        Assert.assertFalse(breaker.tryAcquire());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(1000);
+        breaker.onSuccess(1000);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        Assert.assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", events.toString());
+    }
+
+    @Test
+    public void probeFailureTest() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        breaker.setMinimumCalls(1);
+        breaker.setOpenMillis(20);
+        breaker.onFailure(1000);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(30);
+        Assert.assertTrue(breaker.tryAcquire());
+        breaker.onFailure(1000);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void belowThresholdTest() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        breaker.setMinimumCalls(10);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(breaker.tryAcquire());
+            if (i % 3 == 0) {
+                breaker.onFailure(1000);
+            } else {
+                breaker.onSuccess(1000);
+            }
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,68 @@
+package com.jerome.common.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLocalCache {
+
+    @Test
+    public void lruEvictionTest() {
+        // 只有一个段，容量就是2
+        LocalCache cache = new LocalCache(2, 60000, 1);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        // 访问a之后b是最久没用的
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertEquals("3", cache.get("c"));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void ttlTest() throws Exception {
+        LocalCache cache = new LocalCache(10, 50, 1);
+        cache.put("a", "1");
+        // 单次的ttl不会超过构造时的ttl
+        cache.put("b", "2", 60000);
+        cache.put("c", "3", 10);
+        Assert.assertEquals("1", cache.get("a"));
+
+        Thread.sleep(20);
+        Assert.assertNull(cache.get("c"));
+        Assert.assertEquals("1", cache.get("a"));
+
+        Thread.sleep(40);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void generationTest() {
+        LocalCache cache = new LocalCache(10, 60000);
+        long generation = cache.generation("a");
+        // 读取期间被失效，旧值不放回
+        cache.remove("a");
+        Assert.assertFalse(cache.putIfGeneration("a", "old", generation));
+        Assert.assertNull(cache.get("a"));
+
+        generation = cache.generation("a");
+        Assert.assertTrue(cache.putIfGeneration("a", "new", generation));
+        Assert.assertEquals("new", cache.get("a"));
+
+        generation = cache.generation("a");
+        cache.clear();
+        Assert.assertFalse(cache.putIfGeneration("a", "old", generation));
+    }
+
+    @Test
+    public void invalidationMessageTest() {
+        String message = "id|3:a|b4:c\nd:0:";
+        Assert.assertEquals("[a|b, c\nd:, ]", NearCachedImpl.parseKeys(message, 3).toString());
+        Assert.assertEquals("[x]", NearCachedImpl.parseKeys("id|1:x9:yy", 3).toString());
+    }
+}
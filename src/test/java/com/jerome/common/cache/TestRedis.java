@@ -1,7 +1,14 @@
 package com.jerome.common.cache;
 
+import com.jerome.common.cache.codec.StringCodec;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 public class TestRedis {
 
     @Test
@@ -18,4 +25,99 @@ public class TestRedis {
         System.out.println(name.toString());
     }
 
+    @Test
+    public void batchTest() {
+        CacheI cache = CacheFactory.getRedisCache();
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < 1200; i++) {
+            values.put("batch_" + i, i);
+        }
+        List<String> keys = new ArrayList<String>(values.keySet());
+        System.out.println("mput result = " + cache.mput(values, 60));
+        System.out.println("mget size = " + cache.mget(keys).size());
+        System.out.println("mdelete result = " + cache.mdelete(keys));
+    }
+
+    @Test
+    public void nearCacheTest() {
+        NearCachedImpl cache = CacheFactory.getNearCache();
+        cache.put("name", "jerome", 60);
+        for (int i = 0; i < 100; i++) {
+            cache.get("name");
+        }
+        System.out.println(cache.getStats());
+    }
+
+    @Test
+    public void metricsTest() {
+        RedisCachedImpl cache = RedisCachedImpl.getInstance();
+        cache.getMetrics().setSlowThresholdMillis(50);
+        for (int i = 0; i < 100; i++) {
+            cache.put("name", "jerome");
+            cache.get("name");
+        }
+        System.out.println(cache.getMetrics().snapshot());
+    }
+
+    @Test
+    public void scriptTest() {
+        CacheI cache = CacheFactory.getRedisCache();
+        System.out.println("incrWithTtl = " + cache.incrWithTtl("counter", 5, 60));
+        System.out.println("compareAndSet = " + cache.compareAndSet("cas", null, "v1", 60));
+        System.out.println("compareAndSet = " + cache.compareAndSet("cas", "v1", "v2", 60));
+        System.out.println("pushCapped = " + cache.pushCapped("recent", 3, 60, "a", "b", "c", "d"));
+        int acquired = 0;
+        for (int i = 0; i < 20; i++) {
+            if (cache.tryAcquire("limiter", 10, 1, 1)) {
+                acquired++;
+            }
+        }
+        System.out.println("tryAcquire acquired = " + acquired);
+    }
+
+    @Test
+    public void scanTest() {
+        RedisUtil redis = RedisUtil.getInstance();
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 5000; i++) {
+            values.put("scan_" + i, String.valueOf(i));
+        }
+        redis.pipelineSet(values, 0);
+        System.out.println("countByPattern = " + redis.countByPattern("scan_*"));
+        System.out.println("expireByPattern = " + redis.expireByPattern("scan_*", 60));
+        System.out.println("deleteByPattern = " + redis.deleteByPattern("scan_*"));
+    }
+
+    @Test
+    public void asyncTest() throws Exception {
+        PipelinedAsyncCache cache = CacheFactory.getAsyncCache();
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("async_" + i, i, 60);
+            futures.add(cache.get("async_" + i));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+        System.out.println("last = " + futures.get(futures.size() - 1).get());
+        System.out.println("average batch size = " + cache.getAverageBatchSize());
+    }
+
+    @Test
+    public void loadingCacheTest() throws Exception {
+        final LoadingCache<String> cache = new LoadingCache<String>(CacheFactory.getRedisCache(), StringCodec.INSTANCE);
+        cache.invalidate("hot_key");
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 50; i++) {
+            Thread thread = new Thread(() -> cache.get("hot_key", () -> {
+                Thread.sleep(200);
+                return "value";
+            }, 60));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("loads = " + cache.getLoads() + " coalesced = " + cache.getCoalesced());
+    }
+
 }
@@ -0,0 +1,30 @@
+package com.jerome.common.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jerome.common.util.LatencyMetrics;
+
+public class TestRedisCachedImpl {
+
+    @Test
+    public void noConnectionTest() {
+        // 熔断中或连接池不可用时借到的连接是null
+        RedisCachedImpl cache = new RedisCachedImpl(() -> null);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertFalse(cache.put("a", "1"));
+        Assert.assertFalse(cache.put("a", "1", 10));
+        Assert.assertNull(cache.incr("a"));
+        Assert.assertNull(cache.mget(Arrays.asList("a", "b")));
+        Assert.assertFalse(cache.mput(Collections.singletonMap("a", "1"), 0));
+        Assert.assertEquals(0L, cache.mdelete(Arrays.asList("a", "b")));
+
+        LatencyMetrics.Snapshot get = cache.getMetrics().snapshot().get("get");
+        Assert.assertEquals(1, get.getCount());
+        Assert.assertEquals(1, get.getErrors());
+        Assert.assertEquals(2, cache.getMetrics().snapshot().get("put").getErrors());
+    }
+}
@@ -0,0 +1,168 @@
+package com.jerome.common.cache.codec;
+
+import com.alibaba.fastjson.JSON;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对比各codec的编码后大小和编解码耗时
+ * toString: 目前 put(String, Object) 的写法，只能写不能还原
+ * fastjson string: 调用方手工转JSON字符串再存入的写法
+ *
+ * @author jerome
+ */
+public class CacheCodecBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int WARMUP = 200000;
+
+    private static final int ITERATIONS = 1000000;
+
+    public static void main(String[] args) {
+        final User user = new User();
+        user.setId(1234567L);
+        user.setName("jerome");
+        user.setAge(28);
+        user.setScore(98.5);
+        user.setVip(true);
+        List<String> tags = new ArrayList<String>();
+        tags.add("java");
+        tags.add("redis");
+        user.setTags(tags);
+
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("id", user.getId());
+        map.put("name", user.getName());
+        map.put("age", user.getAge());
+        map.put("score", user.getScore());
+        map.put("vip", user.isVip());
+        map.put("tags", user.getTags());
+
+        System.out.println("codec\tbytes\tencode(ns/op)\tdecode(ns/op)");
+        run("toString", new CacheCodec<Object>() {
+            @Override
+            public byte[] encode(Object value) {
+                return value.toString().getBytes(UTF_8);
+            }
+
+            @Override
+            public Object decode(byte[] bytes) {
+                return null;
+            }
+        }, user, false);
+        run("fastjson string", new CacheCodec<User>() {
+            @Override
+            public byte[] encode(User value) {
+                return JSON.toJSONString(value).getBytes(UTF_8);
+            }
+
+            @Override
+            public User decode(byte[] bytes) {
+                return JSON.parseObject(new String(bytes, UTF_8), User.class);
+            }
+        }, user, true);
+        run("jackson", new JacksonCodec<User>(User.class), user, true);
+        run("bean", new BeanCodec<User>(User.class), user, true);
+        run("typed binary(map)", TypedBinaryCodec.INSTANCE, map, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void run(String name, CacheCodec<T> codec, Object value, boolean decode) {
+        T typed = (T) value;
+        byte[] bytes = codec.encode(typed);
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += codec.encode(typed).length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += codec.encode(typed).length;
+        }
+        long encodeNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        String decodeNanos = "-";
+        if (decode) {
+            for (int i = 0; i < WARMUP; i++) {
+                sink += codec.decode(bytes).hashCode();
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += codec.decode(bytes).hashCode();
+            }
+            decodeNanos = String.valueOf((System.nanoTime() - start) / ITERATIONS);
+        }
+        System.out.println(name + "\t" + bytes.length + "\t" + encodeNanos + "\t" + decodeNanos + "\t(" + (sink & 1) + ")");
+    }
+
+    public static class User implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private long id;
+        private String name;
+        private int age;
+        private double score;
+        private boolean vip;
+        private List<String> tags;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public void setScore(double score) {
+            this.score = score;
+        }
+
+        public boolean isVip() {
+            return vip;
+        }
+
+        public void setVip(boolean vip) {
+            this.vip = vip;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        @Override
+        public String toString() {
+            return "User [id=" + id + ", name=" + name + ", age=" + age + ", score=" + score + ", vip=" + vip
+                    + ", tags=" + tags + "]";
+        }
+    }
+}
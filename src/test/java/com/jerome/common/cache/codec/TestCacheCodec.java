@@ -0,0 +1,90 @@
+package com.jerome.common.cache.codec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestCacheCodec {
+
+    @Test
+    public void typedBinaryTest() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("int", -1);
+        map.put("long", Long.MAX_VALUE);
+        map.put("double", 1.5d);
+        map.put("float", 2.5f);
+        map.put("bool", true);
+        map.put("null", null);
+        map.put("list", Arrays.asList("a", "b"));
+        TypedBinaryCodec codec = TypedBinaryCodec.INSTANCE;
+        Assert.assertEquals(map, codec.decode(codec.encode(map)));
+        Assert.assertArrayEquals(new byte[]{1, 2}, (byte[]) codec.decode(codec.encode(new byte[]{1, 2})));
+    }
+
+    /**
+     * 不支持JDK序列化，旧数据中的序列化标记(127)也不会被反序列化
+     */
+    @Test
+    public void typedBinaryRejectsSerializableTest() {
+        try {
+            TypedBinaryCodec.INSTANCE.encode(new CacheCodecBenchmark.User());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            TypedBinaryCodec.INSTANCE.decode(new byte[]{127, 4, (byte) 0xac, (byte) 0xed, 0, 5});
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("unknown type tag"));
+        }
+    }
+
+    /**
+     * 损坏的长度在分配之前被拒绝
+     */
+    @Test
+    public void typedBinaryCorruptSizeTest() {
+        byte[][] corrupt = {
+                // LIST 长度 Integer.MAX_VALUE
+                {9, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07},
+                // SET 长度是负数
+                {10, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                        (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x01},
+                // MAP 一个元素至少要两个字节
+                {11, 1, 0},
+                // String 长度超过剩余字节
+                {1, 5, 'a'}
+        };
+        for (byte[] bytes : corrupt) {
+            try {
+                TypedBinaryCodec.INSTANCE.decode(bytes);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(Collections.singletonMap("a", null),
+                TypedBinaryCodec.INSTANCE.decode(new byte[]{11, 1, 1, 1, 'a', 0}));
+    }
+
+    @Test
+    public void beanTest() {
+        CacheCodecBenchmark.User user = new CacheCodecBenchmark.User();
+        user.setId(1L);
+        user.setName("jerome");
+        user.setAge(28);
+        List<String> tags = new ArrayList<String>();
+        tags.add("java");
+        user.setTags(tags);
+        BeanCodec<CacheCodecBenchmark.User> codec = new BeanCodec<CacheCodecBenchmark.User>(CacheCodecBenchmark.User.class);
+        Assert.assertEquals(user.toString(), codec.decode(codec.encode(user)).toString());
+    }
+
+}
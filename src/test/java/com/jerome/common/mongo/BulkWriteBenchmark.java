@@ -0,0 +1,69 @@
+package com.jerome.common.mongo;
+
+import org.bson.Document;
+
+/**
+ * 批量写入与逐条写入的对比，需要 config.properties 中 mongodb1 可以连接
+ * per-document: 循环调用 insert / updateOrInsertOne
+ * bulk(n): MongoBulkWriter 每批 n 条无序 bulkWrite
+ *
+ * @author jerome
+ */
+public class BulkWriteBenchmark {
+
+	private static final String COLLECTION = "bench_bulk_write";
+
+	private static final int DOCUMENTS = 20000;
+
+	private static final int[] BATCH_SIZES = { 100, 500, 1000 };
+
+	public static void main(String[] args) {
+		MongoUtilI mongoUtil = MongoUtilFactory.getMongoUtil1();
+		mongoUtil.init();
+		try {
+			System.out.println("mode\tinsert(docs/s)\tupsert(docs/s)");
+
+			mongoUtil.dropCollection(COLLECTION);
+			long start = System.nanoTime();
+			for (int i = 0; i < DOCUMENTS; i++) {
+				mongoUtil.insert(COLLECTION, document(i));
+			}
+			long insert = rate(start);
+			start = System.nanoTime();
+			for (int i = 0; i < DOCUMENTS; i++) {
+				mongoUtil.updateOrInsertOne(COLLECTION, new Document("seq", i), new Document("value", i * 2));
+			}
+			System.out.println("per-document\t" + insert + "\t" + rate(start));
+
+			for (int batchSize : BATCH_SIZES) {
+				mongoUtil.dropCollection(COLLECTION);
+				MongoBulkWriter writer = new MongoBulkWriter(mongoUtil, batchSize, 100);
+				start = System.nanoTime();
+				for (int i = 0; i < DOCUMENTS; i++) {
+					writer.insert(COLLECTION, document(i));
+				}
+				writer.flush();
+				insert = rate(start);
+				start = System.nanoTime();
+				for (int i = 0; i < DOCUMENTS; i++) {
+					writer.upsert(COLLECTION, new Document("seq", i), new Document("value", i * 2));
+				}
+				writer.close();
+				System.out.println("bulk(" + batchSize + ")\t" + insert + "\t" + rate(start) + "\tbatches="
+						+ writer.getBatches() + " failed=" + writer.getFailedRequests());
+			}
+			mongoUtil.dropCollection(COLLECTION);
+		} finally {
+			mongoUtil.close();
+		}
+	}
+
+	private static Document document(int i) {
+		return new Document("seq", i).append("name", "user" + i).append("value", i);
+	}
+
+	private static long rate(long start) {
+		long nanos = System.nanoTime() - start;
+		return DOCUMENTS * 1000000000L / Math.max(1, nanos);
+	}
+}
@@ -12,6 +12,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.stream.Stream;
+
 public class TestMongo {
 
 
@@ -77,6 +79,69 @@ public class TestMongo {
 		}
 	}
 
+	/**
+	 * 流式读取，只取需要的字段，读到第10条时提前结束
+	 */
+	@Test
+	public void test_iterate() {
+		Document where = new Document("serial_number", "cf004fdc76fa1a4f62e0eb5261ca3");
+		Document projection = new Document("serial_number", 1).append("log_time", 1);
+		try (DocumentCursor cursor = MongoUtilFactory.getMongoUtil1().iterate("wlw_eq_hblog", where, projection, null, 100)) {
+			long handled = cursor.each(doc -> {
+				System.out.println(doc);
+				return cursor.getCount() < 10;
+			});
+			System.out.println("handled " + handled);
+		}
+		try (Stream<Document> stream = MongoUtilFactory.getMongoUtil1().stream("wlw_eq_hblog", null, projection, null, 0)) {
+			System.out.println(stream.filter(doc -> doc.get("log_time") != null).limit(5).count());
+		}
+	}
+
+	/**
+	 * 所有数据源的连接池和操作统计
+	 */
+	@Test
+	public void test_stats() {
+		MongoUtilFactory.getMongoUtil1().count("sys_user", new Document());
+		for (Map.Entry<String, MongoUtil> entry : MongoUtilFactory.getAll().entrySet()) {
+			System.out.println(entry.getKey() + " pool=" + entry.getValue().getPoolStats());
+			System.out.println(entry.getKey() + " commands=" + entry.getValue().getCommandStats());
+		}
+	}
+
+	/**
+	 * 按键翻页和多线程遍历
+	 */
+	@Test
+	public void test_findPage() throws Exception {
+		MongoUtilI mongoUtil = MongoUtilFactory.getMongoUtil1();
+		String token = null;
+		do {
+			MongoPage page = mongoUtil.findPage("sys_user", null, new Document("age", 1), 100, token);
+			System.out.println(page.getDocuments().size());
+			token = page.getNextToken();
+		} while (token != null);
+
+		long total = new MongoCollectionWalker(mongoUtil, 4).walk("sys_user", null, doc -> {
+		});
+		System.out.println(total);
+	}
+
+	/**
+	 * 批量写入，攒够100条或者50ms写一批
+	 */
+	@Test
+	public void test_bulkWriter() {
+		try (MongoBulkWriter writer = new MongoBulkWriter(MongoUtilFactory.getMongoUtil1(), 100, 50)) {
+			writer.setListener(result -> System.out.println(result));
+			for (int i = 0; i < 1000; i++) {
+				writer.upsert("sys_user", new Document("login_name", "bulk" + i), new Document("age", i % 100));
+			}
+			writer.delete("sys_user", new Document("login_name", "bulk0"));
+		}
+	}
+
 	@Test
 	public void test_drop() {
 		String collectionName = "wlw_test_001";
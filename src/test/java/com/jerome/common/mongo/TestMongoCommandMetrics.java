@@ -0,0 +1,64 @@
+package com.jerome.common.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.Test;
+
+/**
+ * 条件结构和慢命令统计，不需要连接 MongoDB
+ *
+ * @author jerome
+ */
+public class TestMongoCommandMetrics {
+
+	@Test
+	public void test_filterShape() {
+		Document where = new Document("age", new Document("$gt", 20)).append("name", "jerome")
+				.append("$or", Arrays.asList(new Document("sex", "m"), new Document("tag", new Document("$in", Arrays.asList("a", "b")))));
+		String shape = FilterShape.of(where, new Document("age", -1));
+		assertEquals("{age: {$gt: ?}, name: ?, $or: [{sex: ?}, {tag: {$in: [?]}}]} sort={age: -1}", shape);
+		assertFalse(shape.contains("jerome"));
+
+		String pipeline = FilterShape.of(Arrays.asList(new Document("$match", new Document("eq_id", "x1")),
+				new Document("$group", new Document("_id", "$eq_id").append("n", new Document("$sum", 1)))), null);
+		assertEquals("[{$match: {eq_id: ?}}, {$group}]", pipeline);
+		assertEquals("", FilterShape.of(null, null));
+	}
+
+	@Test
+	public void test_slowCommands() {
+		MongoCommandMetrics metrics = new MongoCommandMetrics(100);
+		metrics.setMaxSlowCommands(2);
+		for (int i = 0; i < 3; i++) {
+			metrics.onCommand(event("find", new Document("age", i), 150 + i));
+		}
+		metrics.onCommand(event("find", new Document("name", "x"), 5));
+		metrics.onCommand(event("count", new Document("age", 1), 200));
+
+		MongoCommandMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(4, snapshot.getLatency().get("sys_user.find").getCount());
+		assertEquals(1, snapshot.getLatency().get("sys_user.count").getCount());
+		// 只保留最近2条明细
+		assertEquals(2, snapshot.getSlowCommands().size());
+		assertEquals("count", snapshot.getSlowCommands().get(1).getOperation());
+		// 同一结构的3次 find 合并，按总耗时排序
+		assertEquals(2, snapshot.getSlowShapes().size());
+		MongoCommandMetrics.SlowShape top = snapshot.getSlowShapes().get(0);
+		assertEquals("find", top.getOperation());
+		assertEquals("{age: ?}", top.getFilterShape());
+		assertEquals(3, top.getCount());
+		assertEquals(152, top.getMaxMillis());
+		assertTrue(snapshot.toString().contains("sys_user.find"));
+	}
+
+	private static MongoCommandEvent event(String operation, Document where, long millis) {
+		return new MongoCommandEvent("mongodb1", "sys_user", operation, where, null, TimeUnit.MILLISECONDS.toNanos(millis),
+				null);
+	}
+}
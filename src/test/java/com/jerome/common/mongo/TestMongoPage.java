@@ -0,0 +1,65 @@
+package com.jerome.common.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+/**
+ * 按键翻页的 token 和查询条件，不需要连接 MongoDB
+ *
+ * @author jerome
+ */
+public class TestMongoPage {
+
+	@Test
+	public void test_seek() {
+		Document order = MongoPage.keyOrder(new Document("age", -1));
+		assertEquals(new Document("age", -1).append("_id", -1), order);
+
+		ObjectId id = new ObjectId();
+		List<Document> fetched = new ArrayList<Document>();
+		fetched.add(new Document("_id", new ObjectId()).append("age", 30));
+		fetched.add(new Document("_id", id).append("age", 20));
+		fetched.add(new Document("_id", new ObjectId()).append("age", 10));
+		MongoPage page = MongoPage.of(fetched, order, 2);
+		assertEquals(2, page.getDocuments().size());
+		assertTrue(page.hasNext());
+
+		// (age < 20) or (age = 20 and _id < id)，再和原条件 and
+		Document where = new Document("sex", "m");
+		Document seek = MongoPage.seek(where, order, page.getNextToken());
+		Document after = new Document("$or", Arrays.asList(new Document("age", new Document("$lt", 20)),
+				new Document("age", 20).append("_id", new Document("$lt", id))));
+		assertEquals(new Document("$and", Arrays.asList(where, after)), seek);
+
+		assertNull(MongoPage.of(fetched, order, 3).getNextToken());
+		assertEquals(where, MongoPage.seek(where, order, null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_tokenForOtherSort() {
+		Document order = MongoPage.keyOrder(new Document("age", 1));
+		String token = MongoPage.encode(new Document("_id", 1).append("age", 1), order);
+		MongoPage.seek(null, MongoPage.keyOrder(new Document("name", 1)), token);
+	}
+
+	@Test
+	public void test_walkerRanges() {
+		MongoCollectionWalker walker = new MongoCollectionWalker(null, 3);
+		List<Document> ranges = walker.ranges(Arrays.<Object> asList(10, 20));
+		assertEquals(3, ranges.size());
+		assertEquals(new Document("_id", new Document("$lt", 10)), ranges.get(0));
+		assertEquals(new Document("_id", new Document("$gte", 10).append("$lt", 20)), ranges.get(1));
+		assertEquals(new Document("_id", new Document("$gte", 20)), ranges.get(2));
+		assertFalse(walker.ranges(new ArrayList<Object>()).get(0).containsKey("_id"));
+	}
+}
@@ -0,0 +1,155 @@
+package com.jerome.queue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * 队列吞吐量对比，每个场景传递 MESSAGES 条消息，取 ROUNDS 轮中最快的一次，单位 百万条/秒
+ * ArrayBlockingQueue / LinkedBlockingQueue: put/take
+ * ring(MP/SP, 等待策略): put/take
+ * ring drainTo: 消费者一次最多取 BATCH 条
+ * 场景：1P1C、4P1C、4P4C；SP(单生产者)只参与1P1C，BUSY_SPIN 只在线程数不超过核数时参与(否则自旋线程占满时间片，结果没有意义)
+ *
+ * @author jerome
+ */
+public class QueueBenchmark {
+
+    private static final int CAPACITY = 1024;
+
+    private static final int MESSAGES = 4000000;
+
+    private static final int ROUNDS = 5;
+
+    private static final int BATCH = 64;
+
+    private static final Integer POISON = -1;
+
+    private static final Integer ITEM = 1;
+
+    private static final int[][] SCENARIOS = {{1, 1}, {4, 1}, {4, 4}};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Supplier<BlockingQueue<Integer>>> queues = new LinkedHashMap<String, Supplier<BlockingQueue<Integer>>>();
+        queues.put("ArrayBlockingQueue", () -> new ArrayBlockingQueue<Integer>(CAPACITY));
+        queues.put("LinkedBlockingQueue", () -> new LinkedBlockingQueue<Integer>(CAPACITY));
+        for (RingBufferQueue.WaitStrategy wait : RingBufferQueue.WaitStrategy.values()) {
+            queues.put("ring MP " + wait, () -> new RingBufferQueue<Integer>(CAPACITY, RingBufferQueue.ProducerType.MULTI, wait));
+        }
+        queues.put("ring SP YIELDING", () -> new RingBufferQueue<Integer>(CAPACITY,
+                RingBufferQueue.ProducerType.SINGLE, RingBufferQueue.WaitStrategy.YIELDING));
+
+        System.out.println("queue\t1P1C\t4P1C\t4P4C\t(Mops/s, cores=" + Runtime.getRuntime().availableProcessors() + ")");
+        for (Map.Entry<String, Supplier<BlockingQueue<Integer>>> entry : queues.entrySet()) {
+            print(entry.getKey(), entry.getValue(), false);
+        }
+        print("ring MP YIELDING drainTo", () -> new RingBufferQueue<Integer>(CAPACITY), true);
+        print("ArrayBlockingQueue drainTo", () -> new ArrayBlockingQueue<Integer>(CAPACITY), true);
+    }
+
+    private static void print(String name, Supplier<BlockingQueue<Integer>> factory, boolean drain) throws Exception {
+        StringBuilder line = new StringBuilder(name);
+        for (int[] scenario : SCENARIOS) {
+            if ((name.contains(" SP ") && scenario[0] > 1)
+                    || (name.contains("BUSY_SPIN") && scenario[0] + scenario[1] > Runtime.getRuntime().availableProcessors())) {
+                line.append("\t-");
+                continue;
+            }
+            double best = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                best = Math.max(best, run(factory.get(), scenario[0], scenario[1], drain));
+            }
+            line.append(String.format("\t%.2f", best));
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * @return 百万条/秒
+     */
+    private static double run(final BlockingQueue<Integer> queue, int producers, int consumers, final boolean drain)
+            throws Exception {
+        final int perProducer = MESSAGES / producers;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producerThreads = new ArrayList<Thread>();
+        List<Thread> consumerThreads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            producerThreads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.put(ITEM);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            consumerThreads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    if (drain) {
+                        drain(queue);
+                    } else {
+                        while (queue.take() != POISON) {
+                            // 只测传递
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        for (Thread thread : producerThreads) {
+            thread.start();
+        }
+        for (Thread thread : consumerThreads) {
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : producerThreads) {
+            thread.join();
+        }
+        for (int c = 0; c < consumers; c++) {
+            queue.put(POISON);
+        }
+        for (Thread thread : consumerThreads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        return (double) perProducer * producers * 1000 / nanos;
+    }
+
+    /**
+     * 批量取，取到多于一个结束标记时放回去留给其他消费者
+     */
+    private static void drain(BlockingQueue<Integer> queue) throws InterruptedException {
+        List<Integer> batch = new ArrayList<Integer>(BATCH);
+        while (true) {
+            batch.clear();
+            if (queue.drainTo(batch, BATCH) == 0) {
+                batch.add(queue.take());
+            }
+            int poison = 0;
+            for (Integer value : batch) {
+                if (value == POISON) {
+                    poison++;
+                }
+            }
+            if (poison > 0) {
+                for (int i = 1; i < poison; i++) {
+                    queue.put(POISON);
+                }
+                return;
+            }
+        }
+    }
+}
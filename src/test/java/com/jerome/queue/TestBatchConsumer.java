@@ -0,0 +1,57 @@
+package com.jerome.queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TestBatchConsumer {
+
+    @Test
+    public void drainOnShutdownTest() throws Exception {
+        BlockingQueue<Message> queue = new ArrayBlockingQueue<Message>(1000);
+        final List<Integer> sizes = new ArrayList<Integer>();
+        final List<String> received = new ArrayList<String>();
+        BatchConsumer<Message> consumer = BatchConsumer.forMessages("test-consumer", queue, batch -> {
+            sizes.add(batch.size());
+            for (Message message : batch) {
+                received.add(message.getMsg());
+            }
+        }).setMaxBatchSize(10).setLingerMillis(50);
+
+        for (int i = 0; i < 25; i++) {
+            queue.put(new Message(String.valueOf(i)));
+        }
+        consumer.start();
+        consumer.shutdown();
+        Assert.assertTrue(consumer.awaitTermination(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(BatchConsumer.State.TERMINATED, consumer.getState());
+        Assert.assertEquals(25, received.size());
+        Assert.assertEquals("0", received.get(0));
+        Assert.assertEquals("24", received.get(24));
+        Assert.assertEquals("[10, 10, 5]", sizes.toString());
+        Assert.assertEquals(25, consumer.getConsumed());
+        Assert.assertEquals(3, consumer.getBatches());
+        Assert.assertTrue(consumer.getMaxLagMillis() >= 0);
+    }
+
+    @Test
+    public void lingerTest() throws Exception {
+        BlockingQueue<Message> queue = new ArrayBlockingQueue<Message>(1000);
+        final List<Integer> sizes = new ArrayList<Integer>();
+        BatchConsumer<Message> consumer = BatchConsumer.forMessages("test-consumer", queue,
+                batch -> sizes.add(batch.size())).setMaxBatchSize(100).setLingerMillis(500).start();
+        for (int i = 0; i < 5; i++) {
+            queue.put(new Message(String.valueOf(i)));
+            Thread.sleep(10);
+        }
+        consumer.shutdown();
+        Assert.assertTrue(consumer.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[5]", sizes.toString());
+    }
+}
@@ -0,0 +1,111 @@
+package com.jerome.queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class TestRingBufferQueue {
+
+    @Test
+    public void boundedTest() throws Exception {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(3,
+                RingBufferQueue.ProducerType.SINGLE, RingBufferQueue.WaitStrategy.BUSY_SPIN);
+        Assert.assertEquals(4, queue.capacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(queue.offer(i));
+        }
+        Assert.assertFalse(queue.offer(4));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(Integer.valueOf(0), queue.peek());
+        Assert.assertEquals(Integer.valueOf(0), queue.poll());
+        Assert.assertTrue(queue.offer(4));
+
+        List<Integer> batch = new ArrayList<Integer>();
+        Assert.assertEquals(3, queue.drainTo(batch, 3));
+        Assert.assertEquals("[1, 2, 3]", batch.toString());
+        Assert.assertEquals(Integer.valueOf(4), queue.poll());
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.drainTo(batch, 10, 1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void iteratorTest() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(4);
+        Assert.assertFalse(queue.iterator().hasNext());
+        // 绕过一圈之后再遍历
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+            if (i < 3) {
+                queue.poll();
+            }
+        }
+        Iterator<Integer> iterator = queue.iterator();
+        queue.poll();
+        queue.offer(6);
+        List<Integer> values = new ArrayList<Integer>();
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+        // 快照不受之后的读写影响
+        Assert.assertEquals("[3, 4, 5]", values.toString());
+        Assert.assertTrue(queue.contains(6));
+        Assert.assertFalse(queue.contains(3));
+        Assert.assertEquals("[4, 5, 6]", Arrays.toString(queue.toArray()));
+    }
+
+    @Test
+    public void multiProducerMultiConsumerTest() throws Exception {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(64,
+                RingBufferQueue.ProducerType.MULTI, RingBufferQueue.WaitStrategy.YIELDING);
+        final AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.put(base + i);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        for (int c = 0; c < 4; c++) {
+            threads.add(new Thread(() -> {
+                List<Integer> batch = new ArrayList<Integer>();
+                try {
+                    while (true) {
+                        batch.clear();
+                        queue.drainTo(batch, 16, 1, TimeUnit.SECONDS);
+                        if (batch.isEmpty()) {
+                            return;
+                        }
+                        for (Integer value : batch) {
+                            seen.incrementAndGet(value);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < seen.length(); i++) {
+            Assert.assertEquals("value " + i, 1, seen.get(i));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.jerome.queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+
+/**
+ * 需要一个 redis 5.0 以上的实例，配置在 redis.properties
+ */
+public class TestStreamConsumer {
+
+    @Test
+    public void reclaimTrimmedTest() throws Exception {
+        StreamQueue queue = new StreamQueue("test_stream_reclaim", 0);
+        try (Jedis jedis = queue.connection()) {
+            jedis.del(queue.getStream());
+        }
+        queue.createGroup("g", true);
+        String trimmed = queue.put(new Message("a"));
+        String kept = queue.put(new Message("b"));
+
+        StreamConsumer consumer = new StreamConsumer(queue, "g", "c", message -> {
+        }).setMinIdleMillis(1);
+        // 读了不确认，两条都在 pending 里
+        Assert.assertEquals(2, consumer.read("c-1").size());
+        try (Jedis jedis = queue.connection()) {
+            // 第一条被裁掉
+            jedis.eval("return redis.call('XTRIM', KEYS[1], 'MAXLEN', 1)", 1, queue.getStream());
+        }
+        Thread.sleep(10);
+
+        List<Message> messages = consumer.reclaim("c-2");
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals(kept, messages.get(0).getId());
+        try (Jedis jedis = queue.connection()) {
+            List<?> pending = (List<?>) jedis.eval("return redis.call('XPENDING', KEYS[1], 'g', '-', '+', 10)",
+                    1, queue.getStream());
+            // 被裁掉的已经确认，不会每次都被认领
+            Assert.assertEquals(1, pending.size());
+            Assert.assertNotEquals(trimmed, ((List<?>) pending.get(0)).get(0));
+            jedis.del(queue.getStream());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jerome.threadPool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟阻塞I/O的任务(每个任务调用一次后端，sleep LATENCY_MILLIS)，对比：
+ * fixed(4): 原来 newFixedThreadPool(4) 的用法，并发被线程数限制
+ * fixed(PERMITS): 线程数调到后端的并发上限
+ * perTask + limiter: 每任务一个线程(JDK 21以上为虚拟线程)，BackendLimiter 限制后端并发为 PERMITS
+ * 输出总耗时和吞吐量
+ *
+ * @author jerome
+ */
+public class PerTaskExecutorBenchmark {
+
+    private static final int TASKS = 5000;
+
+    private static final long LATENCY_MILLIS = 20;
+
+    private static final int PERMITS = 500;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("virtual threads supported: " + ThreadPoolFactory.isVirtualThreadSupported());
+        System.out.println("executor\ttasks\tcost(ms)\ttasks/s");
+
+        // fixed(4) 太慢，只跑 1/10 的任务
+        run("fixed(4)", new ThreadPoolFactory("fixed4").setCorePoolSize(4).setQueueCapacity(TASKS)
+                .newExecutor(), null, TASKS / 10);
+        run("fixed(" + PERMITS + ")", new ThreadPoolFactory("fixed" + PERMITS).setCorePoolSize(PERMITS)
+                .setQueueCapacity(TASKS).newExecutor(), null, TASKS);
+        BackendLimiter limiter = new BackendLimiter().register("redis", PERMITS);
+        run("perTask + limiter(" + PERMITS + ")", ThreadPoolFactory.newPerTaskExecutor("io"), limiter, TASKS);
+        System.out.println(limiter.getStats());
+    }
+
+    private static void run(String name, ExecutorService executor, final BackendLimiter limiter, int tasks)
+            throws Exception {
+        final CountDownLatch done = new CountDownLatch(tasks);
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            Runnable io = () -> {
+                try {
+                    Thread.sleep(LATENCY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            executor.execute(() -> {
+                try {
+                    if (limiter == null) {
+                        io.run();
+                    } else {
+                        limiter.run("redis", io);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.println(name + "\t" + tasks + "\t" + millis + "\t" + (millis == 0 ? 0 : tasks * 1000L / millis));
+    }
+}
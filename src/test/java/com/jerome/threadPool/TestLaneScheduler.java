@@ -0,0 +1,102 @@
+package com.jerome.threadPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLaneScheduler {
+
+    @Test
+    public void weightedOrderTest() throws Exception {
+        LaneScheduler scheduler = new LaneScheduler("test-lane", 1)
+                .addLane("short", 4, 100, 0)
+                .addLane("long", 1, 1000, 0);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.execute("long", () -> await(gate));
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(scheduler.execute("long", () -> order.add("L")));
+        }
+        for (int i = 0; i < 8; i++) {
+            futures.add(scheduler.execute("short", () -> order.add("S")));
+        }
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        // 权重4:1，短任务全部执行完之前最多执行2个长任务
+        Assert.assertTrue(order.toString(), order.lastIndexOf("S") < nthIndex(order, "L", 3));
+        LaneScheduler.LaneStats shortStats = scheduler.getStats().get(0);
+        Assert.assertEquals("short", shortStats.getName());
+        Assert.assertEquals(8, shortStats.getCompleted());
+        Assert.assertEquals(8, shortStats.getWaitTime().getCount());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void maxConcurrencyTest() throws Exception {
+        LaneScheduler scheduler = new LaneScheduler("test-lane", 4)
+                .addLane("short", 1, 1000, 0)
+                .addLane("long", 1, 1000, 1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Void>> longs = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 4; i++) {
+            longs.add(scheduler.execute("long", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(50);
+                running.decrementAndGet();
+            }));
+        }
+        long start = System.nanoTime();
+        scheduler.submit("short", () -> 1).get(5, TimeUnit.SECONDS);
+        // 长任务只占一个线程，短任务不用等长任务
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(40));
+
+        CompletableFuture.allOf(longs.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, maxRunning.get());
+        CompletableFuture<Integer> failed = scheduler.submit("short", () -> {
+            throw new IllegalStateException("test");
+        });
+        try {
+            failed.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (Exception e) {
+            Assert.assertEquals(1, scheduler.getStats().get(0).getFailed());
+        }
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static int nthIndex(List<String> list, String value, int n) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).equals(value) && --n == 0) {
+                return i;
+            }
+        }
+        return list.size();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.jerome.threadPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestThreadPoolFactory {
+
+    @Test
+    public void callerRunsTest() throws Exception {
+        InstrumentedThreadPoolExecutor pool = new ThreadPoolFactory("test-caller").setCorePoolSize(1)
+                .setQueueCapacity(1).newExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> threads = new ArrayList<String>();
+        pool.execute(() -> await(release));
+        pool.execute(() -> await(release));
+        // 线程和队列都满，由提交线程执行
+        pool.execute(() -> threads.add(Thread.currentThread().getName()));
+        Assert.assertEquals(Thread.currentThread().getName(), threads.get(0));
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+        InstrumentedThreadPoolExecutor.Stats stats = pool.getStats();
+        Assert.assertEquals(1, stats.getRejected());
+        Assert.assertEquals(1, stats.getMaxQueueDepth());
+        Assert.assertEquals(3, stats.getRunTime().getCount());
+        Assert.assertEquals(3, stats.getWaitTime().getCount());
+    }
+
+    @Test
+    public void dropOldestTest() throws Exception {
+        InstrumentedThreadPoolExecutor pool = new ThreadPoolFactory("test-drop").setCorePoolSize(1)
+                .setQueueCapacity(2).setRejectionPolicy(RejectionPolicies.dropOldest()).newExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> done = new ArrayList<Integer>();
+        pool.execute(() -> await(release));
+        for (int i = 0; i < 4; i++) {
+            final int n = i;
+            pool.execute(() -> done.add(n));
+        }
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[2, 3]", done.toString());
+        Assert.assertEquals(2, pool.getRejectedCount());
+    }
+
+    @Test
+    public void blockTest() throws Exception {
+        InstrumentedThreadPoolExecutor pool = new ThreadPoolFactory("test-block").setCorePoolSize(1)
+                .setQueueCapacity(1).setRejectionPolicy(RejectionPolicies.block(50, TimeUnit.MILLISECONDS))
+                .newExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        pool.execute(() -> await(release));
+        pool.execute(() -> {
+        });
+        long start = System.nanoTime();
+        try {
+            pool.execute(() -> {
+            });
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, pool.getRejectedCount());
+    }
+
+    @Test
+    public void backendLimiterTest() throws Exception {
+        final BackendLimiter limiter = new BackendLimiter().register("redis", 3);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        ExecutorService executor = ThreadPoolFactory.newPerTaskExecutor("test-io");
+        for (int i = 0; i < 20; i++) {
+            executor.execute(limiter.wrap("redis", () -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                inFlight.decrementAndGet();
+            }));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertTrue(maxInFlight.get() <= 3);
+        Assert.assertEquals(20, limiter.getStats().get("redis").getCalls());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}